@@ -3,7 +3,7 @@ package org.minima;
 import org.minima.objects.base.MiniNumber;
 
 public class GlobalParams {
-
+	
 	/**
 	 * Number of seconds before sending a pulse message
 	 */
@@ -33,4 +33,53 @@ public class GlobalParams {
 	 */
 	public static final int MINIMA_CASCADE_DEPTH     = 256;
 	
+	/**
+	 * Keep the TxPOW in an on disk log rather than on the heap
+	 */
+	public static final boolean MINIMA_TXPOWDB_DISK  = true;
+	
+	/**
+	 * Keep the wallet coins in an on disk log so they survive a restart
+	 */
+	public static final boolean MINIMA_COINDB_DISK  = true;
+	
+	/**
+	 * MemPool limits - the lowest priority transactions are dropped after this
+	 */
+	public static final int MINIMA_MEMPOOL_MAX_TXNS    = 5000;
+	public static final long MINIMA_MEMPOOL_MAX_BYTES  = 16 * 1024 * 1024;
+	
+	/**
+	 * Most transactions to put in a block we mine
+	 */
+	public static final int MINIMA_MAX_BLOCK_TXNS      = 500;
+	
+	/**
+	 * Most inputs the consolidation coin selector will use
+	 */
+	public static final int MINIMA_CONSOLIDATE_MAX_INPUTS = 20;
+	
+	/**
+	 * Send the input proofs of a transaction as one MMRMultiProof. Both forms are
+	 * always read - only switch this on once every node on the network can read them.
+	 */
+	public static final boolean MINIMA_WITNESS_MULTIPROOF = false;
+	
+	/**
+	 * Check the proofs and scripts of the transaction inputs in parallel - set with -parallel
+	 */
+	public static boolean MINIMA_PARALLEL_INPUTS = false;
+	public static final int MINIMA_PARALLEL_MIN_INPUTS = 4;
+	
+	/**
+	 * Heap the MMR sets should use - warn when over, and prune the cascade set down to the keepers if set
+	 */
+	public static final long MINIMA_MMR_MAX_BYTES  = 64 * 1024 * 1024;
+	public static final boolean MINIMA_MMR_PRUNE   = false;
+	
+	/**
+	 * Keep every cascaded MMR change in a memory mapped archive so proofs can still be made for old coins
+	 */
+	public static final boolean MINIMA_MMR_ARCHIVE = false;
+
 }
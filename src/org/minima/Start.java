@@ -111,6 +111,7 @@ public class Start {
 //					SimpleLogger.log("        -relcoin [POST_URL]    : HTTP POST of new coins in json format (all in 'data') that are relevant to this wallet.");
 					MinimaLogger.log("        -clean                 : Wipe user files and chain backup. Start afresh.");
 					MinimaLogger.log("        -daemon                : Accepts no input from STDIN. Can run in background process.");
+					MinimaLogger.log("        -parallel              : Check the inputs of a transaction in parallel.");
 					MinimaLogger.log("        -help                  : Show this help");
 					MinimaLogger.log("");
 					MinimaLogger.log("With zero params Minima will start and connect to the Main Net.");
@@ -128,6 +129,9 @@ public class Start {
 				}else if(arg.equals("-daemon")) {
 					daemon = true;
 				
+				}else if(arg.equals("-parallel")) {
+					GlobalParams.MINIMA_PARALLEL_INPUTS = true;
+				
 				}else if(arg.equals("-connect")) {
 					connect = true;
 					connecthost = zArgs[counter++];
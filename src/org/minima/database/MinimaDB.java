@@ -3,20 +3,29 @@ package org.minima.database;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
 
 import org.minima.GlobalParams;
+import org.minima.database.coindb.BalanceLedger;
 import org.minima.database.coindb.CoinDB;
 import org.minima.database.coindb.CoinDBRow;
-import org.minima.database.coindb.java.JavaCoinDB;
+import org.minima.database.coindb.java.FastJavaCoinDB;
+import org.minima.database.mempool.MemPool;
+import org.minima.database.mempool.ValidationCache;
+import org.minima.database.mempool.ValidationResult;
+import org.minima.database.mmr.MMRArchive;
 import org.minima.database.mmr.MMRData;
 import org.minima.database.mmr.MMREntry;
+import org.minima.database.mmr.MMRFootprint;
 import org.minima.database.mmr.MMRProof;
+import org.minima.database.mmr.MMRProofCache;
 import org.minima.database.mmr.MMRSet;
+import org.minima.database.txpowdb.MissingTxnTracker;
 import org.minima.database.txpowdb.TxPOWDBRow;
 import org.minima.database.txpowdb.TxPowDB;
-import org.minima.database.txpowdb.java.JavaDB;
+import org.minima.database.txpowdb.java.FastJavaDB;
 import org.minima.database.txpowtree.BlockTree;
 import org.minima.database.txpowtree.BlockTreeNode;
 import org.minima.database.txpowtree.CascadeTree;
@@ -46,12 +55,42 @@ import org.minima.utils.MinimaLogger;
 import org.minima.utils.messages.Message;
 
 public class MinimaDB {
-
+	
 	/**
 	 * A complete list of all the currently known about TXPOW messages
 	 */
 	private TxPowDB mTxPOWDB;
 	
+	/**
+	 * Which blocks are still waiting for which transactions
+	 */
+	private MissingTxnTracker mTxnTracker;
+	
+	/**
+	 * The unused transactions in priority order
+	 */
+	private MemPool mMemPool;
+	
+	/**
+	 * Unused rows the MemPool has let go of - deleted once they are older than the cascade
+	 */
+	private Hashtable<MiniData32, TxPOWDBRow> mDroppedTxPOW;
+	
+	/**
+	 * The transactions already checked on top of the current tip
+	 */
+	private ValidationCache mValidCache;
+	
+	/**
+	 * The MMR proofs already made for our coins
+	 */
+	private MMRProofCache mProofCache;
+	
+	/**
+	 * The cascaded MMR changes - null if not archiving
+	 */
+	private MMRArchive mArchive = null;
+	
 	/**
 	 * A tree representation of the current Minima Block Chain
 	 */
@@ -76,10 +115,73 @@ public class MinimaDB {
 	 * Main Constructor
 	 */
 	public MinimaDB() {
-		mTxPOWDB 	= new JavaDB();
+		this(new FastJavaDB());
+	}
+	
+	/**
+	 * Use a specific TxPowDB implementation
+	 * 
+	 * @param zTxPowDB
+	 */
+	public MinimaDB(TxPowDB zTxPowDB) {
+		mTxPOWDB 	= zTxPowDB;
+		mTxnTracker = new MissingTxnTracker(mTxPOWDB);
+		mMemPool	= new MemPool();
+		mDroppedTxPOW = new Hashtable<>();
+		mValidCache = new ValidationCache();
+		mProofCache = new MMRProofCache();
 		mMainTree 	= new BlockTree();	
-		mCoinDB		= new JavaCoinDB();
+		mCoinDB		= new FastJavaCoinDB();
 		mUserDB		= new JavaUserDB();
+		
+		//The balance needs to know the simple addresses
+		mCoinDB.getBalanceLedger().setUserDB(mUserDB);
+	}
+	
+	/**
+	 * Swap the TxPowDB implementation - only before the chain is loaded
+	 * 
+	 * @param zTxPowDB
+	 */
+	public void setTxPowDB(TxPowDB zTxPowDB) {
+		mTxPOWDB 	= zTxPowDB;
+		mMemPool	= new MemPool();
+		mDroppedTxPOW = new Hashtable<>();
+		mValidCache = new ValidationCache();
+		
+		//It may already have blocks waiting for txns
+		resetTxnTracker();
+	}
+	
+	/**
+	 * Track the BASIC blocks in the TxPowDB again from scratch
+	 */
+	public void resetTxnTracker() {
+		mTxnTracker = new MissingTxnTracker(mTxPOWDB);
+		
+		ArrayList<TxPOWDBRow> blocks = mTxPOWDB.getAllBlocksMissingTransactions();
+		for(TxPOWDBRow block : blocks) {
+			mTxnTracker.addBlock(block);
+		}
+	}
+	
+	/**
+	 * Remove the TxPOW from before the cascade - in a block or not, they will not be used again
+	 * 
+	 * @param zCascade
+	 */
+	public void removeTxPOWBefore(MiniNumber zCascade) {
+		//The ones in blocks..
+		mTxPOWDB.removeTxPOWInBlockLessThan(zCascade);
+		
+		//And the ones that never made it
+		ArrayList<TxPOWDBRow> unused = mTxPOWDB.getAllUnusedTxPOW();
+		for(TxPOWDBRow row : unused) {
+			TxPOW txpow = row.getTxPOW();
+			if(txpow.getBlockNumber().isLess(zCascade)) {
+				mTxPOWDB.removeTxPOW(txpow.getTxPowID());
+			}
+		}
 	}
 	
 	public void setBackupManager(BackupManager zBackup) {
@@ -97,13 +199,6 @@ public class MinimaDB {
 	public void DoGenesis() {
 		TxPOW gen = new GenesisTxPOW();
 		
-		//Add to the list
-		TxPOWDBRow row = mTxPOWDB.addTxPOWDBRow(gen);
-		row.setOnChainBlock(true);
-		row.setInBlockNumber(MiniNumber.ZERO);
-		row.setIsInBlock(true);
-		row.setBlockState(TxPOWDBRow.TXPOWDBROW_STATE_FULL);
-		
 		//The initial MMR
 		MMRSet base = new MMRSet();
 		
@@ -118,6 +213,13 @@ public class MinimaDB {
 		//Need to recalculate the TxPOWID
 		gen.calculateTXPOWID();
 		
+		//Add to the list - now the TxPOWID is final
+		TxPOWDBRow row = mTxPOWDB.addTxPOWDBRow(gen);
+		row.setOnChainBlock(true);
+		row.setInBlockNumber(MiniNumber.ZERO);
+		row.setIsInBlock(true);
+		row.setBlockState(TxPOWDBRow.TXPOWDBROW_STATE_FULL);
+		
 		//Genesis root
 		BlockTreeNode root = new BlockTreeNode(gen);
 		root.setState(BlockTreeNode.BLOCKSTATE_VALID);
@@ -128,7 +230,7 @@ public class MinimaDB {
 		
 		//Add to the Main Chain
 		mMainTree.setTreeRoot(root);
-				
+		
 		//Back it up..
 //		getBackup().backupTxpow(gen); 
 //		getBackup().backupFullBlock(gen, new ArrayList<>());
@@ -158,6 +260,12 @@ public class MinimaDB {
 	 * Process a TXPOW
 	 */
 	public void processTxPOW(TxPOW zTxPow) {
+		//get the current tip - before the tree changes
+		BlockTreeNode tip = mMainTree.getChainTip();
+		
+		//The blocks that may now be VALID or INVALID
+		ArrayList<BlockTreeNode> checknodes = new ArrayList<>();
+		
 		//Is it a block.. if so add a BASIC block to the tree
 		boolean treeadded = false;
 		if(zTxPow.isBlock()) {
@@ -171,42 +279,37 @@ public class MinimaDB {
 			if(treeadded) {
 				//Add any children..
 				addTreeChildren(zTxPow.getTxPowID());
+				
+				//Check it.. the children are checked once it is
+				checknodes.add(node);
 			}
 		}
 		
-		//Check blocks to see if any are now filled..
-		ArrayList<TxPOWDBRow> unfinishedblocks  = mTxPOWDB.getAllBlocksMissingTransactions();
-		
-		//Cycle through them..
+		//Is it a block.. which of its transactions are we still missing
 		boolean newfullblock = false;
-		for(TxPOWDBRow unblock : unfinishedblocks) {
-			boolean allok = true;
-			ArrayList<MiniData32> txns = unblock.getTxPOW().getBlockTxns();
-			for(MiniData32 txnid : txns) {
-				if(getTxPOW(txnid) == null) {
-					allok = false;
-					break;
-				}
+		if(zTxPow.isBlock()) {
+			TxPOWDBRow row = mTxPOWDB.findTxPOWDBRow(zTxPow.getTxPowID());
+			if(row != null && mTxnTracker.addBlock(row)) {
+				newfullblock = true;
 			}
+		}
+		
+		//Check the blocks waiting on this txpow to see if any are now filled..
+		ArrayList<TxPOWDBRow> fullblocks = mTxnTracker.txpowArrived(zTxPow.getTxPowID());
+		for(TxPOWDBRow fullblock : fullblocks) {
+			newfullblock = true;
 			
-			//Store for later
-			if(allok) {
-				//Set the new state..
-				unblock.setBlockState(TxPOWDBRow.TXPOWDBROW_STATE_FULL);
-				newfullblock = true;
+			//Only if it is in the tree.. otherwise it is checked when it is added
+			BlockTreeNode fullnode = mMainTree.findNode(fullblock.getTxPOW().getTxPowID());
+			if(fullnode != null) {
+				checknodes.add(fullnode);
 			}
 		}
-	
+		
 		//Do we need to sort out the tree..
 		if(treeadded || newfullblock) {
-			//get the current tip
-			BlockTreeNode tip = mMainTree.getChainTip();
-			
-			//Now calculate the states of each of the blocks in the tree.. 
-			sortBlockTreeNodeStates(mMainTree.getChainRoot(), BlockTreeNode.BLOCKSTATE_VALID);
-	
-			//Now recalculate the weights only using Valid nodes..
-			mMainTree.resetWeights();
+			//Now calculate the states of the blocks that changed and any they were holding up.. the weights of VALID blocks are added as they are found
+			sortBlockTreeNodeStates(checknodes);
 			
 			//Is there a new tip..
 			BlockTreeNode newtip = mMainTree.getChainTip();
@@ -215,34 +318,56 @@ public class MinimaDB {
 				return;
 			}
 			
-			//Now cycle down the main chain
-			ArrayList<BlockTreeNode> list = null;
+			//Now cycle up the main chain
+			List<BlockTreeNode> list = null;
+			
+			//Is it a re-org
+			boolean reorg = false;
+			
+			//Only add coins from the cascade onwards..
+			MiniNumber oldcascade = getMainTree().getCascadeNode().getTxPow().getBlockNumber();
+			MiniNumber coinsfrom  = oldcascade;
 			
 			//Is it just one block difference
 			if(newtip.getParent().getTxPowID().isExactlyEqual(tip.getTxPowID())) {
 				//Just one block difference.. no need to reset everything..
 				list = new ArrayList<>();
 				list.add(newtip);
-				
+			
 			}else{
-				//THIS COULD BE MUCH BETTER.. Find the crossover, many optimisations
-				
-				//Get all the blocks
-				list = mMainTree.getAsList();
+				//A re-org.. find where the chains split
+				reorg = true;
+				BlockTreeNode fork = findForkNode(tip, newtip);
 				
-				//Otherwise calculate which TXPOWs are being used
-				mTxPOWDB.resetAllInBlocks();
+				if(fork == null) {
+					//Nothing in common.. calculate which TXPOWs are being used from scratch
+					mTxPOWDB.resetAllInBlocks();
+				}else {
+					//Take the old branch off the chain
+					BlockTreeNode oldnode = tip;
+					while(oldnode != null && oldnode != fork) {
+						removeChainBlock(oldnode);
+						oldnode = oldnode.getParent();
+					}
+				}
 				
-				//And Clear the CoinDB
-				mCoinDB.clearDB();
+				//Roll the CoinDB back to where the chains split.. or clear it and start again
+				if(fork != null && fork.getTxPow().getBlockNumber().isMoreEqual(oldcascade) 
+						&& mCoinDB.rollbackToBlock(fork.getTxPow().getBlockNumber())) {
+					coinsfrom = fork.getTxPow().getBlockNumber().add(MiniNumber.ONE);
+					
+					//Only the new branch needs adding
+					int forkindex = mMainTree.getChainIndex(fork);
+					list = mMainTree.getMainChain(forkindex+1, mMainTree.getChainLength());
+					
+				}else {
+					mCoinDB.clearDB();
+					
+					//All the blocks.. for the coins
+					list = mMainTree.getMainChain();
+				}
 			}
 			
-			//Only add coins from the cascade onwards..
-			MiniNumber oldcascade = getMainTree().getCascadeNode().getTxPow().getBlockNumber();
-			
-			//Reverse the list
-			Collections.reverse(list);
-			
 			//Now sort
 			for(BlockTreeNode treenode : list) {
 				//Get the Block
@@ -258,8 +383,9 @@ public class MinimaDB {
 				trow.setOnChainBlock(true);
 				trow.setIsInBlock(true);
 				trow.setInBlockNumber(block);
+				addDroppedTxPOW(mMemPool.remove(txpow.getTxPowID()));
 				
-				if(treenode.getTxPow().getBlockNumber().isMoreEqual(oldcascade)) {
+				if(treenode.getTxPow().getBlockNumber().isMoreEqual(coinsfrom)) {
 					//Check for coins in the MMR
 					scanMMRSetForCoins(treenode.getMMRSet(), false);
 				}
@@ -273,10 +399,16 @@ public class MinimaDB {
 						trow.setOnChainBlock(false);
 						trow.setIsInBlock(true);
 						trow.setInBlockNumber(block);
+						addDroppedTxPOW(mMemPool.remove(txid));
 					}
 				}
 			}
 			
+			//Transactions from the old chain can be unused again..
+			if(reorg) {
+				addDroppedTxPOW(mMemPool.rebuild(mTxPOWDB.getAllUnusedTxPOW()));
+			}
+			
 			/**
 			 * Cascade the tree
 			 */
@@ -295,6 +427,12 @@ public class MinimaDB {
 			//Which txpow have been removed..
 			ArrayList<TxPOWDBRow> remrows =  mTxPOWDB.removeTxPOWInBlockLessThan(cascade);
 			
+			//And the blocks below it will never be completed
+			mTxnTracker.removeBlocksLessThan(cascade);
+			
+			//Nor will the transactions the MemPool dropped be needed
+			removeDroppedTxPOW(cascade);
+			
 			//Remove the deleted txpow..
 			for(TxPOWDBRow remrow : remrows) {
 				getBackup().deleteTxpow(remrow.getTxPOW());
@@ -307,7 +445,91 @@ public class MinimaDB {
 			
 			//Remove all the coins no longer needed.. SPENT
 			mCoinDB.removeOldSpentCoins(cascade);
+			
+			//And the proofs from blocks that have gone
+			mProofCache.removeBefore(cascade);
+			
+			//Is the MMR too big..
+			checkMMRFootprint();
+		}
+	}
+	
+	/**
+	 * Warn if the MMR sets are using more than the allowed heap - and prune the cascade set if allowed
+	 */
+	private void checkMMRFootprint() {
+		MMRSet tip = getMainTree().getChainTip().getMMRSet();
+		if(tip == null) {
+			return;
+		}
+		
+		//The running count - only measure it all when over
+		if(tip.getChainBytes() <= GlobalParams.MINIMA_MMR_MAX_BYTES) {
+			return;
+		}
+		
+		MinimaLogger.log("WARNING : MMR over memory budget "+new MMRFootprint(tip));
+		
+		if(GlobalParams.MINIMA_MMR_PRUNE) {
+			int removed = tip.getRootParent().pruneToKeepers();
+			MinimaLogger.log("MMR cascade set pruned to keepers - "+removed+" entries removed");
+		}
+	}
+	
+	/**
+	 * This block is no longer on the main chain - nor are the transactions it added
+	 */
+	private void removeChainBlock(BlockTreeNode zNode) {
+		TxPOW txpow 	 = zNode.getTxPow();
+		MiniNumber block = txpow.getBlockNumber();
+		
+		TxPOWDBRow row = mTxPOWDB.findTxPOWDBRow(txpow.getTxPowID());
+		if(row != null) {
+			row.setOnChainBlock(false);
+			row.setIsInBlock(false);
+		}
+		
+		//Only if this block put them in..
+		ArrayList<MiniData32> txpowlist = txpow.getBlockTxns();
+		for(MiniData32 txid : txpowlist) {
+			row = mTxPOWDB.findTxPOWDBRow(txid);
+			if(row != null && row.isInBlock() && !row.isOnChainBlock() 
+					&& row.getInBlockNumber() != null && row.getInBlockNumber().isEqual(block)) {
+				row.setIsInBlock(false);
+			}
+		}
+	}
+	
+	/**
+	 * Find the last block two chains have in common
+	 * 
+	 * @param zTipA
+	 * @param zTipB
+	 * @return the fork block or null if they don't meet
+	 */
+	private BlockTreeNode findForkNode(BlockTreeNode zTipA, BlockTreeNode zTipB) {
+		BlockTreeNode nodea = zTipA;
+		BlockTreeNode nodeb = zTipB;
+		
+		while(nodea != null && nodeb != null) {
+			if(nodea.getTxPowID().isExactlyEqual(nodeb.getTxPowID())) {
+				return nodea;
+			}
+			
+			//Step the higher one down.. or both
+			MiniNumber blocka = nodea.getTxPow().getBlockNumber();
+			MiniNumber blockb = nodeb.getTxPow().getBlockNumber();
+			if(blocka.isMore(blockb)) {
+				nodea = nodea.getParent();
+			}else if(blockb.isMore(blocka)) {
+				nodeb = nodeb.getParent();
+			}else {
+				nodea = nodea.getParent();
+				nodeb = nodeb.getParent();
+			}
 		}
+		
+		return null;
 	}
 	
 	public void scanMMRSetForCoins(MMRSet zMMRSet, boolean zAddKeeper) {
@@ -315,12 +537,14 @@ public class MinimaDB {
 			return;
 		}
 		
-		//First check the MMR for any relevant coins..
-		ArrayList<MMREntry> entries = zMMRSet.getZeroRow();
-		for(MMREntry mmrcoin : entries) {
-			if(!mmrcoin.getData().isHashOnly()) {
-				Coin cc = mmrcoin.getData().getCoin();
-				if(getUserDB().isAddressRelevant(cc.getAddress())) {
+		//First check the MMR for any relevant coins.. just look up each of our addresses
+		Hashtable<MiniData32, MiniData32> checked = new Hashtable<>();
+		for(Address addr : getUserDB().getAllAddresses()) {
+			MiniData32 address = addr.getAddressData();
+			if(checked.put(address, address) == null) {
+				for(MMREntry mmrcoin : zMMRSet.findAddressEntries(address)) {
+					Coin cc = mmrcoin.getData().getCoin();
+					
 					if(zAddKeeper) {
 						//Add it..
 						zMMRSet.addKeeper(mmrcoin.getEntry());
@@ -328,7 +552,7 @@ public class MinimaDB {
 					
 					//And add to our list..
 					CoinDBRow inrow = getCoinDB().addCoinRow(cc);
-					
+
 //					SimpleLogger.log("Coin found "+inrow);
 					
 					//Is this an unnecessary update..
@@ -347,14 +571,19 @@ public class MinimaDB {
 						inrow.setIsInBlock(true);
 						inrow.setInBlockNumber(zMMRSet.getBlockTime());
 						inrow.setMMREntry(mmrcoin.getEntry());
-					
+						
+						//Any proof of it is no use now
+						if(spent) {
+							mProofCache.removeEntry(mmrcoin.getEntry());
+						}
+
 //						SimpleLogger.log("Coin added to DB from MMRSET.. "+cc+" spent:"+mmrcoin.getData().isSpent()+" time:"+zMMRSet.getBlockTime());
 					}
 				}
 			}
 		}
 	}
-	
+
 //	private void storeRelevantCoins(TxPOW zTxpow, MiniNumber zBlock) {
 //		//get the Transaction
 //		Transaction trans    = zTxpow.getTransaction();
@@ -429,64 +658,93 @@ public class MinimaDB {
 	}
 	
 	/**
-	 * Recursively Sort the blocktreenode states
+	 * Sort the states of these blocks - and the children of any that are decided.
+	 * 
+	 * Blocks that are already VALID or INVALID are never checked again.
+	 * @param zNodes
+	 */
+	private void sortBlockTreeNodeStates(ArrayList<BlockTreeNode> zNodes) {
+		ArrayList<BlockTreeNode> work = new ArrayList<>(zNodes);
+		
+		int next = 0;
+		while(next < work.size()) {
+			BlockTreeNode node = work.get(next++);
+			
+			//If decided.. the children may be now too
+			if(sortBlockTreeNodeState(node)) {
+				work.addAll(node.getChildren());
+			}
+		}
+	}
+	
+	/**
+	 * Decide the state of a BASIC block if the parent allows it
 	 * @param zNode
+	 * @return true if it is now VALID or INVALID
 	 */
-	private void sortBlockTreeNodeStates(BlockTreeNode zNode, int zParentState) {
-		//Get the txpow row
-		TxPOWDBRow row = getTxPOWRow(zNode.getTxPowID());
+	private boolean sortBlockTreeNodeState(BlockTreeNode zNode) {
+		//Only BASIC blocks change
+		BlockTreeNode parent = zNode.getParent();
+		if(zNode.getState() != BlockTreeNode.BLOCKSTATE_BASIC || parent == null) {
+			return false;
+		}
 		
 		//Must be a valid parent for anything to happen
-		if(zParentState == BlockTreeNode.BLOCKSTATE_INVALID) {
+		if(parent.getState() == BlockTreeNode.BLOCKSTATE_INVALID) {
 			//All Children are INVALID
 			zNode.setState(BlockTreeNode.BLOCKSTATE_INVALID);
+			return true;
 		
-		}else if(zParentState == BlockTreeNode.BLOCKSTATE_VALID) {
-			//Do we check.. only when full
-			if(zNode.getState() == BlockTreeNode.BLOCKSTATE_BASIC && row.getBlockState() == TxPOWDBRow.TXPOWDBROW_STATE_FULL) {
-				//Need allok for the block to be accepted
-				boolean allok = true;
-				
-				//Check that Block difficulty is Correct!?
-				//..TODO
-				
-				//Check the Super Block Levels are Correct! and point to the correct blocks
-				//..TODO
-				
-				//Create an MMR set that will ONLY be used if the block is VALID..
-				MMRSet mmrset = new MMRSet(zNode.getParent().getMMRSet());
-				
-				//Set this MMR..
-				zNode.setMMRset(mmrset);
-				
-				//Check all the transactions in the block are correct..
-				allok = checkFullTxPOW(zNode.getTxPow(), mmrset);
-				
-				//Check the root MMR..
-				if(allok) {
-					MiniData32 root = mmrset.getMMRRoot();
-					if(!row.getTxPOW().getMMRRoot().isExactlyEqual(root)) {
-						allok = false;	
-					}
-				}
-				
-				//if it all passes is OK.. otherwise not ok..
-				if(allok) {
-					//it's all valid!
-					zNode.setState(BlockTreeNode.BLOCKSTATE_VALID);
-					
-				}else{
-					//No good..
-					zNode.setState(BlockTreeNode.BLOCKSTATE_INVALID);
-				}
+		}else if(parent.getState() != BlockTreeNode.BLOCKSTATE_VALID) {
+			return false;
+		}
+		
+		//Do we check.. only when full
+		TxPOWDBRow row = getTxPOWRow(zNode.getTxPowID());
+		if(row == null || row.getBlockState() != TxPOWDBRow.TXPOWDBROW_STATE_FULL) {
+			return false;
+		}
+		
+		//Need allok for the block to be accepted
+		boolean allok = true;
+		
+		//Check that Block difficulty is Correct!?
+		//..TODO
+		
+		//Check the Super Block Levels are Correct! and point to the correct blocks
+		//..TODO
+		
+		//Create an MMR set that will ONLY be used if the block is VALID..
+		MMRSet mmrset = new MMRSet(parent.getMMRSet());
+		
+		//Set this MMR..
+		zNode.setMMRset(mmrset);
+		
+		//Check all the transactions in the block are correct..
+		allok = checkFullTxPOW(zNode.getTxPow(), mmrset);
+		
+		//Check the root MMR..
+		if(allok) {
+			MiniData32 root = mmrset.getMMRRoot();
+			if(!row.getTxPOW().getMMRRoot().isExactlyEqual(root)) {
+				allok = false;	
 			}
 		}
 		
-		//Get all the child blocks..
-		ArrayList<BlockTreeNode> children = zNode.getChildren();
-		for(BlockTreeNode child : children) {
-			sortBlockTreeNodeStates(child, zNode.getState());	
+		//if it all passes is OK.. otherwise not ok..
+		if(allok) {
+			//it's all valid!
+			zNode.setState(BlockTreeNode.BLOCKSTATE_VALID);
+			
+			//Add it's weight to the tree
+			mMainTree.addValidNode(zNode);
+		
+		}else{
+			//No good..
+			zNode.setState(BlockTreeNode.BLOCKSTATE_INVALID);
 		}
+		
+		return true;
 	}
 	
 	private boolean checkFullTxPOW(TxPOW zBlock, MMRSet zMMRSet) {
@@ -498,7 +756,7 @@ public class MinimaDB {
 			
 			//Check the Proof..
 			boolean inputvalid = TxPOWChecker.checkTransactionMMR(trans, wit, this, zBlock.getBlockNumber(), zMMRSet,true);
-		
+			
 			if(!inputvalid) {
 				return false;
 			}
@@ -516,7 +774,7 @@ public class MinimaDB {
 			
 			//Check the Proof..
 			boolean inputvalid = TxPOWChecker.checkTransactionMMR(trans, wit, this, zBlock.getBlockNumber(), zMMRSet,true);
-		
+			
 			if(!inputvalid) {
 				return false;
 			}
@@ -533,7 +791,71 @@ public class MinimaDB {
 	 */
 	public TxPOWDBRow addNewTxPow(TxPOW zTxPOW) {
 		//That's that
-		return mTxPOWDB.addTxPOWDBRow(zTxPOW);
+		TxPOWDBRow row = mTxPOWDB.addTxPOWDBRow(zTxPOW);
+		
+		//Unused transactions go in the MemPool.. 
+		addDroppedTxPOW(mMemPool.addTxPOW(row));
+		
+		return row;
+	}
+	
+	public MemPool getMemPool() {
+		return mMemPool;
+	}
+	
+	/**
+	 * Remember the rows the MemPool let go of. They are not deleted yet - a block above
+	 * the cascade could still have them in it.
+	 */
+	private void addDroppedTxPOW(ArrayList<TxPOWDBRow> zRows) {
+		for(TxPOWDBRow row : zRows) {
+			mDroppedTxPOW.put(row.getTxPOW().getTxPowID(), row);
+		}
+	}
+	
+	/**
+	 * Delete the dropped rows from before the cascade - unless a block has used them or the MemPool has them again
+	 */
+	private void removeDroppedTxPOW(MiniNumber zCascade) {
+		Iterator<TxPOWDBRow> dropped = mDroppedTxPOW.values().iterator();
+		while(dropped.hasNext()) {
+			TxPOW txpow = dropped.next().getTxPOW();
+			if(!txpow.getBlockNumber().isLess(zCascade)) {
+				continue;
+			}
+			dropped.remove();
+			
+			MiniData32 txpowid = txpow.getTxPowID();
+			TxPOWDBRow row = mTxPOWDB.findTxPOWDBRow(txpowid);
+			if(row == null || row.isInBlock() || txpow.isBlock()) {
+				continue;
+			}
+			
+			if(mMemPool.contains(txpowid) || mMemPool.isConflict(txpowid)) {
+				continue;
+			}
+			
+			mTxPOWDB.removeTxPOW(txpowid);
+			mValidCache.remove(txpowid);
+			getBackup().deleteTxpow(txpow);
+		}
+	}
+	
+	public ValidationCache getValidationCache() {
+		return mValidCache;
+	}
+	
+	public MMRProofCache getProofCache() {
+		return mProofCache;
+	}
+	
+	public void setMMRArchive(MMRArchive zArchive) {
+		mArchive = zArchive;
+		mProofCache.setArchive(zArchive);
+	}
+	
+	public MMRArchive getMMRArchive() {
+		return mArchive;
 	}
 	
 	
@@ -555,7 +877,7 @@ public class MinimaDB {
 		
 		//Sort the MMR..
 		node.setMMRset(zMMR);
-		
+
 //		if(zMMR != null) {
 //			//Sort the MMR..
 //			node.setMMRset(zMMR);
@@ -597,32 +919,21 @@ public class MinimaDB {
 	}
 	
 	public void hardResetChain() {
-		//Cascade it.. and then reset it..
+		//Weigh the hard added blocks - the cascade keeps the weights
+		mMainTree.resetWeights();
+		
+		//Cascade it..
 		CascadeTree casc = new CascadeTree(mMainTree, this);
 		casc.cascadedTree();
 		mMainTree = casc.getCascadeTree();
+		
+		//And the MemPool
+		addDroppedTxPOW(mMemPool.rebuild(mTxPOWDB.getAllUnusedTxPOW()));
 	}
 	
 	public ArrayList<Coin> getTotalSimpleSpendableCoins(MiniData32 zTokenID) {
-		ArrayList<Coin> confirmed   = new ArrayList<>();
-		
-		MiniNumber top = getTopBlock();
-		
-		//Do we have any inputs with this address..
-		ArrayList<CoinDBRow> relevant = getCoinDB().getComplete();
-		for(CoinDBRow row : relevant) {
-			if(row.isInBlock() && !row.isSpent()){
-				MiniNumber depth = top.sub(row.getInBlockNumber());
-				if(depth.isMoreEqual(GlobalParams.MINIMA_CONFIRM_DEPTH) && row.getCoin().getTokenID().isExactlyEqual(zTokenID)) {
-					//Is this a simple address..
-					if(getUserDB().isSimpleAddress(row.getCoin().getAddress())) {
-						confirmed.add(row.getCoin());	
-					}	
-				}
-			}
-		}	
-		
-		return confirmed;
+		//The ledger keeps the confirmed coins at simple addresses
+		return getBalanceLedger().getSpendableCoins(zTokenID);
 	}
 	
 	/**
@@ -642,10 +953,11 @@ public class MinimaDB {
 		//The Transaction
 		Transaction trx = new Transaction();
 		Witness wit 	= new Witness();
+		wit.setUseMultiProof(GlobalParams.MINIMA_WITNESS_MULTIPROOF);
 		
 		//Which signatures are required
 		ArrayList<MiniData> sigpubk = new ArrayList<>();
-
+		
 		//The Base current MMRSet
 		MMRSet basemmr  = getMainTree().getChainTip().getMMRSet();
 		
@@ -674,7 +986,7 @@ public class MinimaDB {
 				
 				//Get a proof from a while back.. more than confirmed depth, less than cascade
 //				MMRProof proof = getMainTree().getChainTip().getMMRSet().getProof(row.getMMREntry());
-				MMRProof proof = proofmmr.getProof(row.getMMREntry());
+				MMRProof proof = mProofCache.getProof(proofmmr, row.getMMREntry());
 				
 				if(proof == null) {
 					MinimaLogger.log("ERROR NULL PROOF "+row);
@@ -749,10 +1061,10 @@ public class MinimaDB {
 		
 		//Fresh TxPOW
 		TxPOW txpow = new TxPOW();
-				
+		
 		//Set the time
 		txpow.setTimeMilli(new MiniNumber(""+System.currentTimeMillis()));
-			
+		
 		//Set the Transaction..
 		txpow.setTransaction(zTrans);
 		txpow.setWitness(zWitness);
@@ -770,8 +1082,8 @@ public class MinimaDB {
 		
 		if(!GlobalParams.MINIMA_ZERO_DIFF_BLK) {
 			//Calculate New Chain Speed
-			int len = mMainTree.getAsList().size();
-			 
+			int len = mMainTree.getChainLength();
+			
 			if(len > GlobalParams.MINIMA_CASCADE_DEPTH ) {
 				//Desired Speed.. in blocks per second
 				double actualspeed 	= mMainTree.getChainSpeed();
@@ -781,10 +1093,10 @@ public class MinimaDB {
 				
 				//Current avg
 				MiniNumber avgdiff = mMainTree.getAvgChainDifficulty();
-	
+				
 				//Mutily by the ratio
 				MiniNumber newdiff   = avgdiff.mult(new MiniNumber(""+speedratio));
-	
+				
 				//Now take the log..
 				double log = Maths.log2BI(newdiff.getAsBigInteger());
 				
@@ -797,7 +1109,7 @@ public class MinimaDB {
 		for(int i=0;i<TxPOW.SUPERPARENT_NUM;i++) {
 			txpow.mSuperParents[i] = tip.getTxPow().mSuperParents[i];
 		}
-
+		
 		//And now set the correct SBL given the last block
 		int sbl = tip.getSuperBlockLevel();
 		
@@ -806,7 +1118,7 @@ public class MinimaDB {
 		for(int i=sbl;i>=0;i--) {
 			txpow.mSuperParents[i] = tiptxid;
 		}			
-
+		
 		//Get the current MMRSet
 		MMRSet newset = new MMRSet(tip.getMMRSet());
 		
@@ -821,8 +1133,8 @@ public class MinimaDB {
 			}
 		}
 		
-		//Set the current Transaction List!
-		ArrayList<TxPOWDBRow> unused = mTxPOWDB.getAllUnusedTxPOW();
+		//Set the current Transaction List! - the best from the MemPool
+		ArrayList<TxPOWDBRow> unused = mMemPool.getTopRows(GlobalParams.MINIMA_MAX_BLOCK_TXNS);
 		for(TxPOWDBRow row : unused) {
 			//Check is still VALID..
 			TxPOW txp = row.getTxPOW();
@@ -833,7 +1145,18 @@ public class MinimaDB {
 				Transaction trans = txp.getTransaction();
 				Witness wit = txp.getWitness();
 				
-				boolean valid = TxPOWChecker.checkTransactionMMR(trans, wit, this, txpow.getBlockNumber(),newset,true);
+				//Already checked on this tip.. just apply the MMR changes
+				boolean valid = false;
+				ValidationResult cached = mValidCache.get(txp.getTxPowID(), tip.getTxPowID());
+				if(cached != null) {
+					valid = TxPOWChecker.applyValidationResult(cached, this, txpow.getBlockNumber(), newset);
+				}else {
+					ValidationResult result = new ValidationResult();
+					valid = TxPOWChecker.checkTransactionMMR(trans, wit, this, txpow.getBlockNumber(),newset,true,result);
+					if(valid) {
+						mValidCache.put(txp.getTxPowID(), tip.getTxPowID(), result);
+					}
+				}
 				
 				if(valid) {
 					//Add it..
@@ -844,6 +1167,8 @@ public class MinimaDB {
 					
 					//Remove this!.. It WAS valid but now not.. :(.. dump it..
 					mTxPOWDB.removeTxPOW(txp.getTxPowID());
+					addDroppedTxPOW(mMemPool.remove(txp.getTxPowID()));
+					mValidCache.remove(txp.getTxPowID());
 					
 					//And delete..
 					getBackup().deleteTxpow(txp);
@@ -877,14 +1202,14 @@ public class MinimaDB {
 		SyncPackage sp = new SyncPackage();
 		
 		//Lets create a sync package
-		ArrayList<BlockTreeNode> nodes = getMainTree().getAsList();
+		List<BlockTreeNode> nodes = getMainTree().getMainChain();
 		MiniNumber casc = getMainTree().getCascadeNode().getTxPow().getBlockNumber();
 		sp.setCascadeNode(casc);
 		
-		//Cycle through it all..
+		//Cycle through it all.. from the root
 		for(BlockTreeNode node : nodes) {
 			MiniNumber block = node.getTxPow().getBlockNumber();
-			sp.getAllNodes().add(0,new SyncPacket(node, block.isLessEqual(casc)));
+			sp.getAllNodes().add(new SyncPacket(node, block.isLessEqual(casc)));
 		}
 		
 		//Write it out..
@@ -896,7 +1221,7 @@ public class MinimaDB {
 			dos.close();
 			
 			return baos.toByteArray().length;
-			
+		
 		}catch(Exception exc) {
 			exc.printStackTrace();
 		}
@@ -915,15 +1240,39 @@ public class MinimaDB {
 		return mTxPOWDB;
 	}
 	
+	public MissingTxnTracker getTxnTracker() {
+		return mTxnTracker;
+	}
+	
 	public CoinDB getCoinDB() {
 		return mCoinDB;
 	}
 	
+	/**
+	 * Swap the CoinDB implementation - only before the chain is loaded
+	 * 
+	 * @param zCoinDB
+	 */
+	public void setCoinDB(CoinDB zCoinDB) {
+		mCoinDB = zCoinDB;
+		mCoinDB.getBalanceLedger().setUserDB(mUserDB);
+	}
+	
 	public UserDB getUserDB() {
 		return mUserDB;
 	}
 	
 	public void setUserDB(JavaUserDB zJDB) {
 		mUserDB = zJDB;
+		mCoinDB.getBalanceLedger().setUserDB(mUserDB);
+	}
+	
+	/**
+	 * The balance ledger - brought up to date with the current tip
+	 */
+	public BalanceLedger getBalanceLedger() {
+		BalanceLedger ledger = mCoinDB.getBalanceLedger();
+		ledger.setTopBlock(getTopBlock());
+		return ledger;
 	}
 }
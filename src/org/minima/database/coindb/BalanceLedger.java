@@ -0,0 +1,298 @@
+package org.minima.database.coindb;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.minima.GlobalParams;
+import org.minima.database.userdb.UserDB;
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * The confirmed, unconfirmed and spendable totals of every token, kept up to
+ * date as the coin rows change so a balance is a lookup, not a wallet scan.
+ *
+ * Only coins that are in a block and not spent count. They are kept in block
+ * order - when the tip moves only the coins that cross the confirm depth
+ * move between the confirmed and unconfirmed totals.
+ */
+public class BalanceLedger {
+	
+	/**
+	 * A coin that counts towards the balance
+	 */
+	private class LedgerEntry {
+		Coin mCoin;
+		long mBlock;
+		boolean mSimple;
+		
+		public LedgerEntry(Coin zCoin, long zBlock, boolean zSimple) {
+			mCoin 	= zCoin;
+			mBlock 	= zBlock;
+			mSimple = zSimple;
+		}
+	}
+	
+	/**
+	 * CoinID to entry
+	 */
+	private Hashtable<MiniData32, LedgerEntry> mEntries;
+	
+	/**
+	 * Block number to the entries in that block
+	 */
+	private TreeMap<Long, ArrayList<LedgerEntry>> mByBlock;
+	
+	/**
+	 * TokenID to the entries of that token
+	 */
+	private Hashtable<MiniData32, LinkedHashMap<MiniData32, LedgerEntry>> mByToken;
+	
+	/**
+	 * The totals per token
+	 */
+	private Hashtable<MiniData32, MiniNumber> mConfirmed;
+	private Hashtable<MiniData32, MiniNumber> mUnconfirmed;
+	private Hashtable<MiniData32, MiniNumber> mSpendable;
+	
+	/**
+	 * Coins in this block or lower are confirmed
+	 */
+	private long mConfirmedBlock;
+	
+	/**
+	 * Used to check for simple addresses
+	 */
+	private UserDB mUserDB;
+	
+	public BalanceLedger() {
+		mUserDB = null;
+		clear();
+	}
+	
+	public void clear() {
+		mEntries 		= new Hashtable<>();
+		mByBlock 		= new TreeMap<>();
+		mByToken 		= new Hashtable<>();
+		mConfirmed 		= new Hashtable<>();
+		mUnconfirmed 	= new Hashtable<>();
+		mSpendable 		= new Hashtable<>();
+		mConfirmedBlock = Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Start again from these rows
+	 */
+	public void rebuild(ArrayList<CoinDBRow> zRows) {
+		long confirmed = mConfirmedBlock;
+		clear();
+		mConfirmedBlock = confirmed;
+		
+		for(CoinDBRow row : zRows) {
+			update(row);
+		}
+	}
+	
+	/**
+	 * Set the UserDB - the simple addresses may have changed so re-check them all
+	 */
+	public void setUserDB(UserDB zUserDB) {
+		mUserDB = zUserDB;
+		
+		mSpendable = new Hashtable<>();
+		for(LedgerEntry entry : mEntries.values()) {
+			entry.mSimple = isSimple(entry.mCoin);
+			if(entry.mSimple && isConfirmed(entry)) {
+				addTotal(mSpendable, entry.mCoin, true);
+			}
+		}
+	}
+	
+	/**
+	 * A row has changed - or been added. Re-check if it counts.
+	 */
+	public void update(CoinDBRow zRow) {
+		remove(zRow);
+		
+		if(zRow.isInBlock() && !zRow.isSpent()) {
+			Coin coin = zRow.getCoin();
+			LedgerEntry entry = new LedgerEntry(coin, zRow.getInBlockNumber().getAsLong(), isSimple(coin));
+			
+			mEntries.put(coin.getCoinID(), entry);
+			
+			ArrayList<LedgerEntry> block = mByBlock.get(entry.mBlock);
+			if(block == null) {
+				block = new ArrayList<>();
+				mByBlock.put(entry.mBlock, block);
+			}
+			block.add(entry);
+			
+			LinkedHashMap<MiniData32, LedgerEntry> token = mByToken.get(coin.getTokenID());
+			if(token == null) {
+				token = new LinkedHashMap<>();
+				mByToken.put(coin.getTokenID(), token);
+			}
+			token.put(coin.getCoinID(), entry);
+			
+			addToTotals(entry, true);
+		}
+	}
+	
+	/**
+	 * A row is no longer in the CoinDB
+	 */
+	public void remove(CoinDBRow zRow) {
+		MiniData32 coinid = zRow.getCoin().getCoinID();
+		LedgerEntry entry = mEntries.remove(coinid);
+		if(entry == null) {
+			return;
+		}
+		
+		ArrayList<LedgerEntry> block = mByBlock.get(entry.mBlock);
+		if(block != null) {
+			block.remove(entry);
+			if(block.isEmpty()) {
+				mByBlock.remove(entry.mBlock);
+			}
+		}
+		
+		MiniData32 tokenid = entry.mCoin.getTokenID();
+		LinkedHashMap<MiniData32, LedgerEntry> token = mByToken.get(tokenid);
+		if(token != null) {
+			token.remove(coinid);
+			if(token.isEmpty()) {
+				mByToken.remove(tokenid);
+			}
+		}
+		
+		addToTotals(entry, false);
+	}
+	
+	/**
+	 * The chain tip has moved - move the coins that crossed the confirm depth
+	 */
+	public void setTopBlock(MiniNumber zTopBlock) {
+		long newconf = zTopBlock.sub(GlobalParams.MINIMA_CONFIRM_DEPTH).getAsLong();
+		long oldconf = mConfirmedBlock;
+		if(newconf == oldconf) {
+			return;
+		}
+		
+		//Which way..
+		boolean promote = newconf > oldconf;
+		Map<Long, ArrayList<LedgerEntry>> moved;
+		if(promote) {
+			moved = mByBlock.subMap(oldconf, false, newconf, true);
+		}else {
+			moved = mByBlock.subMap(newconf, false, oldconf, true);
+		}
+		
+		for(ArrayList<LedgerEntry> block : moved.values()) {
+			for(LedgerEntry entry : block) {
+				addToTotals(entry, false);
+			}
+		}
+		
+		mConfirmedBlock = newconf;
+		
+		for(ArrayList<LedgerEntry> block : moved.values()) {
+			for(LedgerEntry entry : block) {
+				addToTotals(entry, true);
+			}
+		}
+	}
+	
+	public MiniNumber getConfirmed(MiniData32 zTokenID) {
+		return getTotal(mConfirmed, zTokenID);
+	}
+	
+	public MiniNumber getUnconfirmed(MiniData32 zTokenID) {
+		return getTotal(mUnconfirmed, zTokenID);
+	}
+	
+	public MiniNumber getSpendable(MiniData32 zTokenID) {
+		return getTotal(mSpendable, zTokenID);
+	}
+	
+	public Hashtable<MiniData32, MiniNumber> getAllConfirmed(){
+		return new Hashtable<>(mConfirmed);
+	}
+	
+	public Hashtable<MiniData32, MiniNumber> getAllUnconfirmed(){
+		return new Hashtable<>(mUnconfirmed);
+	}
+	
+	public Hashtable<MiniData32, MiniNumber> getAllSpendable(){
+		return new Hashtable<>(mSpendable);
+	}
+	
+	/**
+	 * @return The confirmed coins of this token at simple addresses
+	 */
+	public ArrayList<Coin> getSpendableCoins(MiniData32 zTokenID){
+		ArrayList<Coin> ret = new ArrayList<>();
+		
+		LinkedHashMap<MiniData32, LedgerEntry> token = mByToken.get(zTokenID);
+		if(token != null) {
+			for(LedgerEntry entry : token.values()) {
+				if(entry.mSimple && isConfirmed(entry)) {
+					ret.add(entry.mCoin);
+				}
+			}
+		}
+		
+		return ret;
+	}
+	
+	private boolean isConfirmed(LedgerEntry zEntry) {
+		return zEntry.mBlock <= mConfirmedBlock;
+	}
+	
+	private boolean isSimple(Coin zCoin) {
+		if(mUserDB == null) {
+			return false;
+		}
+		return mUserDB.isSimpleAddress(zCoin.getAddress());
+	}
+	
+	private void addToTotals(LedgerEntry zEntry, boolean zAdd) {
+		if(isConfirmed(zEntry)) {
+			addTotal(mConfirmed, zEntry.mCoin, zAdd);
+			if(zEntry.mSimple) {
+				addTotal(mSpendable, zEntry.mCoin, zAdd);
+			}
+		}else {
+			addTotal(mUnconfirmed, zEntry.mCoin, zAdd);
+		}
+	}
+	
+	private void addTotal(Hashtable<MiniData32, MiniNumber> zTotals, Coin zCoin, boolean zAdd) {
+		MiniData32 tokenid = zCoin.getTokenID();
+		MiniNumber curr = getTotal(zTotals, tokenid);
+		
+		if(zAdd) {
+			curr = curr.add(zCoin.getAmount());
+		}else {
+			curr = curr.sub(zCoin.getAmount());
+		}
+		
+		//No empty totals
+		if(curr.isEqual(MiniNumber.ZERO)) {
+			zTotals.remove(tokenid);
+		}else {
+			zTotals.put(tokenid, curr);
+		}
+	}
+	
+	private MiniNumber getTotal(Hashtable<MiniData32, MiniNumber> zTotals, MiniData32 zTokenID) {
+		MiniNumber curr = zTotals.get(zTokenID);
+		if(curr == null) {
+			return MiniNumber.ZERO;
+		}
+		return curr;
+	}
+}
@@ -28,6 +28,14 @@ public interface CoinDB {
 	 */
 	public ArrayList<CoinDBRow> checkForRelevantCoins(MiniData32 zAddress);
 	
+	/**
+	 * Return all coins of this token
+	 * 
+	 * @param zTokenID
+	 * @return all coins with this TokenID
+	 */
+	public ArrayList<CoinDBRow> getCoinsForToken(MiniData32 zTokenID);
+	
 	/**
 	 * Get the coin row with this CoinID or NULL if none present
 	 * 
@@ -45,4 +53,19 @@ public interface CoinDB {
 	public CoinDBRow addCoinRow(Coin zCoin);
 	
 	public void removeOldSpentCoins(MiniNumber zMinBlock);
+	
+	/**
+	 * Undo every change made above this block - after a re-org
+	 * 
+	 * @param zBlock
+	 * @return false if the DB can't do this and was cleared instead - it must be rebuilt
+	 */
+	public boolean rollbackToBlock(MiniNumber zBlock);
+	
+	/**
+	 * The per token balances of the coins in this DB
+	 * 
+	 * @return
+	 */
+	public BalanceLedger getBalanceLedger();
 }
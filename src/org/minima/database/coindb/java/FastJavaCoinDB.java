@@ -0,0 +1,290 @@
+package org.minima.database.coindb.java;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+import org.minima.database.coindb.BalanceLedger;
+import org.minima.database.coindb.CoinDB;
+import org.minima.database.coindb.CoinDBRow;
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * A CoinDB with a hash index on the CoinID and multimaps on the address
+ * and the TokenID, so wallets with many coins don't walk the whole list.
+ *
+ * The Coin in a row never changes so the indexes only change on add and remove.
+ * The rows tell the DB when their state changes so the BalanceLedger stays correct.
+ * 
+ * Each row is stamped with the block it was created in and the block it was
+ * spent in, so a re-org can roll back just the rows above the fork.
+ */
+public class FastJavaCoinDB implements CoinDB{
+	
+	/**
+	 * Primary index - CoinID to row. Keeps insertion order like JavaCoinDB.
+	 */
+	private LinkedHashMap<MiniData32, FastJavaCoinDBRow> mRows;
+	
+	/**
+	 * Address to all the rows with that address
+	 */
+	private Hashtable<MiniData32, ArrayList<CoinDBRow>> mAddressRows;
+	
+	/**
+	 * TokenID to all the rows of that token
+	 */
+	private Hashtable<MiniData32, ArrayList<CoinDBRow>> mTokenRows;
+	
+	/**
+	 * Block number to the rows created / spent in that block
+	 */
+	private TreeMap<Long, ArrayList<FastJavaCoinDBRow>> mCreatedAt;
+	private TreeMap<Long, ArrayList<FastJavaCoinDBRow>> mSpentAt;
+	
+	/**
+	 * The running balance
+	 */
+	private BalanceLedger mLedger;
+	
+	public FastJavaCoinDB() {
+		mLedger = new BalanceLedger();
+		resetIndexes();
+	}
+	
+	@Override
+	public void clearDB() {
+		resetIndexes();
+	}
+	
+	@Override
+	public ArrayList<CoinDBRow> getComplete() {
+		return new ArrayList<CoinDBRow>(mRows.values());
+	}
+	
+	@Override
+	public ArrayList<CoinDBRow> checkForRelevantCoins(MiniData32 zAddress) {
+		return getBucket(mAddressRows, zAddress);
+	}
+	
+	@Override
+	public ArrayList<CoinDBRow> getCoinsForToken(MiniData32 zTokenID) {
+		return getBucket(mTokenRows, zTokenID);
+	}
+	
+	@Override
+	public CoinDBRow getCoinRow(MiniData32 zCoinID) {
+		return mRows.get(zCoinID);
+	}
+	
+	@Override
+	public CoinDBRow addCoinRow(Coin zCoin) {
+		CoinDBRow prev = getCoinRow(zCoin.getCoinID());
+		if(prev!=null) {
+			return prev;	
+		}
+		
+		//Create a new Coin
+		FastJavaCoinDBRow row = createRow(zCoin);
+		mRows.put(zCoin.getCoinID(), row);
+		
+		//And index it
+		addToBucket(mAddressRows, zCoin.getAddress(), row);
+		addToBucket(mTokenRows, zCoin.getTokenID(), row);
+		
+		return row;
+	}
+	
+	@Override
+	public void removeOldSpentCoins(MiniNumber zMinBlock) {
+		//Only the rows spent before the block - a spent row is always stamped with the block it is in
+		ArrayList<FastJavaCoinDBRow> old = getRowsBelow(mSpentAt, zMinBlock.getAsLong());
+		for(FastJavaCoinDBRow row : old) {
+			removeRow(row);
+		}
+	}
+	
+	@Override
+	public boolean rollbackToBlock(MiniNumber zBlock) {
+		long fork = zBlock.getAsLong();
+		
+		//Coins spent above the fork are unspent again
+		ArrayList<FastJavaCoinDBRow> spent = getRowsAbove(mSpentAt, fork);
+		for(FastJavaCoinDBRow row : spent) {
+			//Not seen unspent - it was made before the fork
+			long created = row.getCreatedBlock();
+			if(created < 0) {
+				created = fork;
+			}
+			
+			row.setIsSpent(false);
+			row.setInBlockNumber(new MiniNumber(""+created));
+		}
+		
+		//Coins created above the fork never happened
+		ArrayList<FastJavaCoinDBRow> created = getRowsAbove(mCreatedAt, fork);
+		for(FastJavaCoinDBRow row : created) {
+			removeRow(row);
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public BalanceLedger getBalanceLedger() {
+		return mLedger;
+	}
+	
+	/**
+	 * Make a new row for this coin
+	 */
+	protected FastJavaCoinDBRow createRow(Coin zCoin) {
+		return new FastJavaCoinDBRow(zCoin, this);
+	}
+	
+	/**
+	 * Called by the row AFTER a change
+	 * @param zRow
+	 */
+	protected void rowChanged(FastJavaCoinDBRow zRow) {
+		//Is it still in the DB..
+		if(mRows.get(zRow.getCoin().getCoinID()) != zRow) {
+			return;
+		}
+		
+		//Re-stamp it
+		unstampRow(zRow);
+		if(zRow.isInBlock()) {
+			long block = zRow.getInBlockNumber().getAsLong();
+			if(zRow.isSpent()) {
+				zRow.mSpentBlock = block;
+			}else {
+				zRow.mCreatedBlock = block;
+				zRow.mSpentBlock   = -1;
+			}
+		}else {
+			zRow.mCreatedBlock = -1;
+			zRow.mSpentBlock   = -1;
+		}
+		stampRow(zRow);
+		
+		mLedger.update(zRow);
+	}
+	
+	/**
+	 * Set the block stamps directly - when loading a saved row
+	 */
+	protected void restoreStamps(FastJavaCoinDBRow zRow, long zCreated, long zSpent) {
+		unstampRow(zRow);
+		zRow.mCreatedBlock = zCreated;
+		zRow.mSpentBlock   = zSpent;
+		stampRow(zRow);
+	}
+	
+	/**
+	 * Take a row out of the DB and all the indexes
+	 */
+	protected void removeRow(FastJavaCoinDBRow zRow) {
+		Coin coin = zRow.getCoin();
+		if(mRows.get(coin.getCoinID()) != zRow) {
+			return;
+		}
+		
+		unstampRow(zRow);
+		mRows.remove(coin.getCoinID());
+		removeFromBucket(mAddressRows, coin.getAddress(), zRow);
+		removeFromBucket(mTokenRows, coin.getTokenID(), zRow);
+		mLedger.remove(zRow);
+	}
+	
+	private void resetIndexes() {
+		mRows 			= new LinkedHashMap<>();
+		mAddressRows 	= new Hashtable<>();
+		mTokenRows 		= new Hashtable<>();
+		mCreatedAt 		= new TreeMap<>();
+		mSpentAt 		= new TreeMap<>();
+		mLedger.clear();
+	}
+	
+	private void stampRow(FastJavaCoinDBRow zRow) {
+		if(zRow.mCreatedBlock >= 0) {
+			addToStamp(mCreatedAt, zRow.mCreatedBlock, zRow);
+		}
+		if(zRow.mSpentBlock >= 0) {
+			addToStamp(mSpentAt, zRow.mSpentBlock, zRow);
+		}
+	}
+	
+	private void unstampRow(FastJavaCoinDBRow zRow) {
+		removeFromStamp(mCreatedAt, zRow.mCreatedBlock, zRow);
+		removeFromStamp(mSpentAt, zRow.mSpentBlock, zRow);
+	}
+	
+	private ArrayList<FastJavaCoinDBRow> getRowsAbove(TreeMap<Long, ArrayList<FastJavaCoinDBRow>> zStamps, long zBlock){
+		ArrayList<FastJavaCoinDBRow> ret = new ArrayList<>();
+		for(ArrayList<FastJavaCoinDBRow> rows : zStamps.tailMap(zBlock, false).values()) {
+			ret.addAll(rows);
+		}
+		return ret;
+	}
+	
+	private ArrayList<FastJavaCoinDBRow> getRowsBelow(TreeMap<Long, ArrayList<FastJavaCoinDBRow>> zStamps, long zBlock){
+		ArrayList<FastJavaCoinDBRow> ret = new ArrayList<>();
+		for(ArrayList<FastJavaCoinDBRow> rows : zStamps.headMap(zBlock, false).values()) {
+			ret.addAll(rows);
+		}
+		return ret;
+	}
+	
+	private void addToStamp(TreeMap<Long, ArrayList<FastJavaCoinDBRow>> zStamps, long zBlock, FastJavaCoinDBRow zRow) {
+		ArrayList<FastJavaCoinDBRow> rows = zStamps.get(zBlock);
+		if(rows == null) {
+			rows = new ArrayList<>();
+			zStamps.put(zBlock, rows);
+		}
+		rows.add(zRow);
+	}
+	
+	private void removeFromStamp(TreeMap<Long, ArrayList<FastJavaCoinDBRow>> zStamps, long zBlock, FastJavaCoinDBRow zRow) {
+		ArrayList<FastJavaCoinDBRow> rows = zStamps.get(zBlock);
+		if(rows != null) {
+			rows.remove(zRow);
+			if(rows.isEmpty()) {
+				zStamps.remove(zBlock);
+			}
+		}
+	}
+	
+	private ArrayList<CoinDBRow> getBucket(Hashtable<MiniData32, ArrayList<CoinDBRow>> zIndex, MiniData32 zKey){
+		ArrayList<CoinDBRow> ret = new ArrayList<>();
+		
+		ArrayList<CoinDBRow> bucket = zIndex.get(zKey);
+		if(bucket != null) {
+			ret.addAll(bucket);
+		}
+		
+		return ret;
+	}
+	
+	private void addToBucket(Hashtable<MiniData32, ArrayList<CoinDBRow>> zIndex, MiniData32 zKey, CoinDBRow zRow) {
+		ArrayList<CoinDBRow> bucket = zIndex.get(zKey);
+		if(bucket == null) {
+			bucket = new ArrayList<>();
+			zIndex.put(zKey, bucket);
+		}
+		bucket.add(zRow);
+	}
+	
+	private void removeFromBucket(Hashtable<MiniData32, ArrayList<CoinDBRow>> zIndex, MiniData32 zKey, CoinDBRow zRow) {
+		ArrayList<CoinDBRow> bucket = zIndex.get(zKey);
+		if(bucket != null) {
+			bucket.remove(zRow);
+			if(bucket.isEmpty()) {
+				zIndex.remove(zKey);
+			}
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.minima.database.coindb.java;
+
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * A JavaCoinDBRow that tells its FastJavaCoinDB whenever a change
+ * could move it in or out of the balance, or change its block stamps.
+ */
+public class FastJavaCoinDBRow extends JavaCoinDBRow {
+	
+	/**
+	 * The database that holds this row
+	 */
+	private FastJavaCoinDB mDB;
+	
+	/**
+	 * The block it was created in and the block it was spent in - or -1
+	 */
+	long mCreatedBlock;
+	long mSpentBlock;
+	
+	public FastJavaCoinDBRow(Coin zCoin, FastJavaCoinDB zDB) {
+		super(zCoin);
+		
+		mDB 			= zDB;
+		mCreatedBlock 	= -1;
+		mSpentBlock 	= -1;
+	}
+	
+	public long getCreatedBlock() {
+		return mCreatedBlock;
+	}
+	
+	public long getSpentBlock() {
+		return mSpentBlock;
+	}
+	
+	@Override
+	public void setIsSpent(boolean zSpent) {
+		super.setIsSpent(zSpent);
+		mDB.rowChanged(this);
+	}
+	
+	@Override
+	public void setIsInBlock(boolean zIn) {
+		super.setIsInBlock(zIn);
+		mDB.rowChanged(this);
+	}
+	
+	@Override
+	public void setInBlockNumber(MiniNumber zInBlockNumber) {
+		super.setInBlockNumber(zInBlockNumber);
+		mDB.rowChanged(this);
+	}
+	
+	@Override
+	public void setMMREntry(MiniNumber zEntry) {
+		super.setMMREntry(zEntry);
+		mDB.rowChanged(this);
+	}
+}
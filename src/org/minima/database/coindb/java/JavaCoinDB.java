@@ -2,6 +2,7 @@ package org.minima.database.coindb.java;
 
 import java.util.ArrayList;
 
+import org.minima.database.coindb.BalanceLedger;
 import org.minima.database.coindb.CoinDB;
 import org.minima.database.coindb.CoinDBRow;
 import org.minima.objects.Coin;
@@ -15,7 +16,10 @@ public class JavaCoinDB implements CoinDB{
 	
 	ArrayList<CoinDBRow> mRows;
 	
+	BalanceLedger mLedger;
+	
 	public JavaCoinDB() {
+		mLedger = new BalanceLedger();
 		clearDB();
 	}
 	
@@ -53,6 +57,17 @@ public class JavaCoinDB implements CoinDB{
 		}
 		return ret;
 	}
+	
+	@Override
+	public ArrayList<CoinDBRow> getCoinsForToken(MiniData32 zTokenID) {
+		ArrayList<CoinDBRow> ret = new ArrayList<>();
+		for(CoinDBRow row : mRows) {
+			if(row.getCoin().getTokenID().isExactlyEqual(zTokenID)) {
+				ret.add(row);
+			}
+		}
+		return ret;
+	}
 
 	@Override
 	public CoinDBRow getCoinRow(MiniData32 zCoinID) {
@@ -90,5 +105,19 @@ public class JavaCoinDB implements CoinDB{
 		}
 		mRows = newrows;
 	}
+	
+	@Override
+	public boolean rollbackToBlock(MiniNumber zBlock) {
+		//No block stamps - start again
+		clearDB();
+		return false;
+	}
+	
+	@Override
+	public BalanceLedger getBalanceLedger() {
+		//The rows don't report changes - so rebuild it each time
+		mLedger.rebuild(mRows);
+		return mLedger;
+	}
 
 }
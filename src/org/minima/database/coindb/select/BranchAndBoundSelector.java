@@ -0,0 +1,95 @@
+package org.minima.database.coindb.select;
+
+import java.util.ArrayList;
+
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Search for a set of coins that adds up to the amount exactly, so no change
+ * output is needed, using the fewest inputs found. A depth first search over
+ * the coins biggest first - include, then exclude - that cuts off any branch
+ * that goes over, can't reach the amount or can't beat the best so far.
+ * 
+ * If no exact match is found in time the largest coins are used.
+ */
+public class BranchAndBoundSelector implements CoinSelector {
+	
+	/**
+	 * Most steps of the search
+	 */
+	public static final int MAX_TRIES = 100000;
+	
+	@Override
+	public ArrayList<Coin> selectCoins(ArrayList<Coin> zCoins, MiniNumber zAmount) {
+		ArrayList<Coin> sorted = CoinSelectors.sortByAmount(zCoins, true);
+		int len = sorted.size();
+		
+		//What is left after each coin
+		MiniNumber[] remaining = new MiniNumber[len+1];
+		remaining[len] = MiniNumber.ZERO;
+		for(int i=len-1;i>=0;i--) {
+			remaining[i] = remaining[i+1].add(sorted.get(i).getAmount());
+		}
+		
+		//Not enough at all..
+		if(remaining[0].isLess(zAmount)) {
+			return null;
+		}
+		
+		ArrayList<Integer> best 	 = null;
+		ArrayList<Integer> selection = new ArrayList<>();
+		MiniNumber current = MiniNumber.ZERO;
+		int index = 0;
+		
+		for(int tries=0;tries<MAX_TRIES;tries++) {
+			boolean backtrack = false;
+			
+			if(current.isEqual(zAmount)) {
+				//Exact match - keep it if it's fewer coins
+				if(best == null || selection.size() < best.size()) {
+					best = new ArrayList<>(selection);
+				}
+				backtrack = true;
+			
+			}else if(current.isMore(zAmount) || current.add(remaining[index]).isLess(zAmount)) {
+				//Gone over.. or can't get there
+				backtrack = true;
+			
+			}else if(best != null && selection.size()+1 >= best.size()) {
+				//Can't beat the best
+				backtrack = true;
+			}
+			
+			if(backtrack) {
+				if(selection.isEmpty()) {
+					//Searched everything
+					break;
+				}
+				
+				//Take out the last coin added and try without it
+				int last = selection.remove(selection.size()-1);
+				current  = current.sub(sorted.get(last).getAmount());
+				index 	 = last+1;
+			
+			}else {
+				//Add this coin
+				selection.add(index);
+				current = current.add(sorted.get(index).getAmount());
+				index++;
+			}
+		}
+		
+		//Nothing exact..
+		if(best == null) {
+			return new LargestFirstSelector().selectCoins(zCoins, zAmount);
+		}
+		
+		ArrayList<Coin> ret = new ArrayList<>();
+		for(Integer coin : best) {
+			ret.add(sorted.get(coin));
+		}
+		
+		return ret;
+	}
+}
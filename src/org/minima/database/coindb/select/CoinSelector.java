@@ -0,0 +1,21 @@
+package org.minima.database.coindb.select;
+
+import java.util.ArrayList;
+
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Picks which coins to spend for a payment.
+ */
+public interface CoinSelector {
+	
+	/**
+	 * Choose the inputs
+	 * 
+	 * @param zCoins - the spendable coins of the token
+	 * @param zAmount - how much is needed
+	 * @return the coins to use or NULL if there isn't enough
+	 */
+	public ArrayList<Coin> selectCoins(ArrayList<Coin> zCoins, MiniNumber zAmount);
+}
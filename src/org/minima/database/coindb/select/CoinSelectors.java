@@ -0,0 +1,89 @@
+package org.minima.database.coindb.select;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * The available coin selection strategies and some helpers they share.
+ */
+public class CoinSelectors {
+	
+	public static final String STRATEGY_BNB 		= "bnb";
+	public static final String STRATEGY_LARGEST 	= "largest";
+	public static final String STRATEGY_CONSOLIDATE = "consolidate";
+	
+	/**
+	 * Get a selector by name - the default is branch and bound
+	 */
+	public static CoinSelector getSelector(String zStrategy) {
+		if(zStrategy == null || zStrategy.equals("") || zStrategy.equals(STRATEGY_BNB)) {
+			return new BranchAndBoundSelector();
+		}else if(zStrategy.equals(STRATEGY_LARGEST)) {
+			return new LargestFirstSelector();
+		}else if(zStrategy.equals(STRATEGY_CONSOLIDATE)) {
+			return new ConsolidationSelector();
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * @return a copy of the coins sorted by amount - biggest first if zDescending
+	 */
+	public static ArrayList<Coin> sortByAmount(ArrayList<Coin> zCoins, final boolean zDescending){
+		ArrayList<Coin> sorted = new ArrayList<>(zCoins);
+		
+		Collections.sort(sorted, new Comparator<Coin>() {
+			@Override
+			public int compare(Coin zCoin1, Coin zCoin2) {
+				int comp = zCoin1.getAmount().compareTo(zCoin2.getAmount());
+				if(comp == 0) {
+					//Always the same order
+					comp = zCoin1.getCoinID().compare(zCoin2.getCoinID());
+				}
+				
+				return zDescending ? -comp : comp;
+			}
+		});
+		
+		return sorted;
+	}
+	
+	/**
+	 * Add coins in order until the amount is covered
+	 * 
+	 * @return the coins or NULL if there isn't enough
+	 */
+	public static ArrayList<Coin> takeUntilCovered(ArrayList<Coin> zSorted, MiniNumber zAmount){
+		ArrayList<Coin> ret = new ArrayList<>();
+		
+		MiniNumber total = MiniNumber.ZERO;
+		for(Coin coin : zSorted) {
+			if(total.isMoreEqual(zAmount)) {
+				break;
+			}
+			
+			ret.add(coin);
+			total = total.add(coin.getAmount());
+		}
+		
+		if(total.isLess(zAmount)) {
+			return null;
+		}
+		
+		return ret;
+	}
+	
+	public static MiniNumber getTotal(ArrayList<Coin> zCoins) {
+		MiniNumber total = MiniNumber.ZERO;
+		for(Coin coin : zCoins) {
+			total = total.add(coin.getAmount());
+		}
+		
+		return total;
+	}
+}
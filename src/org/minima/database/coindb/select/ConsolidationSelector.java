@@ -0,0 +1,28 @@
+package org.minima.database.coindb.select;
+
+import java.util.ArrayList;
+
+import org.minima.GlobalParams;
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Spend the smallest coins first to tidy up the wallet, as long as that
+ * doesn't need too many inputs. Otherwise the largest first.
+ */
+public class ConsolidationSelector implements CoinSelector {
+	
+	@Override
+	public ArrayList<Coin> selectCoins(ArrayList<Coin> zCoins, MiniNumber zAmount) {
+		ArrayList<Coin> small = CoinSelectors.takeUntilCovered(CoinSelectors.sortByAmount(zCoins, false), zAmount);
+		if(small == null) {
+			return null;
+		}
+		
+		if(small.size() <= GlobalParams.MINIMA_CONSOLIDATE_MAX_INPUTS) {
+			return small;
+		}
+		
+		return new LargestFirstSelector().selectCoins(zCoins, zAmount);
+	}
+}
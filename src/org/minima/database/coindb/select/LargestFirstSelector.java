@@ -0,0 +1,17 @@
+package org.minima.database.coindb.select;
+
+import java.util.ArrayList;
+
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Spend the biggest coins first - the fewest inputs that cover the amount.
+ */
+public class LargestFirstSelector implements CoinSelector {
+	
+	@Override
+	public ArrayList<Coin> selectCoins(ArrayList<Coin> zCoins, MiniNumber zAmount) {
+		return CoinSelectors.takeUntilCovered(CoinSelectors.sortByAmount(zCoins, true), zAmount);
+	}
+}
@@ -1,5 +1,391 @@
 package org.minima.database.coindb.sql;
 
-public class SQLCoinDB {
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 
+import org.minima.database.coindb.CoinDBRow;
+import org.minima.database.coindb.java.FastJavaCoinDB;
+import org.minima.database.coindb.java.FastJavaCoinDBRow;
+import org.minima.objects.Coin;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * A CoinDB that is kept on disk so the wallet survives a restart.
+ *
+ * The indexes, block stamps and balance are the same as FastJavaCoinDB and
+ * live on the heap. Every row change is appended to a log and the log is
+ * replayed on startup. When most of the log is old versions of rows it is
+ * rewritten with just the current ones.
+ */
+public class SQLCoinDB extends FastJavaCoinDB {
+	
+	/**
+	 * The log file
+	 */
+	private static final String LOG_NAME = "coins.log";
+	private static final String TMP_NAME = "coins.log.tmp";
+	
+	/**
+	 * The log record types
+	 */
+	private static final byte RECORD_ROW    = 1;
+	private static final byte RECORD_REMOVE = 2;
+	
+	/**
+	 * Every record is a type byte and a length int and then the data
+	 */
+	private static final int RECORD_HEADER = 5;
+	
+	/**
+	 * Always allow this many records before rewriting the log
+	 */
+	private static final int MIN_COMPACT_RECORDS = 1024;
+	
+	/**
+	 * Where the log lives
+	 */
+	private File mFolder;
+	
+	/**
+	 * The open log
+	 */
+	private RandomAccessFile mLog;
+	
+	/**
+	 * How many records are in the log
+	 */
+	private long mRecords;
+	
+	/**
+	 * Don't write while the log is being replayed
+	 */
+	private boolean mLoading;
+	
+	public SQLCoinDB(File zFolder) {
+		super();
+		
+		mFolder = zFolder;
+		if(!mFolder.exists()) {
+			mFolder.mkdirs();
+		}
+		
+		//Rebuild the DB from the log
+		mLoading = true;
+		loadLog();
+		mLoading = false;
+		
+		MinimaLogger.log("Coin log loaded "+getComplete().size()+" rows from "+mRecords+" records in "+mFolder.getAbsolutePath());
+		
+		//Tidy up if needed..
+		checkCompact();
+	}
+	
+	@Override
+	public void clearDB() {
+		super.clearDB();
+		
+		//Can be called before the log is open
+		if(mLog != null) {
+			try {
+				mLog.setLength(0);
+			} catch (IOException e) {
+				MinimaLogger.log("Coin log clear error "+e);
+			}
+			mRecords = 0;
+		}
+	}
+	
+	@Override
+	public CoinDBRow addCoinRow(Coin zCoin) {
+		CoinDBRow prev = getCoinRow(zCoin.getCoinID());
+		if(prev != null) {
+			return prev;
+		}
+		
+		FastJavaCoinDBRow row = (FastJavaCoinDBRow) super.addCoinRow(zCoin);
+		writeRow(row);
+		
+		return row;
+	}
+	
+	@Override
+	public void removeOldSpentCoins(MiniNumber zMinBlock) {
+		super.removeOldSpentCoins(zMinBlock);
+		checkCompact();
+	}
+	
+	@Override
+	public boolean rollbackToBlock(MiniNumber zBlock) {
+		boolean ok = super.rollbackToBlock(zBlock);
+		checkCompact();
+		return ok;
+	}
+	
+	/**
+	 * Close the log file
+	 */
+	public void close() {
+		if(mLog != null) {
+			try {
+				mLog.close();
+			} catch (IOException e) {}
+			mLog = null;
+		}
+	}
+	
+	@Override
+	protected void rowChanged(FastJavaCoinDBRow zRow) {
+		super.rowChanged(zRow);
+		
+		//Still in the DB..
+		if(getCoinRow(zRow.getCoin().getCoinID()) == zRow) {
+			writeRow(zRow);
+		}
+	}
+	
+	@Override
+	protected void removeRow(FastJavaCoinDBRow zRow) {
+		boolean present = getCoinRow(zRow.getCoin().getCoinID()) == zRow;
+		
+		super.removeRow(zRow);
+		
+		if(present) {
+			writeRemove(zRow.getCoin().getCoinID());
+		}
+	}
+	
+	private void writeRow(FastJavaCoinDBRow zRow) {
+		if(mLoading || mLog == null) {
+			return;
+		}
+		
+		try {
+			append(RECORD_ROW, getRowData(zRow));
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log write error "+e);
+		}
+	}
+	
+	private void writeRemove(MiniData32 zCoinID) {
+		if(mLoading || mLog == null) {
+			return;
+		}
+		
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(baos);
+			zCoinID.writeDataStream(dos);
+			dos.flush();
+			
+			append(RECORD_REMOVE, baos.toByteArray());
+		
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log write error "+e);
+		}
+	}
+	
+	/**
+	 * The coin and all the row state
+	 */
+	private byte[] getRowData(FastJavaCoinDBRow zRow) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		
+		zRow.getCoin().writeDataStream(dos);
+		dos.writeBoolean(zRow.isSpent());
+		dos.writeBoolean(zRow.isInBlock());
+		zRow.getInBlockNumber().writeDataStream(dos);
+		zRow.getMMREntry().writeDataStream(dos);
+		dos.writeLong(zRow.getCreatedBlock());
+		dos.writeLong(zRow.getSpentBlock());
+		dos.flush();
+		
+		return baos.toByteArray();
+	}
+	
+	private static byte[] getRecord(byte zType, byte[] zData) {
+		byte[] record = new byte[RECORD_HEADER + zData.length];
+		record[0] = zType;
+		record[1] = (byte)(zData.length >>> 24);
+		record[2] = (byte)(zData.length >>> 16);
+		record[3] = (byte)(zData.length >>> 8);
+		record[4] = (byte)(zData.length);
+		System.arraycopy(zData, 0, record, RECORD_HEADER, zData.length);
+		
+		return record;
+	}
+	
+	private void append(byte zType, byte[] zData) throws IOException {
+		mLog.seek(mLog.length());
+		mLog.write(getRecord(zType, zData));
+		mRecords++;
+	}
+	
+	private void openLog() {
+		try {
+			mLog = new RandomAccessFile(new File(mFolder, LOG_NAME), "rw");
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log could not open "+e);
+		}
+	}
+	
+	/**
+	 * Replay the whole log
+	 */
+	private void loadLog() {
+		File logfile = new File(mFolder, LOG_NAME);
+		
+		//A rewrite that did not finish.. only use it if the old log is gone
+		File tmp = new File(mFolder, TMP_NAME);
+		if(tmp.exists()) {
+			if(logfile.exists()) {
+				tmp.delete();
+			}else {
+				tmp.renameTo(logfile);
+			}
+		}
+		
+		mRecords = 0;
+		long good = 0;
+		if(logfile.exists()) {
+			good = replayLog(logfile);
+		}
+		
+		openLog();
+		
+		//A record was cut short - drop it
+		try {
+			if(mLog != null && good < mLog.length()) {
+				MinimaLogger.log("Coin log truncating at "+good);
+				mLog.setLength(good);
+			}
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log could not truncate "+e);
+		}
+	}
+	
+	/**
+	 * @return The length of the log that was read OK
+	 */
+	private long replayLog(File zFile) {
+		long pos = 0;
+		long len = zFile.length();
+		
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(new FileInputStream(zFile)));
+			
+			while(pos + RECORD_HEADER <= len) {
+				byte type = dis.readByte();
+				int size  = dis.readInt();
+				if(size < 0 || pos + RECORD_HEADER + size > len) {
+					break;
+				}
+				
+				byte[] data = new byte[size];
+				dis.readFully(data);
+				
+				replayRecord(type, data);
+				mRecords++;
+				
+				pos += RECORD_HEADER + size;
+			}
+		
+		} catch (EOFException e) {
+			//Cut short..
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log read error "+e);
+		}finally {
+			if(dis != null) {
+				try {
+					dis.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		return pos;
+	}
+	
+	private void replayRecord(byte zType, byte[] zData) throws IOException {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(zData));
+		
+		if(zType == RECORD_ROW) {
+			Coin coin = Coin.ReadFromStream(dis);
+			
+			FastJavaCoinDBRow row = (FastJavaCoinDBRow) addCoinRow(coin);
+			row.setIsSpent(dis.readBoolean());
+			row.setIsInBlock(dis.readBoolean());
+			row.setInBlockNumber(MiniNumber.ReadFromStream(dis));
+			row.setMMREntry(MiniNumber.ReadFromStream(dis));
+			
+			long created = dis.readLong();
+			long spent   = dis.readLong();
+			restoreStamps(row, created, spent);
+		
+		}else if(zType == RECORD_REMOVE) {
+			MiniData32 coinid = MiniData32.ReadFromStream(dis);
+			
+			CoinDBRow row = getCoinRow(coinid);
+			if(row != null) {
+				removeRow((FastJavaCoinDBRow) row);
+			}
+		}
+	}
+	
+	/**
+	 * If most of the log is old records - write out just the current rows
+	 */
+	private void checkCompact() {
+		ArrayList<CoinDBRow> rows = getComplete();
+		if(mLog == null || mRecords < MIN_COMPACT_RECORDS || mRecords < rows.size() * 2) {
+			return;
+		}
+		
+		File logfile = new File(mFolder, LOG_NAME);
+		File tmp 	 = new File(mFolder, TMP_NAME);
+		
+		long oldrecords = mRecords;
+		try {
+			//Write the new log
+			DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+			for(CoinDBRow row : rows) {
+				dos.write(getRecord(RECORD_ROW, getRowData((FastJavaCoinDBRow) row)));
+			}
+			dos.flush();
+			dos.close();
+			
+			//And swap it in
+			close();
+			if(!tmp.renameTo(logfile)) {
+				logfile.delete();
+				if(!tmp.renameTo(logfile)) {
+					throw new IOException("Could not rename "+tmp.getName());
+				}
+			}
+			mRecords = rows.size();
+		
+		} catch (IOException e) {
+			MinimaLogger.log("Coin log compaction error "+e);
+		}
+		
+		//Open it again
+		if(mLog == null) {
+			openLog();
+		}
+		
+		MinimaLogger.log("Coin log compacted "+oldrecords+" records to "+mRecords);
+	}
 }
@@ -0,0 +1,295 @@
+package org.minima.database.mempool;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.TreeSet;
+
+import org.minima.GlobalParams;
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * All the transactions that are not in a block yet, highest priority first.
+ *
+ * The pool has a maximum number of transactions and bytes. When it is full
+ * the lowest priority transactions are dropped. A transaction that spends a
+ * coin already spent by a transaction in the pool is not let in - but it is
+ * kept to one side, and tried again if the other transaction is dropped.
+ *
+ * Every row the pool lets go of for good is returned, so the caller can
+ * delete it from the TxPowDB.
+ */
+public class MemPool {
+	
+	/**
+	 * The entries in priority order
+	 */
+	private TreeSet<MemPoolEntry> mOrdered;
+	
+	/**
+	 * TxPOWID to entry
+	 */
+	private Hashtable<MiniData32, MemPoolEntry> mEntries;
+	
+	/**
+	 * CoinID to the entry that spends it
+	 */
+	private Hashtable<MiniData32, MemPoolEntry> mSpentCoins;
+	
+	/**
+	 * CoinID to the rows turned away because a transaction in the pool spends it
+	 */
+	private Hashtable<MiniData32, ArrayList<TxPOWDBRow>> mConflicts;
+	private int mConflictCount;
+	
+	/**
+	 * TxPOWID of each row kept to one side - to the coin it is kept under
+	 */
+	private Hashtable<MiniData32, MiniData32> mConflictIDs;
+	
+	/**
+	 * Total size of all the entries
+	 */
+	private long mTotalBytes;
+	
+	/**
+	 * Order the entries were added
+	 */
+	private long mOrderCounter;
+	
+	/**
+	 * The limits
+	 */
+	private int mMaxTxns;
+	private long mMaxBytes;
+	
+	public MemPool() {
+		this(GlobalParams.MINIMA_MEMPOOL_MAX_TXNS, GlobalParams.MINIMA_MEMPOOL_MAX_BYTES);
+	}
+	
+	public MemPool(int zMaxTxns, long zMaxBytes) {
+		mMaxTxns  = zMaxTxns;
+		mMaxBytes = zMaxBytes;
+		
+		clear();
+	}
+	
+	public void clear() {
+		mOrdered 		= new TreeSet<>();
+		mEntries 		= new Hashtable<>();
+		mSpentCoins 	= new Hashtable<>();
+		mConflicts 		= new Hashtable<>();
+		mConflictIDs 	= new Hashtable<>();
+		mConflictCount 	= 0;
+		mTotalBytes 	= 0;
+		mOrderCounter 	= 0;
+	}
+	
+	public int getSize() {
+		return mEntries.size();
+	}
+	
+	public long getTotalBytes() {
+		return mTotalBytes;
+	}
+	
+	public boolean contains(MiniData32 zTxPowID) {
+		return mEntries.containsKey(zTxPowID);
+	}
+	
+	/**
+	 * Is this coin spent by a transaction in the pool
+	 */
+	public boolean isCoinSpent(MiniData32 zCoinID) {
+		return mSpentCoins.containsKey(zCoinID);
+	}
+	
+	/**
+	 * Is this a double spend kept to one side
+	 */
+	public boolean isConflict(MiniData32 zTxPowID) {
+		return mConflictIDs.containsKey(zTxPowID);
+	}
+	
+	/**
+	 * How many double spends are waiting to try again
+	 */
+	public int getConflictSize() {
+		return mConflictCount;
+	}
+	
+	/**
+	 * Add an unused transaction.
+	 *
+	 * @param zRow
+	 * @return The rows dropped - to make room, or double spends there is no room to keep.
+	 * Can be the one just added
+	 */
+	public ArrayList<TxPOWDBRow> addTxPOW(TxPOWDBRow zRow) {
+		ArrayList<TxPOWDBRow> evicted = new ArrayList<>();
+		
+		//Only transactions that are not in a block
+		TxPOW txpow = zRow.getTxPOW();
+		if(!txpow.isTransaction() || zRow.isInBlock()) {
+			return evicted;
+		}
+		
+		//Already in..
+		if(mEntries.containsKey(txpow.getTxPowID())) {
+			return evicted;
+		}
+		
+		//Check for a double spend
+		MemPoolEntry entry = new MemPoolEntry(zRow, mOrderCounter++);
+		for(MiniData32 coinid : entry.getSpentCoins()) {
+			if(mSpentCoins.containsKey(coinid)) {
+				MinimaLogger.log("MemPool double spend rejected "+txpow.getTxPowID()+" coin "+coinid);
+				
+				//Keep it in case the other one is dropped
+				if(!addConflict(coinid, zRow)) {
+					evicted.add(zRow);
+				}
+				return evicted;
+			}
+		}
+		
+		//Add it
+		mOrdered.add(entry);
+		mEntries.put(entry.getTxPowID(), entry);
+		for(MiniData32 coinid : entry.getSpentCoins()) {
+			mSpentCoins.put(coinid, entry);
+		}
+		mTotalBytes += entry.getSize();
+		
+		//Are we over the limit..
+		ArrayList<TxPOWDBRow> retry = new ArrayList<>();
+		while(!mOrdered.isEmpty() && (mEntries.size() > mMaxTxns || mTotalBytes > mMaxBytes)) {
+			MemPoolEntry lowest = mOrdered.last();
+			removeEntry(lowest);
+			evicted.add(lowest.getRow());
+			
+			//Its coins are free again
+			retry.addAll(takeConflicts(lowest));
+		}
+		
+		//So the ones turned away for them can try again
+		for(TxPOWDBRow row : retry) {
+			evicted.addAll(addTxPOW(row));
+		}
+		
+		return evicted;
+	}
+	
+	/**
+	 * Remove a transaction - it's in a block or no longer valid
+	 * 
+	 * @return The double spends of it that were kept - they are dropped too
+	 */
+	public ArrayList<TxPOWDBRow> remove(MiniData32 zTxPowID) {
+		MemPoolEntry entry = mEntries.get(zTxPowID);
+		if(entry == null) {
+			return new ArrayList<>();
+		}
+		
+		removeEntry(entry);
+		
+		//Its coins are spent - the double spends will never be valid
+		return takeConflicts(entry);
+	}
+	
+	/**
+	 * Start again from this list of unused rows - after a re-org
+	 *
+	 * @return The rows that did not fit
+	 */
+	public ArrayList<TxPOWDBRow> rebuild(ArrayList<TxPOWDBRow> zUnused) {
+		clear();
+		
+		ArrayList<TxPOWDBRow> evicted = new ArrayList<>();
+		for(TxPOWDBRow row : zUnused) {
+			evicted.addAll(addTxPOW(row));
+		}
+		
+		return evicted;
+	}
+	
+	/**
+	 * The highest priority rows
+	 *
+	 * @param zMax
+	 * @return
+	 */
+	public ArrayList<TxPOWDBRow> getTopRows(int zMax) {
+		ArrayList<TxPOWDBRow> ret = new ArrayList<>();
+		for(MemPoolEntry entry : mOrdered) {
+			if(ret.size() >= zMax) {
+				break;
+			}
+			ret.add(entry.getRow());
+		}
+		
+		return ret;
+	}
+	
+	/**
+	 * Keep a double spend - unless there are too many already
+	 * 
+	 * @return false if it could not be kept
+	 */
+	private boolean addConflict(MiniData32 zCoinID, TxPOWDBRow zRow) {
+		MiniData32 txpowid = zRow.getTxPOW().getTxPowID();
+		if(mConflictIDs.containsKey(txpowid)) {
+			return true;
+		}
+		
+		if(mConflictCount >= mMaxTxns) {
+			return false;
+		}
+		
+		ArrayList<TxPOWDBRow> rows = mConflicts.get(zCoinID);
+		if(rows == null) {
+			rows = new ArrayList<>();
+			mConflicts.put(zCoinID, rows);
+		}
+		
+		rows.add(zRow);
+		mConflictIDs.put(txpowid, zCoinID);
+		mConflictCount++;
+		
+		return true;
+	}
+	
+	/**
+	 * Stop keeping the double spends of this entry's coins
+	 * 
+	 * @return the rows that were kept
+	 */
+	private ArrayList<TxPOWDBRow> takeConflicts(MemPoolEntry zEntry) {
+		ArrayList<TxPOWDBRow> ret = new ArrayList<>();
+		for(MiniData32 coinid : zEntry.getSpentCoins()) {
+			ArrayList<TxPOWDBRow> rows = mConflicts.remove(coinid);
+			if(rows != null) {
+				for(TxPOWDBRow row : rows) {
+					mConflictIDs.remove(row.getTxPOW().getTxPowID());
+				}
+				mConflictCount -= rows.size();
+				ret.addAll(rows);
+			}
+		}
+		
+		return ret;
+	}
+	
+	private void removeEntry(MemPoolEntry zEntry) {
+		mOrdered.remove(zEntry);
+		mEntries.remove(zEntry.getTxPowID());
+		for(MiniData32 coinid : zEntry.getSpentCoins()) {
+			if(mSpentCoins.get(coinid) == zEntry) {
+				mSpentCoins.remove(coinid);
+			}
+		}
+		mTotalBytes -= zEntry.getSize();
+	}
+}
@@ -0,0 +1,126 @@
+package org.minima.database.mempool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.objects.Coin;
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
+import org.minima.system.input.functions.gimme50;
+
+/**
+ * A transaction waiting in the MemPool.
+ *
+ * The priority details are copied out of the TxPOW when it is added so the
+ * ordering never needs the TxPOW itself.
+ */
+public class MemPoolEntry implements Comparable<MemPoolEntry> {
+	
+	/**
+	 * The TxPOW row
+	 */
+	TxPOWDBRow mRow;
+	
+	/**
+	 * The TxPOWID - lower means more POW
+	 */
+	MiniData32 mTxPowID;
+	
+	/**
+	 * The Transaction difficulty
+	 */
+	int mTxnDifficulty;
+	
+	/**
+	 * When it was made
+	 */
+	long mTimeMilli;
+	
+	/**
+	 * Order it was added to the MemPool - breaks any ties
+	 */
+	long mOrder;
+	
+	/**
+	 * Size of the TxPOW in bytes
+	 */
+	int mSize;
+	
+	/**
+	 * The CoinIDs this transaction spends
+	 */
+	ArrayList<MiniData32> mSpentCoins;
+	
+	public MemPoolEntry(TxPOWDBRow zRow, long zOrder) {
+		TxPOW txpow = zRow.getTxPOW();
+		
+		mRow 			= zRow;
+		mTxPowID 		= txpow.getTxPowID();
+		mTxnDifficulty 	= txpow.getTxnDifficulty();
+		mTimeMilli 		= txpow.getTimeMilli().getAsLong();
+		mOrder 			= zOrder;
+		
+		//How big is it
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(baos);
+			txpow.writeDataStream(dos);
+			dos.flush();
+			
+			mSize = baos.size();
+		} catch (IOException e) {
+			mSize = 0;
+		}
+		
+		//Which coins does it spend - the gimme50 input is not a real coin
+		mSpentCoins = new ArrayList<>();
+		ArrayList<Coin> inputs = txpow.getTransaction().getAllInputs();
+		for(Coin in : inputs) {
+			if(!in.getCoinID().isExactlyEqual(gimme50.COINID_INPUT)) {
+				mSpentCoins.add(in.getCoinID());
+			}
+		}
+	}
+	
+	public TxPOWDBRow getRow() {
+		return mRow;
+	}
+	
+	public MiniData32 getTxPowID() {
+		return mTxPowID;
+	}
+	
+	public int getSize() {
+		return mSize;
+	}
+	
+	public ArrayList<MiniData32> getSpentCoins() {
+		return mSpentCoins;
+	}
+	
+	/**
+	 * Highest priority first - More Txn difficulty, then the oldest, then more POW.
+	 * 
+	 * Age is checked before the TxPOWID - no two IDs are the same, so anything after it is only a fallback.
+	 */
+	@Override
+	public int compareTo(MemPoolEntry zEntry) {
+		if(mTxnDifficulty != zEntry.mTxnDifficulty) {
+			return mTxnDifficulty > zEntry.mTxnDifficulty ? -1 : 1;
+		}
+		
+		if(mTimeMilli != zEntry.mTimeMilli) {
+			return mTimeMilli < zEntry.mTimeMilli ? -1 : 1;
+		}
+		
+		int pow = mTxPowID.compare(zEntry.mTxPowID);
+		if(pow != 0) {
+			return pow;
+		}
+		
+		return Long.compare(mOrder, zEntry.mOrder);
+	}
+}
@@ -0,0 +1,90 @@
+package org.minima.database.mempool;
+
+import java.util.Hashtable;
+
+import org.minima.objects.base.MiniData32;
+
+/**
+ * The ValidationResults of transactions checked on top of a parent block.
+ *
+ * Scripts can use the block number and the previous state of the coins, so
+ * a result is only good for the parent it was checked against. When a
+ * different parent is asked for - a new block or a re-org - the cache is cleared.
+ */
+public class ValidationCache {
+	
+	/**
+	 * The parent block all these results were checked on
+	 */
+	private MiniData32 mParent;
+	
+	/**
+	 * TxPOWID to result
+	 */
+	private Hashtable<MiniData32, ValidationResult> mResults;
+	
+	/**
+	 * How often it is used..
+	 */
+	private long mHits;
+	private long mMisses;
+	
+	public ValidationCache() {
+		mParent  = null;
+		mResults = new Hashtable<>();
+		mHits    = 0;
+		mMisses  = 0;
+	}
+	
+	/**
+	 * Make sure the cache is for this parent - clear it if not
+	 */
+	public void setParent(MiniData32 zParent) {
+		if(mParent == null || !mParent.isExactlyEqual(zParent)) {
+			mParent  = zParent;
+			mResults = new Hashtable<>();
+		}
+	}
+	
+	/**
+	 * @return The result for this transaction on this parent or null
+	 */
+	public ValidationResult get(MiniData32 zTxPowID, MiniData32 zParent) {
+		setParent(zParent);
+		
+		ValidationResult result = mResults.get(zTxPowID);
+		if(result == null) {
+			mMisses++;
+		}else {
+			mHits++;
+		}
+		
+		return result;
+	}
+	
+	public void put(MiniData32 zTxPowID, MiniData32 zParent, ValidationResult zResult) {
+		setParent(zParent);
+		mResults.put(zTxPowID, zResult);
+	}
+	
+	public void remove(MiniData32 zTxPowID) {
+		mResults.remove(zTxPowID);
+	}
+	
+	public void clear() {
+		mParent  = null;
+		mResults = new Hashtable<>();
+	}
+	
+	public int getSize() {
+		return mResults.size();
+	}
+	
+	public long getHits() {
+		return mHits;
+	}
+	
+	public long getMisses() {
+		return mMisses;
+	}
+}
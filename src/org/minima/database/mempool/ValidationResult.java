@@ -0,0 +1,60 @@
+package org.minima.database.mempool;
+
+import java.util.ArrayList;
+
+import org.minima.database.mmr.MMRProof;
+import org.minima.objects.Coin;
+import org.minima.objects.StateVariable;
+
+/**
+ * The MMR changes a valid transaction makes - the inputs it spends and the
+ * coins it creates. Once the scripts have passed these can be applied to
+ * another MMRSet on the same parent without running them again.
+ */
+public class ValidationResult {
+	
+	/**
+	 * The proofs of the coins spent
+	 */
+	ArrayList<MMRProof> mSpentProofs;
+	
+	/**
+	 * The new unspent coins - with their final CoinID and TokenID
+	 */
+	ArrayList<Coin> mNewCoins;
+	
+	/**
+	 * The state the new coins are created with
+	 */
+	ArrayList<StateVariable> mState;
+	
+	public ValidationResult() {
+		mSpentProofs = new ArrayList<>();
+		mNewCoins	 = new ArrayList<>();
+		mState 		 = new ArrayList<>();
+	}
+	
+	public void addSpentProof(MMRProof zProof) {
+		mSpentProofs.add(zProof);
+	}
+	
+	public ArrayList<MMRProof> getSpentProofs(){
+		return mSpentProofs;
+	}
+	
+	public void addNewCoin(Coin zCoin) {
+		mNewCoins.add(zCoin);
+	}
+	
+	public ArrayList<Coin> getNewCoins(){
+		return mNewCoins;
+	}
+	
+	public void setState(ArrayList<StateVariable> zState) {
+		mState = zState;
+	}
+	
+	public ArrayList<StateVariable> getState(){
+		return mState;
+	}
+}
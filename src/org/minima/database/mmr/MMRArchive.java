@@ -0,0 +1,525 @@
+package org.minima.database.mmr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * Every entry change of the MMRSets that have been cascaded - so proofs can be
+ * made for coins the in memory MMR no longer holds.
+ *
+ * Both files are memory mapped. The data file is a log of block records - the
+ * block time and peaks - each followed by the entries that changed in that
+ * block. Every entry record points back to the previous version of the same
+ * position. The index file is an open addressing hash table from row and
+ * position to the latest record, with the block records stored under a row no
+ * entry uses. Lookups read the mapped pages directly so none of it is on the heap.
+ */
+public class MMRArchive {
+	
+	/**
+	 * The files
+	 */
+	private static final String DATA_NAME  = "mmr.dat";
+	private static final String INDEX_NAME = "mmr.idx";
+	
+	/**
+	 * Index header - magic, capacity, count, first time, last time, end of data
+	 */
+	private static final int MAGIC 			= 0x4D4D5241;
+	private static final int HEADER_SIZE 	= 64;
+	private static final int SLOT_SIZE 		= 16;
+	
+	/**
+	 * Starting sizes
+	 */
+	private static final int MIN_SLOTS 		= 1 << 16;
+	private static final long MIN_DATA 		= 1 << 20;
+	
+	/**
+	 * Biggest a single mapping can be
+	 */
+	private static final long MAX_MAP 		= Integer.MAX_VALUE;
+	
+	/**
+	 * Block records are stored under this row
+	 */
+	private static final int BLOCK_ROW 		= 255;
+	
+	/**
+	 * Entry record - key, block time, previous record and data length - then the data
+	 */
+	private static final int ENTRY_HEADER 	= 28;
+	
+	File mFolder;
+	
+	/**
+	 * The mapped files
+	 */
+	RandomAccessFile mDataFile;
+	MappedByteBuffer mData;
+	
+	RandomAccessFile mIndexFile;
+	MappedByteBuffer mIndex;
+	
+	/**
+	 * Copied from the header
+	 */
+	int mCapacity;
+	int mCount;
+	long mFirstTime;
+	long mLastTime;
+	long mDataEnd;
+	
+	/**
+	 * Set if the files could not be used - nothing more is archived
+	 */
+	boolean mFailed;
+	
+	public MMRArchive(File zFolder) {
+		mFolder = zFolder;
+		mFailed = false;
+		
+		try {
+			open();
+		} catch (IOException e) {
+			MinimaLogger.log("MMR archive could not be opened : "+e);
+			mFailed = true;
+		}
+	}
+	
+	private void open() throws IOException {
+		//The index..
+		File index = new File(mFolder, INDEX_NAME);
+		boolean exists = index.exists() && index.length() >= HEADER_SIZE;
+		
+		mIndexFile = new RandomAccessFile(index, "rw");
+		if(exists) {
+			mIndex = mapIndex(mIndexFile, (int)((mIndexFile.length() - HEADER_SIZE) / SLOT_SIZE));
+			if(mIndex.getInt(0) != MAGIC) {
+				throw new IOException("Not an MMR archive "+index);
+			}
+			mCapacity 	= mIndex.getInt(4);
+			mCount 		= mIndex.getInt(8);
+			mFirstTime 	= mIndex.getLong(12);
+			mLastTime 	= mIndex.getLong(20);
+			mDataEnd 	= mIndex.getLong(28);
+		}else {
+			mCapacity 	= MIN_SLOTS;
+			mIndex 		= mapIndex(mIndexFile, mCapacity);
+			mCount 		= 0;
+			mFirstTime 	= -1;
+			mLastTime 	= -1;
+			mDataEnd 	= 0;
+			writeHeader();
+		}
+		
+		//And the data
+		mDataFile = new RandomAccessFile(new File(mFolder, DATA_NAME), "rw");
+		mData = mDataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_DATA, mDataFile.length()));
+		
+		//Stopped part way through a block..
+		if(exists) {
+			dropUnfinished();
+		}
+	}
+	
+	/**
+	 * Point any slot set by a block that was not finished back to the version before it
+	 */
+	private void dropUnfinished() {
+		for(int i=0;i<mCapacity;i++) {
+			int pos = HEADER_SIZE + i*SLOT_SIZE;
+			if(mIndex.getLong(pos) == 0) {
+				continue;
+			}
+			
+			long record = mIndex.getLong(pos+8);
+			boolean block = (mIndex.getLong(pos)-1) >>> 56 == BLOCK_ROW;
+			while(record >= mDataEnd) {
+				record = block ? -1 : mData.getLong((int)record+16);
+			}
+			mIndex.putLong(pos+8, record);
+		}
+	}
+	
+	private static MappedByteBuffer mapIndex(RandomAccessFile zFile, int zSlots) throws IOException {
+		return zFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)zSlots * SLOT_SIZE);
+	}
+	
+	private void writeHeader() {
+		mIndex.putInt(0, MAGIC);
+		mIndex.putInt(4, mCapacity);
+		mIndex.putInt(8, mCount);
+		mIndex.putLong(12, mFirstTime);
+		mIndex.putLong(20, mLastTime);
+		mIndex.putLong(28, mDataEnd);
+	}
+	
+	public long getFirstTime() {
+		return mFirstTime;
+	}
+	
+	public long getLastTime() {
+		return mLastTime;
+	}
+	
+	public long getSize() {
+		return mDataEnd;
+	}
+	
+	/**
+	 * Add the entries that changed in this set. Must be finalized and one block after the last one added.
+	 */
+	public void archiveSet(MMRSet zSet) {
+		if(mFailed) {
+			return;
+		}
+		
+		long time = zSet.getBlockTime().getAsLong();
+		if(time <= mLastTime) {
+			return;
+		}
+		
+		if(mLastTime != -1 && time != mLastTime+1) {
+			MinimaLogger.log("MMR archive missing blocks "+mLastTime+" to "+time+" - proofs for them will not be found");
+		}
+		
+		try {
+			//The block record - time and peaks
+			ArrayList<MMREntry> peaks = zSet.getMMRPeaks();
+			long blockrecord = mDataEnd;
+			ensureData(12 + 32L*peaks.size());
+			mData.putLong((int)mDataEnd, time);
+			mData.putInt((int)mDataEnd+8, peaks.size());
+			mDataEnd += 12;
+			for(MMREntry peak : peaks) {
+				putBytes((int)mDataEnd, peak.getHashValue().getData());
+				mDataEnd += 32;
+			}
+			putSlot(MMREntryMap.getKey(BLOCK_ROW, time), blockrecord);
+			
+			//And the entries this block changed
+			for(MMREntry entry : zSet.mEntries) {
+				//Only the ones made in this block
+				if(entry.mSet != zSet || entry.isEmpty()) {
+					continue;
+				}
+				
+				long key   = MMREntryMap.getKey(entry.getRow(), entry.getPosition());
+				byte[] data = toBytes(entry.getData());
+				
+				ensureData(ENTRY_HEADER + data.length);
+				int pos = (int)mDataEnd;
+				mData.putLong(pos, key);
+				mData.putLong(pos+8, time);
+				mData.putLong(pos+16, getSlot(key));
+				mData.putInt(pos+24, data.length);
+				putBytes(pos + ENTRY_HEADER, data);
+				
+				putSlot(key, mDataEnd);
+				mDataEnd += ENTRY_HEADER + data.length;
+			}
+			
+			//Done - only now is the block part of the archive
+			if(mFirstTime == -1) {
+				mFirstTime = time;
+			}
+			mLastTime = time;
+			writeHeader();
+		
+		} catch (IOException e) {
+			MinimaLogger.log("MMR archive failed - no more blocks will be added : "+e);
+			mFailed = true;
+		}
+	}
+	
+	/**
+	 * The peaks of the MMR at this block time - or null if not archived
+	 */
+	public ArrayList<MiniData32> getPeaks(long zBlockTime) {
+		//Could not be opened
+		if(mData == null) {
+			return null;
+		}
+		
+		long record = getSlot(MMREntryMap.getKey(BLOCK_ROW, zBlockTime));
+		if(record < 0) {
+			return null;
+		}
+		
+		ArrayList<MiniData32> peaks = new ArrayList<>();
+		int num = mData.getInt((int)record+8);
+		for(int i=0;i<num;i++) {
+			byte[] hash = new byte[32];
+			ByteBuffer buf = mData.duplicate();
+			buf.position((int)record + 12 + 32*i);
+			buf.get(hash);
+			peaks.add(new MiniData32(hash));
+		}
+		
+		return peaks;
+	}
+	
+	/**
+	 * Make the proof of an entry as it was at this block time.
+	 *
+	 * @return the proof or null if the archive does not have it
+	 */
+	public MMRProof getProof(long zEntry, long zBlockTime) {
+		ArrayList<MiniData32> peaks = getPeaks(zBlockTime);
+		if(peaks == null) {
+			return null;
+		}
+		
+		//The coin..
+		long record = find(MMREntryMap.getKey(0, zEntry), zBlockTime);
+		if(record < 0) {
+			return null;
+		}
+		
+		//May only be the hash if set from a sibling's proof - find the full version with the same hash
+		MMRData data = readData(record);
+		while(data.isHashOnly()) {
+			record = mData.getLong((int)record+16);
+			if(record < 0) {
+				return null;
+			}
+			
+			MMRData older = readData(record);
+			if(!older.getFinalHash().isExactlyEqual(data.getFinalHash())) {
+				return null;
+			}
+			data = older;
+		}
+		MMRProof proof = new MMRProof(zEntry, data, new MiniNumber(zBlockTime));
+		
+		//Up the tree while there is a sibling..
+		int row 	 = 0;
+		long current = zEntry;
+		while(true) {
+			long sibling = current ^ 1;
+			record = find(MMREntryMap.getKey(row, sibling), zBlockTime);
+			if(record < 0) {
+				break;
+			}
+			
+			proof.addHash(readData(record).getFinalHash(), (sibling & 1) == 0);
+			
+			row++;
+			current >>>= 1;
+		}
+		
+		//Only if it was complete - must be one of the peaks
+		MiniData32 peak = proof.calculateProof();
+		for(MiniData32 archpeak : peaks) {
+			if(archpeak.isExactlyEqual(peak)) {
+				return proof;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * The latest record for this position at or before the block time
+	 */
+	private long find(long zKey, long zBlockTime) {
+		long record = getSlot(zKey);
+		while(record >= 0) {
+			if(mData.getLong((int)record+8) <= zBlockTime) {
+				return record;
+			}
+			record = mData.getLong((int)record+16);
+		}
+		return -1;
+	}
+	
+	private MMRData readData(long zRecord) {
+		int pos = (int)zRecord;
+		int len = mData.getInt(pos+24);
+		
+		ByteBuffer buf = mData.duplicate();
+		buf.position(pos + ENTRY_HEADER);
+		buf.limit(pos + ENTRY_HEADER + len);
+		
+		return MMRData.ReadFromStream(new DataInputStream(new BufferInputStream(buf)));
+	}
+	
+	private void putBytes(int zPosition, byte[] zBytes) {
+		ByteBuffer buf = mData.duplicate();
+		buf.position(zPosition);
+		buf.put(zBytes);
+	}
+	
+	private static byte[] toBytes(MMRData zData) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		zData.writeDataStream(dos);
+		dos.flush();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Make sure there is room for this much more data
+	 */
+	private void ensureData(long zBytes) throws IOException {
+		long needed = mDataEnd + zBytes;
+		if(needed <= mData.capacity()) {
+			return;
+		}
+		
+		if(needed > MAX_MAP) {
+			throw new IOException("MMR archive full");
+		}
+		
+		long size = mData.capacity();
+		while(size < needed) {
+			size *= 2;
+		}
+		mData = mDataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, MAX_MAP));
+	}
+	
+	/**
+	 * Find the slot for a key - its own or the empty one it would go in
+	 */
+	private int findSlot(long zKey) {
+		//Stored as key+1 so zero is empty
+		long stored = zKey + 1;
+		int slot = (int)((stored * 0x9E3779B97F4A7C15L) >>> 33) & (mCapacity-1);
+		while(true) {
+			long current = mIndex.getLong(HEADER_SIZE + slot*SLOT_SIZE);
+			if(current == 0 || current == stored) {
+				return slot;
+			}
+			slot = (slot+1) & (mCapacity-1);
+		}
+	}
+	
+	private long getSlot(long zKey) {
+		int slot = findSlot(zKey);
+		if(mIndex.getLong(HEADER_SIZE + slot*SLOT_SIZE) == 0) {
+			return -1;
+		}
+		return mIndex.getLong(HEADER_SIZE + slot*SLOT_SIZE + 8);
+	}
+	
+	private void putSlot(long zKey, long zRecord) throws IOException {
+		int slot = findSlot(zKey);
+		int pos  = HEADER_SIZE + slot*SLOT_SIZE;
+		if(mIndex.getLong(pos) == 0) {
+			mIndex.putLong(pos, zKey+1);
+			mCount++;
+		}
+		mIndex.putLong(pos+8, zRecord);
+		
+		//Keep it no more than half full
+		if(mCount*2 > mCapacity) {
+			grow();
+		}
+	}
+	
+	/**
+	 * Double the index - written to a new file then swapped in
+	 */
+	private void grow() throws IOException {
+		int capacity = mCapacity*2;
+		if(HEADER_SIZE + (long)capacity*SLOT_SIZE > MAX_MAP) {
+			throw new IOException("MMR archive index full");
+		}
+		
+		File tmp = new File(mFolder, INDEX_NAME+".tmp");
+		tmp.delete();
+		RandomAccessFile newfile = new RandomAccessFile(tmp, "rw");
+		MappedByteBuffer newindex = mapIndex(newfile, capacity);
+		
+		//Move the slots over
+		MappedByteBuffer oldindex = mIndex;
+		int oldcapacity = mCapacity;
+		mIndex 	  = newindex;
+		mCapacity = capacity;
+		for(int i=0;i<oldcapacity;i++) {
+			long stored = oldindex.getLong(HEADER_SIZE + i*SLOT_SIZE);
+			if(stored != 0) {
+				int slot = findSlot(stored-1);
+				mIndex.putLong(HEADER_SIZE + slot*SLOT_SIZE, stored);
+				mIndex.putLong(HEADER_SIZE + slot*SLOT_SIZE + 8, oldindex.getLong(HEADER_SIZE + i*SLOT_SIZE + 8));
+			}
+		}
+		writeHeader();
+		mIndex.force();
+		
+		//And swap the files
+		mIndexFile.close();
+		File index = new File(mFolder, INDEX_NAME);
+		index.delete();
+		newfile.close();
+		if(!tmp.renameTo(index)) {
+			throw new IOException("Could not replace "+index);
+		}
+		mIndexFile = new RandomAccessFile(index, "rw");
+		mIndex 	   = mapIndex(mIndexFile, mCapacity);
+	}
+	
+	/**
+	 * Write everything to disk
+	 */
+	public void flush() {
+		if(mFailed) {
+			return;
+		}
+		mData.force();
+		mIndex.force();
+	}
+	
+	public void close() {
+		try {
+			flush();
+			mDataFile.close();
+			mIndexFile.close();
+		} catch (IOException e) {
+			MinimaLogger.log("MMR archive close : "+e);
+		}
+	}
+	
+	/**
+	 * Reads straight from the mapped buffer
+	 */
+	private static class BufferInputStream extends InputStream {
+		ByteBuffer mBuffer;
+		
+		public BufferInputStream(ByteBuffer zBuffer) {
+			mBuffer = zBuffer;
+		}
+		
+		@Override
+		public int read() throws IOException {
+			if(!mBuffer.hasRemaining()) {
+				return -1;
+			}
+			return mBuffer.get() & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] zBytes, int zOffset, int zLength) throws IOException {
+			if(!mBuffer.hasRemaining()) {
+				return -1;
+			}
+			int len = Math.min(zLength, mBuffer.remaining());
+			mBuffer.get(zBytes, zOffset, len);
+			return len;
+		}
+	}
+}
@@ -3,9 +3,6 @@ package org.minima.database.mmr;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.BigInteger;
-import java.math.RoundingMode;
 
 import org.minima.objects.base.MiniData32;
 import org.minima.objects.base.MiniNumber;
@@ -15,16 +12,10 @@ import org.minima.utils.Streamable;
 public class MMREntry implements Comparable<MMREntry>, Streamable{
 
 	/**
-	 * Used many times..
+	 * Global MMR position - a long so moving round the tree is just bit arithmetic.
+	 * Only a MiniNumber when streamed.
 	 */
-	private static final BigInteger MMR_TWO 		= new BigInteger("2");
-	private static final BigDecimal MMR_TWO_DEC 	= new BigDecimal("2");
-	
-	/**
-	 * Global MMR position
-	 */
-	
-	MiniNumber mEntryNumber;
+	long mEntryNumber;
 	int mRow;
 	
 	/**
@@ -42,13 +33,18 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 	 */
 	boolean mIsEmpty;
 	
+	/**
+	 * The MMRSet this entry belongs to - null once pruned from it
+	 */
+	MMRSet mSet;
+	
 	/**
 	 * Default constructor
 	 * 
 	 * @param zRow
 	 * @param zEntry
 	 */
-	public MMREntry(int zRow, MiniNumber zEntry) {
+	public MMREntry(int zRow, long zEntry) {
 		mRow = zRow;
 		mEntryNumber = zEntry;
 		mIsEmpty = true;
@@ -58,12 +54,12 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 		return mIsEmpty;
 	}
 	
-	public boolean checkPosition(int zRow, MiniNumber zEntry) {
-		return (zRow == mRow) && zEntry.isEqual(mEntryNumber);
+	public boolean checkPosition(int zRow, long zEntry) {
+		return (zRow == mRow) && (zEntry == mEntryNumber);
 	}
 	
 	public boolean checkPosition(MMREntry zEntry) {
-		return (zEntry.getRow() == mRow) && zEntry.getEntry().isEqual(mEntryNumber);
+		return (zEntry.getRow() == mRow) && (zEntry.getPosition() == mEntryNumber);
 	}
 	
 	public void setData(MMRData zData) {
@@ -106,6 +102,10 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 	 * 
 	 */
 	public MiniNumber getEntry() {
+		return new MiniNumber(mEntryNumber);
+	}
+	
+	public long getPosition() {
 		return mEntryNumber;
 	}
 	
@@ -122,23 +122,22 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 	}
 	
 	public boolean isLeft() {
-//		return mEntryNumber.getAsBigInteger().mod(MMR_TWO) == BigInteger.ZERO;
-		return mEntryNumber.modulo(MiniNumber.TWO).isEqual(MiniNumber.ZERO);
+		return (mEntryNumber & 1) == 0;
 	}
 	
 	public boolean isRight() {
 		return !isLeft();
 	}
 	
-	public MiniNumber getLeftSibling() {
-		return mEntryNumber.sub(MiniNumber.ONE);
+	public long getLeftSibling() {
+		return mEntryNumber - 1;
 	}
 	
-	public MiniNumber getRightSibling() {
-		return mEntryNumber.add(MiniNumber.ONE);
+	public long getRightSibling() {
+		return mEntryNumber + 1;
 	}
 	
-	public MiniNumber getSibling() {
+	public long getSibling() {
 		if(isLeft()) {
 			return getRightSibling();
 		}else {
@@ -146,33 +145,28 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 		}
 	}
 	
-	public MiniNumber getParentEntry() {
+	public long getParentEntry() {
 		//Rounds Down..
-//		BigDecimal par  = mEntryNumber.getAsBigDecimal().divide(MMR_TWO_DEC,RoundingMode.DOWN);
-//		return new MiniNumber(par);
-		return mEntryNumber.divRoundDown(MiniNumber.TWO);
+		return mEntryNumber >>> 1;
 	}
 	
-	public MiniNumber getLeftChildEntry() {
-//		BigInteger par = mEntryNumber.getAsBigInteger().multiply(MMR_TWO);
-//		return new MiniNumber(par);
-		return mEntryNumber.mult(MiniNumber.TWO);
+	public long getLeftChildEntry() {
+		return mEntryNumber << 1;
 	}
 	
-	public MiniNumber getRightChildEntry() {
-		return getLeftChildEntry().add(MiniNumber.ONE);
+	public long getRightChildEntry() {
+		return getLeftChildEntry() + 1;
 	}
 
 	@Override
 	public int compareTo(MMREntry zEntry) {
-		return zEntry.getEntry().compareTo(mEntryNumber);
-//		return mEntryNumber.compareTo(zEntry.getEntry());
+		return Long.compare(zEntry.getPosition(), mEntryNumber);
 	}
 
 	@Override
 	public void writeDataStream(DataOutputStream zOut) throws IOException {
-		//Entry number
-		mEntryNumber.writeDataStream(zOut);
+		//Entry number - as a MiniNumber on the wire
+		new MiniNumber(mEntryNumber).writeDataStream(zOut);
 		
 		//The Row..
 		zOut.writeInt(mRow);
@@ -183,7 +177,7 @@ public class MMREntry implements Comparable<MMREntry>, Streamable{
 
 	@Override
 	public void readDataStream(DataInputStream zIn) throws IOException {
-		mEntryNumber = MiniNumber.ReadFromStream(zIn);
+		mEntryNumber = MiniNumber.ReadFromStream(zIn).getAsLong();
 		mRow         = zIn.readInt();
 		mData        = MMRData.ReadFromStream(zIn);
 		mIsEmpty     = false;
@@ -0,0 +1,108 @@
+package org.minima.database.mmr;
+
+/**
+ * The entries of an MMRSet keyed by their (row, entry) position.
+ *
+ * An open addressing hash table on a packed long key - the row in the top
+ * 8 bits and the entry number below - so a lookup is a few array reads with
+ * no boxing or allocation. Entries are never removed from an MMRSet so
+ * neither are they from here.
+ */
+public class MMREntryMap {
+	
+	/**
+	 * Starting size - it doubles when more than half full
+	 */
+	private static final int MIN_CAPACITY = 16;
+	
+	/**
+	 * The table - a null value is an empty slot
+	 */
+	private long[] mKeys;
+	private MMREntry[] mValues;
+	
+	private int mSize;
+	private int mMask;
+	
+	public MMREntryMap() {
+		clear();
+	}
+	
+	public void clear() {
+		mKeys 	= new long[MIN_CAPACITY];
+		mValues = new MMREntry[MIN_CAPACITY];
+		mSize 	= 0;
+		mMask 	= MIN_CAPACITY-1;
+	}
+	
+	public int size() {
+		return mSize;
+	}
+	
+	/**
+	 * Pack a position into a key
+	 */
+	public static long getKey(int zRow, long zEntry) {
+		return ((long)zRow << 56) | zEntry;
+	}
+	
+	public MMREntry get(long zKey) {
+		int slot = getSlot(zKey);
+		while(mValues[slot] != null) {
+			if(mKeys[slot] == zKey) {
+				return mValues[slot];
+			}
+			slot = (slot+1) & mMask;
+		}
+		
+		return null;
+	}
+	
+	public void put(long zKey, MMREntry zEntry) {
+		int slot = getSlot(zKey);
+		while(mValues[slot] != null) {
+			if(mKeys[slot] == zKey) {
+				mValues[slot] = zEntry;
+				return;
+			}
+			slot = (slot+1) & mMask;
+		}
+		
+		mKeys[slot] 	= zKey;
+		mValues[slot] 	= zEntry;
+		mSize++;
+		
+		//Too full..
+		if(mSize*2 > mValues.length) {
+			resize(mValues.length*2);
+		}
+	}
+	
+	private int getSlot(long zKey) {
+		//Mix the bits - the entry numbers are sequential
+		long hash = zKey * 0x9E3779B97F4A7C15L;
+		hash ^= (hash >>> 32);
+		
+		return (int)hash & mMask;
+	}
+	
+	private void resize(int zCapacity) {
+		long[] oldkeys 		= mKeys;
+		MMREntry[] oldvals 	= mValues;
+		
+		mKeys 	= new long[zCapacity];
+		mValues = new MMREntry[zCapacity];
+		mMask 	= zCapacity-1;
+		
+		for(int i=0;i<oldvals.length;i++) {
+			if(oldvals[i] != null) {
+				int slot = getSlot(oldkeys[i]);
+				while(mValues[slot] != null) {
+					slot = (slot+1) & mMask;
+				}
+				mKeys[slot] 	= oldkeys[i];
+				mValues[slot] 	= oldvals[i];
+			}
+		}
+	}
+}
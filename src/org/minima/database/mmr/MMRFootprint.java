@@ -0,0 +1,182 @@
+package org.minima.database.mmr;
+
+import org.minima.objects.StateVariable;
+import org.minima.utils.json.JSONArray;
+import org.minima.utils.json.JSONObject;
+
+/**
+ * How many entries a chain of MMRSets holds - and roughly how much heap they use.
+ *
+ * The bytes are an estimate from the object layout - an entry with just a hash
+ * is much smaller than one with the full coin and state.
+ */
+public class MMRFootprint {
+	
+	/**
+	 * Estimated heap used by an entry with just the hash - the MMREntry, MMRData,
+	 * MiniData32 and the index and trie slots that point to it.
+	 */
+	public static final long HASH_ENTRY_BYTES = 200;
+	
+	/**
+	 * Extra for an entry with the full coin - CoinID, address, TokenID, amount and block number
+	 */
+	public static final long COIN_ENTRY_BYTES = 400;
+	
+	/**
+	 * Extra per state variable - plus the length of the data
+	 */
+	public static final long STATE_BYTES = 64;
+	
+	/**
+	 * Number of sets measured
+	 */
+	int mSets;
+	
+	/**
+	 * Total entries - and how many of those have the full coin
+	 */
+	long mEntries;
+	long mCoinEntries;
+	
+	/**
+	 * Total number of keepers
+	 */
+	long mKeepers;
+	
+	/**
+	 * Estimated bytes
+	 */
+	long mBytes;
+	
+	/**
+	 * Details of each set - newest first
+	 */
+	JSONArray mSetDetails;
+	
+	/**
+	 * Measure this set and all its parents
+	 */
+	public MMRFootprint(MMRSet zSet) {
+		this(zSet, true);
+	}
+	
+	/**
+	 * Measure this set - and its parents if zParents
+	 */
+	@SuppressWarnings("unchecked")
+	public MMRFootprint(MMRSet zSet, boolean zParents) {
+		mSets 		 = 0;
+		mEntries 	 = 0;
+		mCoinEntries = 0;
+		mKeepers 	 = 0;
+		mBytes 		 = 0;
+		mSetDetails  = new JSONArray();
+		
+		MMRSet set = zSet;
+		while(set != null) {
+			long entries = 0;
+			long coins   = 0;
+			long bytes   = 0;
+			for(MMREntry entry : set.mEntries) {
+				//Only the ones it still owns
+				if(entry.mSet != set) {
+					continue;
+				}
+				
+				entries++;
+				bytes += getEntryBytes(entry);
+				if(!entry.getData().isHashOnly()) {
+					coins++;
+				}
+			}
+			
+			JSONObject details = new JSONObject();
+			details.put("blocktime", set.getBlockTime().toString());
+			details.put("entries", entries);
+			details.put("coins", coins);
+			details.put("keepers", set.getKeepers().size());
+			details.put("bytes", bytes);
+			mSetDetails.add(details);
+			
+			mSets++;
+			mEntries 	 += entries;
+			mCoinEntries += coins;
+			mKeepers 	 += set.getKeepers().size();
+			mBytes 		 += bytes;
+			
+			if(!zParents) {
+				break;
+			}
+			set = set.getParent();
+		}
+	}
+	
+	/**
+	 * Estimated heap used by this entry
+	 */
+	public static long getEntryBytes(MMREntry zEntry) {
+		MMRData data = zEntry.getData();
+		if(data == null || data.isHashOnly()) {
+			return HASH_ENTRY_BYTES;
+		}
+		
+		long bytes = HASH_ENTRY_BYTES + COIN_ENTRY_BYTES;
+		for(StateVariable sv : data.getPrevState()) {
+			bytes += STATE_BYTES + sv.getData().toString().length();
+		}
+		
+		return bytes;
+	}
+	
+	public int getSets() {
+		return mSets;
+	}
+	
+	public long getEntries() {
+		return mEntries;
+	}
+	
+	public long getCoinEntries() {
+		return mCoinEntries;
+	}
+	
+	public long getKeepers() {
+		return mKeepers;
+	}
+	
+	public long getBytes() {
+		return mBytes;
+	}
+	
+	/**
+	 * The totals only
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject toJSON() {
+		JSONObject obj = new JSONObject();
+		
+		obj.put("sets", mSets);
+		obj.put("entries", mEntries);
+		obj.put("coins", mCoinEntries);
+		obj.put("keepers", mKeepers);
+		obj.put("bytes", mBytes);
+		
+		return obj;
+	}
+	
+	/**
+	 * The totals and every set
+	 */
+	@SuppressWarnings("unchecked")
+	public JSONObject toJSONDetails() {
+		JSONObject obj = toJSON();
+		obj.put("mmrsets", mSetDetails);
+		return obj;
+	}
+	
+	@Override
+	public String toString() {
+		return toJSON().toString();
+	}
+}
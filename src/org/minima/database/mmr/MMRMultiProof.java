@@ -0,0 +1,363 @@
+package org.minima.database.mmr;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.Crypto;
+import org.minima.utils.Streamable;
+import org.minima.utils.json.JSONArray;
+import org.minima.utils.json.JSONObject;
+
+/**
+ * The proofs of several entries from the same block, with each sibling hash
+ * only stored once.
+ *
+ * Any node that is on the path of one of the entries can be worked out, so
+ * only the siblings that are not are stored - ordered by row and then entry
+ * number. Going up the tree a row at a time every node is hashed once.
+ */
+public class MMRMultiProof implements Streamable {
+	
+	/**
+	 * The block time these proofs point to
+	 */
+	MiniNumber mBlockTime = MiniNumber.ZERO;
+	
+	/**
+	 * The entries in the order they were added, the proof length of each and the data
+	 */
+	ArrayList<Long> mEntries;
+	ArrayList<Integer> mLengths;
+	ArrayList<MMRData> mData;
+	
+	/**
+	 * The sibling hashes that can't be worked out
+	 */
+	ArrayList<MiniData32> mHashes;
+	
+	/**
+	 * Worked out once - every node hash and the peaks reached
+	 */
+	boolean mCalculated;
+	boolean mValid;
+	Hashtable<Long, MiniData32> mNodes;
+	ArrayList<MiniData32> mPeaks;
+	
+	public MMRMultiProof() {
+		mEntries 	= new ArrayList<>();
+		mLengths 	= new ArrayList<>();
+		mData 		= new ArrayList<>();
+		mHashes 	= new ArrayList<>();
+		mCalculated = false;
+	}
+	
+	/**
+	 * Combine these proofs. They must all be from the same block time and for different entries.
+	 */
+	public MMRMultiProof(ArrayList<MMRProof> zProofs) {
+		this();
+		
+		mBlockTime = zProofs.get(0).getBlockTime();
+		
+		//All the nodes on the paths..
+		Hashtable<Long, Boolean> path = new Hashtable<>();
+		for(MMRProof proof : zProofs) {
+			long entry = proof.getPosition();
+			int len    = proof.getProofLen();
+			
+			mEntries.add(entry);
+			mLengths.add(len);
+			mData.add(proof.getMMRData());
+			
+			for(int row=0;row<=len;row++) {
+				path.put(MMREntryMap.getKey(row, entry >>> row), Boolean.TRUE);
+			}
+		}
+		
+		//Only the siblings not on a path are needed - in row then entry order
+		TreeMap<Long, MiniData32> siblings = new TreeMap<>();
+		for(MMRProof proof : zProofs) {
+			long entry = proof.getPosition();
+			int len    = proof.getProofLen();
+			for(int row=0;row<len;row++) {
+				long key = MMREntryMap.getKey(row, (entry >>> row) ^ 1);
+				if(!path.containsKey(key)) {
+					siblings.put(key, proof.getProof(row));
+				}
+			}
+		}
+		mHashes.addAll(siblings.values());
+	}
+	
+	/**
+	 * Can these proofs be combined
+	 */
+	public static boolean canCombine(ArrayList<MMRProof> zProofs) {
+		if(zProofs.size() < 2) {
+			return false;
+		}
+		
+		MiniNumber time = zProofs.get(0).getBlockTime();
+		Hashtable<Long, Boolean> entries = new Hashtable<>();
+		for(MMRProof proof : zProofs) {
+			if(proof == null || proof.getMMRData() == null || proof.getMMRData().isHashOnly()) {
+				return false;
+			}
+			
+			if(!proof.getBlockTime().isEqual(time)) {
+				return false;
+			}
+			
+			if(entries.put(proof.getPosition(), Boolean.TRUE) != null) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	public MiniNumber getBlockTime() {
+		return mBlockTime;
+	}
+	
+	public int getSize() {
+		return mEntries.size();
+	}
+	
+	public long getPosition(int zEntry) {
+		return mEntries.get(zEntry);
+	}
+	
+	public MMRData getMMRData(int zEntry) {
+		return mData.get(zEntry);
+	}
+	
+	public int getHashesLen() {
+		return mHashes.size();
+	}
+	
+	/**
+	 * @return The peak hashes reached - or null if the proof is not well formed
+	 */
+	public ArrayList<MiniData32> getPeaks() {
+		calculate();
+		if(!mValid) {
+			return null;
+		}
+		return mPeaks;
+	}
+	
+	/**
+	 * The single proof of each entry - in the order they were added
+	 *
+	 * @return the proofs or null if the proof is not well formed
+	 */
+	public ArrayList<MMRProof> getProofs() {
+		calculate();
+		if(!mValid) {
+			return null;
+		}
+		
+		ArrayList<MMRProof> proofs = new ArrayList<>();
+		int len = mEntries.size();
+		for(int i=0;i<len;i++) {
+			long entry = mEntries.get(i);
+			MMRProof proof = new MMRProof(entry, mData.get(i), mBlockTime);
+			
+			int plen = mLengths.get(i);
+			for(int row=0;row<plen;row++) {
+				long sibling = (entry >>> row) ^ 1;
+				proof.addHash(mNodes.get(MMREntryMap.getKey(row, sibling)), (sibling & 1) == 0);
+			}
+			
+			proofs.add(proof);
+		}
+		
+		return proofs;
+	}
+	
+	/**
+	 * Go up the tree a row at a time and work out every node
+	 */
+	private void calculate() {
+		if(mCalculated) {
+			return;
+		}
+		mCalculated = true;
+		mValid 		= false;
+		mNodes 		= new Hashtable<>();
+		mPeaks 		= new ArrayList<>();
+		
+		//The entries - and how far up each goes
+		TreeMap<Long, Integer> current = new TreeMap<>();
+		int len = mEntries.size();
+		for(int i=0;i<len;i++) {
+			long entry = mEntries.get(i);
+			MMRData data = mData.get(i);
+			if(data == null || current.put(entry, mLengths.get(i)) != null) {
+				return;
+			}
+			mNodes.put(MMREntryMap.getKey(0, entry), data.getFinalHash());
+		}
+		
+		Crypto crypto = Crypto.getInstance();
+		int hashnum = 0;
+		int row = 0;
+		while(!current.isEmpty()) {
+			TreeMap<Long, Integer> next = new TreeMap<>();
+			for(Map.Entry<Long, Integer> node : current.entrySet()) {
+				long entry 		= node.getKey();
+				int plen 		= node.getValue();
+				MiniData32 hash = mNodes.get(MMREntryMap.getKey(row, entry));
+				
+				//Is this a peak..
+				if(plen == row) {
+					mPeaks.add(hash);
+					continue;
+				}
+				
+				//Is the sibling on a path too - then only do it once from the left
+				long sibling = entry ^ 1;
+				Integer siblen = current.get(sibling);
+				if(siblen != null) {
+					if(siblen.intValue() != plen) {
+						return;
+					}
+					if((entry & 1) == 1) {
+						continue;
+					}
+				}
+				
+				//Get the sibling hash
+				long sibkey = MMREntryMap.getKey(row, sibling);
+				MiniData32 sibhash = mNodes.get(sibkey);
+				if(sibhash == null) {
+					if(hashnum >= mHashes.size()) {
+						return;
+					}
+					sibhash = mHashes.get(hashnum++);
+					mNodes.put(sibkey, sibhash);
+				}
+				
+				//And the parent
+				MiniData32 parent = null;
+				if((entry & 1) == 0) {
+					parent = crypto.hashObjects(hash, sibhash);
+				}else {
+					parent = crypto.hashObjects(sibhash, hash);
+				}
+				next.put(entry >>> 1, plen);
+				mNodes.put(MMREntryMap.getKey(row+1, entry >>> 1), parent);
+			}
+			
+			current = next;
+			row++;
+		}
+		
+		//Must use all the hashes
+		mValid = (hashnum == mHashes.size());
+	}
+	
+	@SuppressWarnings("unchecked")
+	public JSONObject toJSON() {
+		JSONObject obj = new JSONObject();
+		
+		obj.put("blocktime", mBlockTime.toString());
+		
+		JSONArray entries = new JSONArray();
+		int len = mEntries.size();
+		for(int i=0;i<len;i++) {
+			JSONObject entry = new JSONObject();
+			entry.put("entry", mEntries.get(i).toString());
+			entry.put("prooflength", mLengths.get(i));
+			entry.put("data", mData.get(i).toJSON());
+			entries.add(entry);
+		}
+		obj.put("entries", entries);
+		
+		JSONArray hashes = new JSONArray();
+		for(MiniData32 hash : mHashes) {
+			hashes.add(hash.toString());
+		}
+		obj.put("hashes", hashes);
+		
+		return obj;
+	}
+	
+	@Override
+	public String toString() {
+		return toJSON().toString();
+	}
+	
+	@Override
+	public void writeDataStream(DataOutputStream zOut) throws IOException {
+		mBlockTime.writeDataStream(zOut);
+		
+		int len = mEntries.size();
+		zOut.writeInt(len);
+		for(int i=0;i<len;i++) {
+			new MiniNumber(mEntries.get(i)).writeDataStream(zOut);
+			zOut.writeInt(mLengths.get(i));
+			mData.get(i).writeDataStream(zOut);
+		}
+		
+		zOut.writeInt(mHashes.size());
+		for(MiniData32 hash : mHashes) {
+			hash.writeDataStream(zOut);
+		}
+	}
+	
+	@Override
+	public void readDataStream(DataInputStream zIn) throws IOException {
+		mBlockTime = new MiniNumber();
+		mBlockTime.readDataStream(zIn);
+		
+		mEntries 	= new ArrayList<>();
+		mLengths 	= new ArrayList<>();
+		mData 		= new ArrayList<>();
+		int len = zIn.readInt();
+		for(int i=0;i<len;i++) {
+			MiniNumber entry = new MiniNumber();
+			entry.readDataStream(zIn);
+			mEntries.add(entry.getAsLong());
+			mLengths.add(zIn.readInt());
+			
+			MMRData data = MMRData.ReadFromStream(zIn);
+			if(data == null) {
+				throw new IOException("Invalid MMRData in MMRMultiProof");
+			}
+			mData.add(data);
+		}
+		
+		mHashes = new ArrayList<>();
+		len = zIn.readInt();
+		for(int i=0;i<len;i++) {
+			MiniData32 hash = new MiniData32();
+			hash.readDataStream(zIn);
+			mHashes.add(hash);
+		}
+		
+		mCalculated = false;
+	}
+	
+	public static MMRMultiProof ReadFromStream(DataInputStream zIn){
+		MMRMultiProof proof = new MMRMultiProof();
+		
+		try {
+			proof.readDataStream(zIn);
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null;
+		}
+		
+		return proof;
+	}
+}
@@ -0,0 +1,139 @@
+package org.minima.database.mmr;
+
+import java.util.ArrayList;
+
+import org.minima.objects.base.MiniData32;
+import org.minima.utils.Crypto;
+
+/**
+ * Bags the MMR peaks into a single root.
+ *
+ * The peak hashes are treated as the leaves of a new MMR, and the peaks of that
+ * are bagged again until only one is left. This works the same as adding the
+ * hashes to a throwaway MMRSet - but with fixed scratch arrays.
+ *
+ * The first round keeps the hash of every complete sub tree it made. Peaks only
+ * change at the end when a leaf is added, so the next time any sub tree that
+ * only covers unchanged peaks is not hashed again.
+ */
+public class MMRPeakBagger {
+	
+	/**
+	 * Max number of peaks - one per row
+	 */
+	public static final int MAX_PEAKS = 256;
+	
+	/**
+	 * The peak hashes used last time
+	 */
+	MiniData32[] mPeaks;
+	int mNumPeaks;
+	
+	/**
+	 * First round sub trees.. mLevels[row][i] covers peaks i*2^row to (i+1)*2^row
+	 */
+	MiniData32[][] mLevels;
+	
+	/**
+	 * Scratch space for the later rounds
+	 */
+	MiniData32[] mScratch;
+	
+	public MMRPeakBagger() {
+		mPeaks    = new MiniData32[MAX_PEAKS];
+		mNumPeaks = 0;
+		
+		int rows = 32 - Integer.numberOfLeadingZeros(MAX_PEAKS);
+		mLevels  = new MiniData32[rows][];
+		for(int i=0;i<rows;i++) {
+			mLevels[i] = new MiniData32[MAX_PEAKS >> i];
+		}
+		
+		mScratch = new MiniData32[MAX_PEAKS];
+	}
+	
+	/**
+	 * Get the root of these peaks - highest row first
+	 */
+	public MiniData32 getRoot(ArrayList<MMREntry> zPeaks) {
+		int num = zPeaks.size();
+		if(num == 0) {
+			return null;
+		}
+		
+		//How many peaks are the same as last time..
+		int same = 0;
+		while(same < num && same < mNumPeaks) {
+			MiniData32 hash = zPeaks.get(same).getHashValue();
+			if(hash != mPeaks[same] && !hash.isExactlyEqual(mPeaks[same])) {
+				break;
+			}
+			same++;
+		}
+		
+		//Store the new ones
+		for(int i=same;i<num;i++) {
+			mPeaks[i] = zPeaks.get(i).getHashValue();
+			mLevels[0][i] = mPeaks[i];
+		}
+		mNumPeaks = num;
+		
+		//Build the sub trees of the first round - reuse the ones that only cover unchanged peaks
+		Crypto crypto = Crypto.getInstance();
+		for(int row=1; (1 << row) <= num; row++) {
+			MiniData32[] lower   = mLevels[row-1];
+			MiniData32[] current = mLevels[row];
+			int count = num >> row;
+			for(int i=0;i<count;i++) {
+				if(((i+1) << row) > same) {
+					current[i] = crypto.hashObjects(lower[2*i], lower[2*i+1]);
+				}
+			}
+		}
+		
+		//The peaks of the first round - biggest sub tree first
+		int total = 0;
+		int start = 0;
+		for(int row=31;row>=0;row--) {
+			if((num & (1 << row)) != 0) {
+				mScratch[total++] = mLevels[row][start >> row];
+				start += 1 << row;
+			}
+		}
+		
+		//And bag those until there is only one..
+		while(total > 1) {
+			total = bagRound(mScratch, total, crypto);
+		}
+		
+		return mScratch[0];
+	}
+	
+	/**
+	 * One round of bagging in place. The peaks of the MMR made from the first
+	 * zNum hashes are written to the start of the array.
+	 *
+	 * @return the number of peaks
+	 */
+	private static int bagRound(MiniData32[] zHashes, int zNum, Crypto zCrypto) {
+		int out   = 0;
+		int start = 0;
+		for(int row=31;row>=0;row--) {
+			int size = 1 << row;
+			if((zNum & size) != 0) {
+				//Hash this sub tree down to one - a level at a time
+				for(int len=size; len>1; len>>=1) {
+					for(int i=0;i<len/2;i++) {
+						zHashes[start+i] = zCrypto.hashObjects(zHashes[start+2*i], zHashes[start+2*i+1]);
+					}
+				}
+				
+				//Output is never past the start of the sub tree
+				zHashes[out++] = zHashes[start];
+				start += size;
+			}
+		}
+		
+		return out;
+	}
+}
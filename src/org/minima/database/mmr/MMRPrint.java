@@ -28,6 +28,7 @@ public class MMRPrint {
 	private static void PrintSet(MMRSet zSet) {
 		MMRSet current = zSet;
 		System.out.println("BLK:"+current.getBlockTime() + " KEEPER:"+current.getKeepers());
+		System.out.println("Size  : "+new MMRFootprint(current, false));
 		System.out.println("Root  : "+current.getMMRRoot());
 		System.out.println("Peaks : "+current.getMMRPeaks());
 		
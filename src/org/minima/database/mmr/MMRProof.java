@@ -24,7 +24,7 @@ public class MMRProof implements Streamable {
 	/**
 	 * The Entry number in the MMR
 	 */
-	MiniNumber mEntryNumber = MiniNumber.ZERO;
+	long mEntryNumber = 0;
 	
 	/**
 	 * The Provable data
@@ -42,7 +42,7 @@ public class MMRProof implements Streamable {
 		mLeftHash   = new ArrayList<>();
 	}
 		
-	public MMRProof(MiniNumber zEntryNumber, MMRData zInitialData, MiniNumber zBlockTime) {
+	public MMRProof(long zEntryNumber, MMRData zInitialData, MiniNumber zBlockTime) {
 		mProofChain = new ArrayList<>();
 		mLeftHash   = new ArrayList<>();
 		mEntryNumber = zEntryNumber;
@@ -64,6 +64,10 @@ public class MMRProof implements Streamable {
 	}
 	
 	public MiniNumber getEntryNumber() {
+		return new MiniNumber(mEntryNumber);
+	}
+	
+	public long getPosition() {
 		return mEntryNumber;
 	}
 	
@@ -121,7 +125,7 @@ public class MMRProof implements Streamable {
 		JSONObject obj = new JSONObject(); 
 		
 		obj.put("blocktime", mBlockTime.toString());
-		obj.put("entry", mEntryNumber.toString());
+		obj.put("entry", Long.toString(mEntryNumber));
 		obj.put("data", mData.toJSON());
 		
 		JSONArray proof = new JSONArray();
@@ -149,7 +153,7 @@ public class MMRProof implements Streamable {
 	@Override
 	public void writeDataStream(DataOutputStream zOut) throws IOException {
 		mBlockTime.writeDataStream(zOut);
-		mEntryNumber.writeDataStream(zOut);
+		new MiniNumber(mEntryNumber).writeDataStream(zOut);
 		
 		mData.writeDataStream(zOut);
 		
@@ -164,7 +168,7 @@ public class MMRProof implements Streamable {
 	@Override
 	public void readDataStream(DataInputStream zIn) throws IOException {
 		mBlockTime   = MiniNumber.ReadFromStream(zIn);
-		mEntryNumber = MiniNumber.ReadFromStream(zIn);
+		mEntryNumber = MiniNumber.ReadFromStream(zIn).getAsLong();
 		mData        = MMRData.ReadFromStream(zIn);
 		
 		mProofChain  = new ArrayList<>();
@@ -0,0 +1,196 @@
+package org.minima.database.mmr;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Hashtable;
+
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * MMRProofs already made - by proof block time and then entry number.
+ *
+ * A proof only depends on the MMRSet it was made from, so the set is stored
+ * with each block time. If a different set is asked for at that time - after
+ * a re-org - the old proofs are dropped. Proofs are also dropped when the coin
+ * is spent or the block is cascaded away.
+ *
+ * If there is an MMRArchive, coins the set no longer holds are proved from it
+ * at the oldest block time the set can still check.
+ */
+public class MMRProofCache {
+	
+	/**
+	 * The proofs made from one MMRSet
+	 */
+	private static class ProofSet {
+		MMRSet mSet;
+		Hashtable<Long, MMRProof> mProofs;
+		
+		ProofSet(MMRSet zSet) {
+			mSet 	= zSet;
+			mProofs = new Hashtable<>();
+		}
+	}
+	
+	/**
+	 * Block time to proofs
+	 */
+	private Hashtable<Long, ProofSet> mProofSets;
+	
+	/**
+	 * How often it is used..
+	 */
+	private long mHits;
+	private long mMisses;
+	
+	/**
+	 * Where to look for coins the MMRSet no longer holds - can be null
+	 */
+	private MMRArchive mArchive;
+	
+	public MMRProofCache() {
+		mProofSets = new Hashtable<>();
+		mHits      = 0;
+		mMisses    = 0;
+		mArchive   = null;
+	}
+	
+	public void setArchive(MMRArchive zArchive) {
+		mArchive = zArchive;
+	}
+	
+	/**
+	 * Get the proof for this entry from this set - made if not already cached
+	 *
+	 * @param zSet
+	 * @param zEntry
+	 * @return
+	 */
+	public MMRProof getProof(MMRSet zSet, MiniNumber zEntry) {
+		Long time  = zSet.getBlockTime().getAsLong();
+		Long entry = zEntry.getAsLong();
+		
+		//Is it the same set..
+		ProofSet proofs = mProofSets.get(time);
+		if(proofs == null || proofs.mSet != zSet) {
+			proofs = new ProofSet(zSet);
+			mProofSets.put(time, proofs);
+		}
+		
+		MMRProof proof = proofs.mProofs.get(entry);
+		if(proof != null) {
+			mHits++;
+			return proof;
+		}
+		
+		//Make it..
+		mMisses++;
+		proof = zSet.getProof(entry);
+		
+		//Not held any more - try the archive
+		if(mArchive != null && !reachesPeak(zSet, proof)) {
+			MMRProof archived = getArchiveProof(zSet, entry);
+			if(archived != null) {
+				return archived;
+			}
+		}
+		
+		//Only keep it if the coin was found
+		if(proof.getMMRData() != null) {
+			proofs.mProofs.put(entry, proof);
+		}
+		
+		return proof;
+	}
+	
+	/**
+	 * Make the proof from the archive at the oldest block time the set can still check
+	 */
+	private MMRProof getArchiveProof(MMRSet zSet, long zEntry) {
+		long time = mArchive.getLastTime();
+		if(time < 0) {
+			return null;
+		}
+		
+		MMRSet proofset = zSet.getParentAtTime(new MiniNumber(time));
+		if(proofset == null) {
+			return null;
+		}
+		
+		MMRProof proof = mArchive.getProof(zEntry, time);
+		if(proof == null || !reachesPeak(proofset, proof)) {
+			return null;
+		}
+		
+		return proof;
+	}
+	
+	/**
+	 * Does the proof end at one of the peaks of this set
+	 */
+	private static boolean reachesPeak(MMRSet zSet, MMRProof zProof) {
+		if(zProof.getMMRData() == null || zProof.getMMRData().isHashOnly()) {
+			return false;
+		}
+		
+		MiniData32 peak = zProof.calculateProof();
+		for(MMREntry setpeak : zSet.getMMRPeaks()) {
+			if(setpeak.getHashValue().isExactlyEqual(peak)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * The coin at this entry has been spent
+	 */
+	public void removeEntry(MiniNumber zEntry) {
+		Long entry = zEntry.getAsLong();
+		for(ProofSet proofs : mProofSets.values()) {
+			proofs.mProofs.remove(entry);
+		}
+	}
+	
+	/**
+	 * Remove all the proofs from before this block time - they have been cascaded
+	 */
+	public void removeBefore(MiniNumber zBlockTime) {
+		long time = zBlockTime.getAsLong();
+		
+		ArrayList<Long> remove = new ArrayList<>();
+		Enumeration<Long> times = mProofSets.keys();
+		while(times.hasMoreElements()) {
+			Long proofstime = times.nextElement();
+			if(proofstime < time) {
+				remove.add(proofstime);
+			}
+		}
+		
+		for(Long proofstime : remove) {
+			mProofSets.remove(proofstime);
+		}
+	}
+	
+	public void clear() {
+		mProofSets = new Hashtable<>();
+	}
+	
+	public int getSize() {
+		int size = 0;
+		for(ProofSet proofs : mProofSets.values()) {
+			size += proofs.mProofs.size();
+		}
+		return size;
+	}
+	
+	public long getHits() {
+		return mHits;
+	}
+	
+	public long getMisses() {
+		return mMisses;
+	}
+}
@@ -3,8 +3,8 @@ package org.minima.database.mmr;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Hashtable;
 
 import org.minima.objects.Coin;
 import org.minima.objects.base.MiniByte;
@@ -16,6 +16,16 @@ import org.minima.utils.Streamable;
 
 public class MMRSet implements Streamable {
 	
+	/**
+	 * Rebuild the trie when it is this much over twice its last rebuilt size
+	 */
+	private static final int COMPACT_MIN = 4096;
+	
+	/**
+	 * Starting size of the chain of sets
+	 */
+	private static final int MIN_CHAIN = 16;
+	
 	/**
 	 * What Block time does this MMR represent. Each represents 1 block.
 	 */
@@ -31,13 +41,52 @@ public class MMRSet implements Streamable {
 	/**
 	 * What is the current entry number..
 	 */
-	public MiniNumber mEntryNumber = MiniNumber.ZERO;
+	public long mEntryNumber = 0;
 	
 	/**
 	 * All the entries in this set 
 	 */
 	ArrayList<MMREntry> mEntries;
-
+	
+	/**
+	 * The same entries by position.. and by row
+	 */
+	MMREntryMap mEntryMap;
+	ArrayList<ArrayList<MMREntry>> mRowEntries;
+	
+	/**
+	 * The coins in the zero row of this set - by CoinID and by address
+	 */
+	Hashtable<MiniData32, MMREntry> mCoinIndex;
+	Hashtable<MiniData32, ArrayList<MMREntry>> mAddressIndex;
+	
+	/**
+	 * Every entry this set can see - its own and the parents'.. 
+	 */
+	MMRTrie mTrie;
+	
+	/**
+	 * Size of the trie when it was last rebuilt in this chain of sets
+	 */
+	int mCompactSize;
+	
+	/**
+	 * This set and its parents in block time order - shared with the children
+	 */
+	MMRSet[] mChain;
+	int mChainIndex;
+	
+	/**
+	 * Cut off when the sets below it were pruned - none of its entries are seen any more
+	 */
+	boolean mPruned;
+	
+	/**
+	 * How many entries this set owns and their estimated heap - kept as they change
+	 */
+	long mOwnEntries;
+	long mOwnBytes;
+	
 	/**
 	 * The maximum row used in this Set
 	 */
@@ -49,9 +98,10 @@ public class MMRSet implements Streamable {
 	MMREntry mMaxEntries[];
 	
 	/**
-	 * Which Entries do we keep
+	 * Which Entries do we keep - and the same as a set for quick lookup
 	 */
 	ArrayList<MiniNumber> mKeepers;
+	Hashtable<Long, Boolean> mKeeperSet;
 	
 	/**
 	 * Has the set been Finalized (Peaks / Root )
@@ -63,6 +113,11 @@ public class MMRSet implements Streamable {
 	ArrayList<MMREntry> mFinalizedPeaks;
 	ArrayList<MMREntry> mFinalizedZeroRow;
 	
+	/**
+	 * Bags the peaks into the root - keeps the last result for the next call
+	 */
+	MMRPeakBagger mBagger;
+	
 	/**
 	 * Main Constructor
 	 */
@@ -73,6 +128,12 @@ public class MMRSet implements Streamable {
 	public MMRSet(MMRSet zParent) {
 		//All the Entries in this set
 		mEntries    = new ArrayList<>();
+		mEntryMap   = new MMREntryMap();
+		mRowEntries = new ArrayList<>();
+		
+		//The coins
+		mCoinIndex 	  = new Hashtable<>();
+		mAddressIndex = new Hashtable<>();
 		
 		//The Maximum Rows and entries
 		mMaxEntries = new MMREntry[256];
@@ -80,13 +141,17 @@ public class MMRSet implements Streamable {
 		
 		//Parent MMRSet
 		mParent = zParent;
-	
+		
 		//A list of entries to keep track of
-		mKeepers = new ArrayList<>();
+		mKeepers 	= new ArrayList<>();
+		mKeeperSet 	= new Hashtable<>();
 		
 		//Not Finalized..
 		mFinalized = false;
 		
+		//Not pruned
+		mPruned = false;
+		
 		//Now add the peaks..
 		if(mParent != null) {
 			if(!mParent.isFinalized()) {
@@ -94,34 +159,112 @@ public class MMRSet implements Streamable {
 				mParent.finalizeSet();
 			}
 			
+			//Start from the parent's entries
+			buildView();
+			
 			//Set the Time.. 1 more than parent
 			setBlockTime(mParent.getBlockTime().add(MiniNumber.ONE));
 			
 			//Calculate total entries..
-			BigInteger tot = BigInteger.ZERO;
-			BigInteger two = new BigInteger("2");
+			long tot = 0;
 			
 			ArrayList<MMREntry> peaks = mParent.getMMRPeaks(); 
 			for(MMREntry peak : peaks) {
 				//Add the peak
-				setEntry(peak.getRow(), peak.getEntry(), peak.getData());
-			
+				setEntry(peak.getRow(), peak.getPosition(), peak.getData());
+				
 				//Add to the total entries.. the peaks are the binary value
-				tot = tot.add(two.pow(peak.getRow()));
+				tot += 1L << peak.getRow();
 			}
 			
 			//Set the Entry Number
-			mEntryNumber = new MiniNumber(tot);
+			mEntryNumber = tot;
 			
 			//Check!
-			if(!mEntryNumber.isEqual(mParent.mEntryNumber)) {
+			if(mEntryNumber != mParent.mEntryNumber) {
 				MinimaLogger.log("SERIOUS ERROR - Entry Number Mismatch! "+mEntryNumber+"/"+mParent.mEntryNumber);
 			}
+		}else {
+			buildView();
 		}
 	}
 	
 	public void setParent(MMRSet zParent) {
 		mParent = zParent;
+		
+		//The entries we can see have changed
+		buildView();
+	}
+	
+	/**
+	 * Make the trie of all the entries this set can see, and the chain of sets, from the parent.
+	 */
+	private void buildView() {
+		if(mParent == null) {
+			mTrie = new MMRTrie();
+			
+			mChain 		= new MMRSet[MIN_CHAIN];
+			mChain[0] 	= this;
+			mChainIndex = 0;
+		}else {
+			//Too many old entries in the parent's trie..
+			if(mParent.mTrie.getSize() > 2*mParent.mCompactSize + COMPACT_MIN) {
+				mParent.compact();
+			}
+			
+			//Share the parent's trie
+			mTrie 		 = new MMRTrie(mParent.mTrie);
+			mCompactSize = mParent.mCompactSize;
+			
+			//Add to the end of the parent's chain - copy it if another child already has
+			int index = mParent.mChainIndex+1;
+			if(index < mParent.mChain.length && mParent.mChain[index] == null) {
+				mChain = mParent.mChain;
+			}else {
+				mChain = new MMRSet[Math.max(MIN_CHAIN, 2*index)];
+				System.arraycopy(mParent.mChain, 0, mChain, 0, index);
+			}
+			mChain[index] = this;
+			mChainIndex   = index;
+		}
+		
+		//And our own entries
+		for(MMREntry entry : mEntries) {
+			mTrie.put(entry.getRow(), entry.getPosition(), entry);
+		}
+		
+		if(mParent == null) {
+			mCompactSize = mTrie.getSize();
+		}
+	}
+	
+	/**
+	 * Rebuild the trie and chain from just the sets still linked - drops the pruned entries
+	 */
+	private void compact() {
+		ArrayList<MMRSet> sets = new ArrayList<>();
+		MMRSet set = this;
+		while(set != null) {
+			sets.add(set);
+			set = set.mParent;
+		}
+		
+		//Oldest first so the newer entries replace them
+		int len = sets.size();
+		MMRTrie trie   = new MMRTrie();
+		MMRSet[] chain = new MMRSet[Math.max(MIN_CHAIN, 2*len)];
+		for(int i=0;i<len;i++) {
+			MMRSet current = sets.get(len-1-i);
+			for(MMREntry entry : current.mEntries) {
+				trie.put(entry.getRow(), entry.getPosition(), entry);
+			}
+			chain[i] = current;
+		}
+		
+		mTrie 		 = trie;
+		mCompactSize = trie.getSize();
+		mChain 		 = chain;
+		mChainIndex  = len-1;
 	}
 	
 	public void finalizeSet() {
@@ -136,6 +279,9 @@ public class MMRSet implements Streamable {
 		
 		//We are now Finalized..
 		mFinalized = true;
+		
+		//No more changes.. don't need the bagger
+		mBagger = null;
 	}
 	
 	public boolean isFinalized() {
@@ -151,7 +297,9 @@ public class MMRSet implements Streamable {
 	}
 	
 	public void addKeeper(MiniNumber zEntry) {
-		mKeepers.add(zEntry);
+		if(mKeeperSet.put(zEntry.getAsLong(), Boolean.TRUE) == null) {
+			mKeepers.add(zEntry);
+		}
 	}
 	
 	public MMRSet getParent() {
@@ -159,7 +307,7 @@ public class MMRSet implements Streamable {
 	}
 	
 	private void incrementEntryNumber() {
-		mEntryNumber = mEntryNumber.add(MiniNumber.ONE);
+		mEntryNumber++;
 	}
 	
 	public int getMaxRow() {
@@ -180,15 +328,11 @@ public class MMRSet implements Streamable {
 	}
 	
 	public ArrayList<MMREntry> getRow(int zRow){
-		ArrayList<MMREntry> row = new ArrayList<>();
-		
-		for(MMREntry entry : mEntries) {
-			if(entry.getRow() == zRow) {
-				row.add(entry);
-			}
+		if(zRow >= mRowEntries.size()) {
+			return new ArrayList<>();
 		}
 		
-		return row;
+		return new ArrayList<>(mRowEntries.get(zRow));
 	}
 	
 	public ArrayList<MMREntry> getZeroRow(){
@@ -205,18 +349,62 @@ public class MMRSet implements Streamable {
 	 * @return
 	 */
 	public MMREntry findEntry(MiniData32 zCoinID) {
-		//Get the zero row - no parents..
-		ArrayList<MMREntry> zero=getZeroRow();
+		MMREntry entry = mCoinIndex.get(zCoinID);
+		if(entry != null && isCoin(entry, zCoinID)) {
+			return entry;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Find all the coins with this address - but don't search parents.
+	 * @param zAddress
+	 * @return
+	 */
+	public ArrayList<MMREntry> findAddressEntries(MiniData32 zAddress) {
+		ArrayList<MMREntry> ret = new ArrayList<>();
 		
-		for(MMREntry entry : zero) {
-			if(!entry.getData().isHashOnly()) {
-				if(entry.getData().getCoin().getCoinID().isExactlyEqual(zCoinID)){
-					return entry;
+		ArrayList<MMREntry> entries = mAddressIndex.get(zAddress);
+		if(entries != null) {
+			for(MMREntry entry : entries) {
+				//Could have been replaced by just the hash
+				if(!entry.getData().isHashOnly()) {
+					ret.add(entry);
 				}
 			}
 		}
-			
-		return null;
+		
+		return ret;
+	}
+	
+	private boolean isCoin(MMREntry zEntry, MiniData32 zCoinID) {
+		MMRData data = zEntry.getData();
+		return !data.isHashOnly() && data.getCoin().getCoinID().isExactlyEqual(zCoinID);
+	}
+	
+	/**
+	 * Add a zero row entry to the CoinID and address indexes
+	 */
+	private void indexCoin(MMREntry zEntry) {
+		MMRData data = zEntry.getData();
+		if(zEntry.getRow() != 0 || data.isHashOnly()) {
+			return;
+		}
+		
+		//Already in..
+		Coin coin = data.getCoin();
+		if(mCoinIndex.get(coin.getCoinID()) == zEntry) {
+			return;
+		}
+		mCoinIndex.put(coin.getCoinID(), zEntry);
+		
+		ArrayList<MMREntry> entries = mAddressIndex.get(coin.getAddress());
+		if(entries == null) {
+			entries = new ArrayList<>();
+			mAddressIndex.put(coin.getAddress(), entries);
+		}
+		entries.add(zEntry);
 	}
 	
 	/**
@@ -226,35 +414,50 @@ public class MMRSet implements Streamable {
 	 * @param zData
 	 * @return
 	 */
-	private MMREntry setEntry(int zRow, MiniNumber zEntry, MMRData zData) {
+	private MMREntry setEntry(int zRow, long zEntry, MMRData zData) {
+		return setEntry(zRow, zEntry, zData, null);
+	}
+	
+	/**
+	 * As above - but if the entry is not in this set use zAdopt rather than a new one
+	 */
+	private MMREntry setEntry(int zRow, long zEntry, MMRData zData, MMREntry zAdopt) {
 		//Store the Maximum
 		if(zRow>mMaxRow) {
 			mMaxRow = zRow;
 		}
 		
 		//Check if already added..
-		MMREntry entry = null;
-		for(MMREntry ent : mEntries) {
-			if(ent.checkPosition(zRow, zEntry)) {
-				entry = ent;
-				break;
-			}
-		}
+		long key = MMREntryMap.getKey(zRow, zEntry);
+		MMREntry entry = mEntryMap.get(key);
 		
 		//Create and add if not found
 		if(entry == null) {
-			entry = new MMREntry(zRow, zEntry);
+			if(zAdopt != null) {
+				entry = zAdopt;
+			}else {
+				entry = new MMREntry(zRow, zEntry);
+			}
 			entry.setBlockTime(getBlockTime());
-			mEntries.add(entry);
+			addToIndexes(key, entry);
+			mTrie.put(zRow, zEntry, entry);
 		}
 		
+		//No longer counted by the set that had it.. may be this one
+		if(entry.mSet != null) {
+			entry.mSet.removeFootprint(entry);
+		}
+		entry.mSet = this;
+		
 		//Set the correct data
 		entry.setData(zData);
+		indexCoin(entry);
+		addFootprint(entry);
 		
 		//Is it a MAX
 		if(mMaxEntries[zRow] == null) {
 			mMaxEntries[zRow] = entry;
-		}else if(mMaxEntries[zRow].getEntry().isLess(zEntry)) {
+		}else if(mMaxEntries[zRow].getPosition() < zEntry) {
 			mMaxEntries[zRow] = entry;
 		}
 		
@@ -262,26 +465,77 @@ public class MMRSet implements Streamable {
 		return entry;
 	}
 	
-	private MMREntry getEntry(int zRow, MiniNumber zEntry, boolean zCheckParent) {
-		//Check if already added..
-		for(MMREntry ent : mEntries) {
-			if(ent.checkPosition(zRow, zEntry)) {
-				return ent;
+	private MMREntry getEntry(int zRow, long zEntry, boolean zCheckParent) {
+		MMREntry entry = null;
+		if(zCheckParent) {
+			//The latest from this set or the parents.. unless pruned
+			entry = mTrie.get(zRow, zEntry);
+			if(entry != null && (entry.mSet == null || entry.mSet.mPruned)) {
+				entry = null;
 			}
+		}else {
+			entry = mEntryMap.get(MMREntryMap.getKey(zRow, zEntry));
 		}
 		
-		//Check the parent Set
-		if(zCheckParent && mParent!=null) {
-			MMREntry entry = mParent.getEntry(zRow, zEntry, true);
-			if(!entry.isEmpty()) {
-				return entry;
-			}
+		if(entry != null) {
+			return entry;
 		}
 		
 		//If all else fails.. return empty entry..
 		return new MMREntry(zRow, zEntry);
 	}
 	
+	/**
+	 * Add a new entry to the list and the position and row indexes
+	 */
+	private void addToIndexes(long zKey, MMREntry zEntry) {
+		mEntries.add(zEntry);
+		mEntryMap.put(zKey, zEntry);
+		
+		int row = zEntry.getRow();
+		while(mRowEntries.size() <= row) {
+			mRowEntries.add(new ArrayList<MMREntry>());
+		}
+		mRowEntries.get(row).add(zEntry);
+	}
+	
+	private void addFootprint(MMREntry zEntry) {
+		mOwnEntries++;
+		mOwnBytes += MMRFootprint.getEntryBytes(zEntry);
+	}
+	
+	private void removeFootprint(MMREntry zEntry) {
+		mOwnEntries--;
+		mOwnBytes -= MMRFootprint.getEntryBytes(zEntry);
+	}
+	
+	/**
+	 * How many entries this set owns - not counting the ones a child has taken over
+	 */
+	public long getOwnEntries() {
+		return mOwnEntries;
+	}
+	
+	/**
+	 * Estimated heap used by the entries this set owns
+	 */
+	public long getOwnBytes() {
+		return mOwnBytes;
+	}
+	
+	/**
+	 * Estimated heap used by this set and all its parents - without going through the entries
+	 */
+	public long getChainBytes() {
+		long bytes = 0;
+		MMRSet set = this;
+		while(set != null) {
+			bytes += set.mOwnBytes;
+			set = set.mParent;
+		}
+		return bytes;
+	}
+	
 	/**
 	 * Add data - an UNSPENT coin
 	 */
@@ -329,7 +583,7 @@ public class MMRSet implements Streamable {
 		ArrayList<MMREntry> peaks=getMMRPeaks();
 		
 		//Create a new entry
-		MMREntry entry = setEntry(0, zProof.getEntryNumber(), spentmmr);
+		MMREntry entry = setEntry(0, zProof.getPosition(), spentmmr);
 		MMREntry ret   = entry;
 		
 		//Now update the tree - Get the Sibling.. 
@@ -346,12 +600,12 @@ public class MMRSet implements Streamable {
 		
 		//Do we need to fill it in..
 		if(sibling.isEmpty()) {
-			sibling = setEntry(sibling.getRow(), sibling.getEntry(), new MMRData(phash));
+			sibling = setEntry(sibling.getRow(), sibling.getPosition(), new MMRData(phash));
 		}else if(sibling.getBlockTime().isLessEqual(zProof.getBlockTime())) {
 			//Is it the original.. has all the micro details.. internal nodes are just the hash anyway
 			MiniData32 orighash = sibling.getData().getFinalHash();
 			if(!orighash.isExactlyEqual(phash)) {
-				sibling = setEntry(sibling.getRow(), sibling.getEntry(), new MMRData(phash));
+				sibling = setEntry(sibling.getRow(), sibling.getPosition(), new MMRData(phash));
 			}
 		}
 		
@@ -370,7 +624,7 @@ public class MMRSet implements Streamable {
 			
 			//Set the Sibling in this MMRSET!.. this way the MMR peaks still work.. 
 			//(as the max in a row MUST be on the left to be a peak ))
-			setEntry(sibling.getRow(), sibling.getEntry(),sibling.getData());
+			setEntry(sibling.getRow(), sibling.getPosition(),sibling.getData());
 			
 			//Set the Parent
 			entry = setEntry(entry.getParentRow(), entry.getParentEntry(), data);
@@ -389,12 +643,12 @@ public class MMRSet implements Streamable {
 			if(pcount < zProof.getProofLen()) {
 				phash = zProof.getProof(pcount++);
 				if(sibling.isEmpty()) {
-					sibling = setEntry(sibling.getRow(), sibling.getEntry(), new MMRData(phash));		
+					sibling = setEntry(sibling.getRow(), sibling.getPosition(), new MMRData(phash));		
 				}else if(sibling.getBlockTime().isLessEqual(zProof.getBlockTime())) {
 					//Is it the original.. has all the micro details.. internal nodes are just the hash anyway
 					MiniData32 orighash = sibling.getData().getFinalHash();
 					if(!orighash.isExactlyEqual(phash)) {
-						sibling = setEntry(sibling.getRow(), sibling.getEntry(), new MMRData(phash));	
+						sibling = setEntry(sibling.getRow(), sibling.getPosition(), new MMRData(phash));	
 					}	
 				}
 			}
@@ -407,6 +661,10 @@ public class MMRSet implements Streamable {
 	 * Get An MMR Proof
 	 */
 	public MMRProof getProof(MiniNumber zEntryNumber) {
+		return getProof(zEntryNumber.getAsLong());
+	}
+	
+	public MMRProof getProof(long zEntryNumber) {
 		//First get the initial Entry.. check parents aswell..
 		MMREntry entry = getEntry(0, zEntryNumber, true);
 		
@@ -428,7 +686,7 @@ public class MMRSet implements Streamable {
 		
 		return proof;
 	}
-	
+
 //	/**
 //	 * Get Proof to ROOT
 //	 */
@@ -474,7 +732,7 @@ public class MMRSet implements Streamable {
 //		
 //		return totalproof;
 //	}
-	
+
 //	/**
 //	 * Get the full proof to the root of the MMR
 //	 * 
@@ -510,6 +768,15 @@ public class MMRSet implements Streamable {
 	 * @return
 	 */
 	public boolean checkProof(MMRProof zProof) {
+		return checkProof(zProof, zProof.calculateProof());
+	}
+	
+	/**
+	 * As above - with the peak the proof hashes up to already worked out.
+	 * 
+	 * The hashing does not need the set, so can be done on another thread first.
+	 */
+	public boolean checkProof(MMRProof zProof, MiniData32 zProofPeak) {
 		//Hmm.. this is not good..
 		if(zProof.getMMRData().isHashOnly()) {
 			System.out.println("Invalid PROOF check HASHONLY! : "+zProof);
@@ -540,13 +807,10 @@ public class MMRSet implements Streamable {
 		//Check the proof point to the MMR ROOT..
 		ArrayList<MMREntry> peaks = proofset.getMMRPeaks();
 		
-		//Calculate the proof..
-		MiniData32 proofpeak = zProof.calculateProof();
-		
 		//Is this is a Peak ? - if so, go no further..
 		boolean found = false;
 		for(MMREntry peak : peaks) {
-			if(proofpeak.isExactlyEqual(peak.getHashValue())) {
+			if(zProofPeak.isExactlyEqual(peak.getHashValue())) {
 				found = true;
 				break;
 			}
@@ -558,10 +822,10 @@ public class MMRSet implements Streamable {
 		}
 		
 		//So the proof was valid at that time.. if it has been SPENT, it will have been AFTER this block - and in our MMR
-		MMREntry checker = getEntry(0, zProof.getEntryNumber(), true);
+		MMREntry checker = getEntry(0, zProof.getPosition(), true);
 		
-		//Is it there ?
-		if(!checker.isEmpty()) {
+		//Is it there ? - just the hash if only seen in a sibling's proof, so not spent
+		if(!checker.isEmpty() && !checker.getData().isHashOnly()) {
 			//Get the DATA - could be the original UNSPENT or the SPENT
 			if(checker.getData().isSpent()) {
 				return false;
@@ -572,6 +836,62 @@ public class MMRSet implements Streamable {
 		return true;
 	}
 	
+	/**
+	 * Check all the entries of an MMRMultiProof are valid UNSPENT outputs.
+	 * 
+	 * The same as checking each proof on its own - but every node is only hashed once.
+	 * 
+	 * @return
+	 */
+	public boolean checkMultiProof(MMRMultiProof zProof) {
+		//Every coin must be complete and unspent
+		int len = zProof.getSize();
+		for(int i=0;i<len;i++) {
+			MMRData data = zProof.getMMRData(i);
+			if(data == null || data.isHashOnly() || data.isSpent()) {
+				return false;
+			}
+		}
+		
+		//Get the MMRSet at the time this proof was made..
+		MMRSet proofset = getParentAtTime(zProof.getBlockTime());
+		if(proofset == null) {
+			return false;
+		}
+		
+		//Work out where all the entries go
+		ArrayList<MiniData32> proofpeaks = zProof.getPeaks();
+		if(proofpeaks == null) {
+			return false;
+		}
+		
+		//They must all be peaks
+		ArrayList<MMREntry> peaks = proofset.getMMRPeaks();
+		for(MiniData32 proofpeak : proofpeaks) {
+			boolean found = false;
+			for(MMREntry peak : peaks) {
+				if(proofpeak.isExactlyEqual(peak.getHashValue())) {
+					found = true;
+					break;
+				}
+			}
+			
+			if(!found) {
+				return false;
+			}
+		}
+		
+		//And none spent since..
+		for(int i=0;i<len;i++) {
+			MMREntry checker = getEntry(0, zProof.getPosition(i), true);
+			if(!checker.isEmpty() && !checker.getData().isHashOnly() && checker.getData().isSpent()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * Get the MMR peaks of this Set
 	 * @return
@@ -587,7 +907,7 @@ public class MMRSet implements Streamable {
 		for(int i=mMaxRow;i>=0;i--) {
 			//Get the MAX entry for the row..
 			MMREntry max = mMaxEntries[i];
-				
+			
 			//Is there an Entry..
 			if(max != null) {
 				//Is it a peak ? - ALL peaks are LEFT siblings..
@@ -596,7 +916,7 @@ public class MMRSet implements Streamable {
 				}
 			}
 		}
-			
+		
 		return peaks;
 	}
 	
@@ -611,25 +931,13 @@ public class MMRSet implements Streamable {
 			return mFinalizedRoot;
 		}
 		
-		//Get the Peaks..
-		ArrayList<MMREntry> peaks = getMMRPeaks();
-		
-		//Now take all those values and put THEM in an MMR..
-		while(peaks.size() > 1) {
-		
-			//Create a new MMR
-			MMRSet newmmr = new MMRSet();
-			
-			//Add all the peaks to it..
-			for(MMREntry peak : peaks) {
-				newmmr.addUnspentCoin(new MMRData(peak.getHashValue()));	
-			}
-			
-			//Now get the peaks.. repeat..
-			peaks = newmmr.getMMRPeaks();
+		//Only made if needed..
+		if(mBagger == null) {
+			mBagger = new MMRPeakBagger();
 		}
 		
-		return peaks.get(0).getHashValue();
+		//Bag the peaks..
+		return mBagger.getRoot(getMMRPeaks());
 	}
 	
 	/**
@@ -643,25 +951,40 @@ public class MMRSet implements Streamable {
 	 * Get a Parent block at a certain time..
 	 */
 	public MMRSet getParentAtTime(MiniNumber zTime) {
-		if(mBlockTime.isEqual(zTime)) {
-			return this;
+		//How far back..
+		long back = mBlockTime.sub(zTime).getAsLong();
+		if(back < 0 || back > mChainIndex) {
+			return null;
 		}
 		
-		if(mParent != null) {
-			return mParent.getParentAtTime(zTime);
+		MMRSet set = mChain[mChainIndex - (int)back];
+		if(set.mPruned) {
+			return null;
 		}
 		
-		return null;
+		//Should always be the case..
+		if(!set.getBlockTime().isEqual(zTime)) {
+			return getParentAtTimeSlow(zTime);
+		}
+		
+		return set;
 	}
 	
-
-	public boolean isKeptAllready(MiniNumber zNumber) {
-		for(MiniNumber keep : mKeepers) {
-			if(keep.isEqual(zNumber)) {
-				return true;
+	private MMRSet getParentAtTimeSlow(MiniNumber zTime) {
+		MMRSet set = this;
+		while(set != null) {
+			if(set.getBlockTime().isEqual(zTime)) {
+				return set;
 			}
+			set = set.mParent;
 		}
-		return false;
+		
+		return null;
+	}
+	
+	
+	public boolean isKeptAllready(MiniNumber zNumber) {
+		return mKeeperSet.containsKey(zNumber.getAsLong());
 	}
 	
 	/**
@@ -678,20 +1001,25 @@ public class MMRSet implements Streamable {
 		
 		//Cycle through the current crop..
 		ArrayList<MiniNumber> newkeepers = new ArrayList<>();
+		mKeeperSet = new Hashtable<>();
 		for(MiniNumber keep : mKeepers) {
 			//Get that LATEST entry and all the entries it uses on the way up..
-			MMREntry entry = getEntry(0, keep, true);
+			MMREntry entry = getEntry(0, keep.getAsLong(), true);
 			if(!entry.getData().isSpent()) {
 				newkeepers.add(keep);
+				mKeeperSet.put(keep.getAsLong(), Boolean.TRUE);
 			}
 		}
 		//Reset
 		mKeepers = newkeepers;
 		
+		//The siblings already copied - everything above one of these has been too
+		Hashtable<Long, Boolean> copied = new Hashtable<>();
+		
 		//Cycle through the Keepers..
 		for(MiniNumber keep : keepers) {
 			//Get that LATEST entry and all the entries it uses on the way up..
-			MMREntry entry = getEntry(0, keep, true);
+			MMREntry entry = getEntry(0, keep.getAsLong(), true);
 			
 			//If it's spent we don't keep it..
 			if(entry.getData().isSpent()) {
@@ -700,16 +1028,20 @@ public class MMRSet implements Streamable {
 			
 			if(!isKeptAllready(keep)) {
 				//Add to our list..
-				mKeepers.add(keep);
-			
-				//Add it.. to THIS set.. not the parent..
-				entry = setEntry(0, keep, entry.getData());
+				addKeeper(keep);
 				
-				//And now go go up the tree..
+				//Add it.. to THIS set.. not the parent.. the children can already see this entry so take it over
+				entry = setEntry(0, keep.getAsLong(), entry.getData(), entry);
+				
+				//And now go go up the tree.. until the path joins one already copied
 				MMREntry sibling = getEntry(entry.getRow(), entry.getSibling(), true);
 				while(!sibling.isEmpty()) {
+					if(copied.put(MMREntryMap.getKey(sibling.getRow(), sibling.getPosition()), Boolean.TRUE) != null) {
+						break;
+					}
+					
 					//Add to our Set..
-					setEntry(sibling.getRow(), sibling.getEntry(), sibling.getData());
+					setEntry(sibling.getRow(), sibling.getPosition(), sibling.getData(), sibling);
 					
 					//Now get the Parent.. just need a reference even if is empty. To find the sibling.
 					MMREntry parent = new MMREntry( sibling.getParentRow(), sibling.getParentEntry() );
@@ -720,6 +1052,13 @@ public class MMRSet implements Streamable {
 			}
 		}
 		
+		//The parents are cut off.. their entries are not seen any more
+		MMRSet parent = mParent;
+		while(parent != null && !parent.mPruned) {
+			parent.mPruned = true;
+			parent = parent.mParent;
+		}
+		
 		//Now we have all the data stored for the keeper coins.. We can remove the parent..		
 		mParent = null;
 		
@@ -727,6 +1066,79 @@ public class MMRSet implements Streamable {
 		finalizeSet();
 	}
 	
+	/**
+	 * Remove the entries that are not needed for the keepers' proofs or the peaks.
+	 * Only for a set with no parent - the other entries can be filled in from any
+	 * proof checked against this set or its children.
+	 * 
+	 * @return the number of entries removed
+	 */
+	public int pruneToKeepers() {
+		if(mParent != null) {
+			return 0;
+		}
+		
+		//The max entries of each row give the peaks
+		Hashtable<Long, Boolean> needed = new Hashtable<>();
+		for(int i=0;i<=mMaxRow;i++) {
+			if(mMaxEntries[i] != null) {
+				needed.put(MMREntryMap.getKey(i, mMaxEntries[i].getPosition()), Boolean.TRUE);
+			}
+		}
+		
+		//And the keepers with their proofs - everything above a sibling already done has been too
+		Hashtable<Long, Boolean> siblings = new Hashtable<>();
+		for(MiniNumber keep : mKeepers) {
+			long entry = keep.getAsLong();
+			needed.put(MMREntryMap.getKey(0, entry), Boolean.TRUE);
+			
+			MMREntry sibling = getEntry(0, entry ^ 1, false);
+			while(!sibling.isEmpty()) {
+				long key = MMREntryMap.getKey(sibling.getRow(), sibling.getPosition());
+				if(siblings.put(key, Boolean.TRUE) != null) {
+					break;
+				}
+				needed.put(key, Boolean.TRUE);
+				
+				//Up a row..
+				entry >>>= 1;
+				sibling = getEntry(sibling.getRow()+1, entry ^ 1, false);
+			}
+		}
+		
+		//Keep only those..
+		ArrayList<MMREntry> entries = mEntries;
+		mEntries 	  = new ArrayList<>();
+		mEntryMap 	  = new MMREntryMap();
+		mRowEntries   = new ArrayList<>();
+		mCoinIndex 	  = new Hashtable<>();
+		mAddressIndex = new Hashtable<>();
+		
+		int removed = 0;
+		for(MMREntry entry : entries) {
+			//Taken over by a child..
+			if(entry.mSet != this) {
+				continue;
+			}
+			
+			long key = MMREntryMap.getKey(entry.getRow(), entry.getPosition());
+			if(needed.containsKey(key)) {
+				addToIndexes(key, entry);
+				indexCoin(entry);
+			}else {
+				//No longer seen by the children either
+				removeFootprint(entry);
+				entry.mSet = null;
+				removed++;
+			}
+		}
+		
+		//The zero row has changed
+		finalizeSet();
+		
+		return removed;
+	}
+	
 	/**
 	 * Drill down and get the last but one parent..
 	 * We will be pruning it.. 
@@ -759,7 +1171,7 @@ public class MMRSet implements Streamable {
 		
 		return 1;
 	}
-	
+
 //	/**
 //	 * Cascade away the final blocks.. 
 //	 * Keep all the important proofs
@@ -776,7 +1188,7 @@ public class MMRSet implements Streamable {
 //			prebase.copyParentKeepers();
 //		}
 //	}
-
+	
 	/**
 	 * Write out this MMR set
 	 * 
@@ -788,7 +1200,7 @@ public class MMRSet implements Streamable {
 		mBlockTime.writeDataStream(zOut);
 		
 		//EntryNumber..
-		mEntryNumber.writeDataStream(zOut);
+		new MiniNumber(mEntryNumber).writeDataStream(zOut);
 		
 		//How many..
 		int len = mEntries.size();
@@ -799,19 +1211,25 @@ public class MMRSet implements Streamable {
 			entry.writeDataStream(zOut);
 		}
 	}
-
+	
 	@Override
 	public void readDataStream(DataInputStream zIn) throws IOException {
 		mBlockTime   = MiniNumber.ReadFromStream(zIn);
-		mEntryNumber = MiniNumber.ReadFromStream(zIn);
+		mEntryNumber = MiniNumber.ReadFromStream(zIn).getAsLong();
 		
 		//Now the Entries..
 		mEntries = new ArrayList<>();
+		mEntryMap   = new MMREntryMap();
+		mRowEntries = new ArrayList<>();
+		mCoinIndex 	  = new Hashtable<>();
+		mAddressIndex = new Hashtable<>();
 		mMaxEntries = new MMREntry[256];
 		mMaxRow = 0;
+		mOwnEntries = 0;
+		mOwnBytes 	= 0;
 		int len = zIn.readInt();
 		for(int i=0;i<len;i++) {
-			MMREntry entry = new MMREntry(0, null);
+			MMREntry entry = new MMREntry(0, 0);
 			entry.readDataStream(zIn);
 			entry.setBlockTime(mBlockTime);
 			
@@ -824,14 +1242,20 @@ public class MMRSet implements Streamable {
 				
 				if(mMaxEntries[row] == null) {
 					mMaxEntries[row] = entry;
-				}else if(mMaxEntries[row].getEntry().isLess(entry.getEntry())) {
+				}else if(mMaxEntries[row].getPosition() < entry.getPosition()) {
 					mMaxEntries[row] = entry;
 				}
 				
 				//And add..
-				mEntries.add(entry);
+				entry.mSet = this;
+				addToIndexes(MMREntryMap.getKey(row, entry.getPosition()), entry);
+				indexCoin(entry);
+				addFootprint(entry);
 			}
 		}
+		
+		//And the view from here
+		buildView();
 	}
-	
+
 }
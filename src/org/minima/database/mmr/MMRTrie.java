@@ -0,0 +1,159 @@
+package org.minima.database.mmr;
+
+/**
+ * Every entry an MMRSet can see - its own and all its parents' - keyed by
+ * (row, entry) position.
+ *
+ * Each row is a 32 way trie on the entry number that grows in height as the
+ * entry numbers get bigger, so a lookup is a handful of array reads however
+ * long the chain of parents is.
+ *
+ * The trie is persistent. A child is made by sharing the parent's nodes, and
+ * a change copies the path from the root down to the changed node. Nodes made
+ * by this version can be changed in place until a child is made from it.
+ */
+public class MMRTrie {
+	
+	/**
+	 * 32 children per node
+	 */
+	private static final int BITS 	= 5;
+	private static final int WIDTH 	= 1 << BITS;
+	private static final int MASK 	= WIDTH - 1;
+	
+	/**
+	 * One trie per row
+	 */
+	public static final int MAX_ROWS = 64;
+	
+	/**
+	 * A node in the trie - the leaves hold the MMREntry
+	 */
+	private static class Node {
+		Object mEdit;
+		Object[] mChildren;
+		
+		Node(Object zEdit) {
+			mEdit 		= zEdit;
+			mChildren 	= new Object[WIDTH];
+		}
+		
+		Node(Object zEdit, Node zCopy) {
+			mEdit 		= zEdit;
+			mChildren 	= zCopy.mChildren.clone();
+		}
+	}
+	
+	/**
+	 * The root and height of each row
+	 */
+	private Node[] mRoots;
+	private int[] mShifts;
+	
+	/**
+	 * Number of positions stored
+	 */
+	private int mSize;
+	
+	/**
+	 * Nodes with this edit token belong to this version and can be changed in place
+	 */
+	private Object mEdit;
+	
+	public MMRTrie() {
+		mRoots 	= new Node[MAX_ROWS];
+		mShifts = new int[MAX_ROWS];
+		mSize 	= 0;
+		mEdit 	= new Object();
+	}
+	
+	/**
+	 * A new version that starts with everything in the parent
+	 */
+	public MMRTrie(MMRTrie zParent) {
+		mRoots 	= zParent.mRoots.clone();
+		mShifts = zParent.mShifts.clone();
+		mSize 	= zParent.mSize;
+		mEdit 	= new Object();
+		
+		//The parent can no longer change the nodes it shares with us
+		zParent.mEdit = new Object();
+	}
+	
+	public int getSize() {
+		return mSize;
+	}
+	
+	public MMREntry get(int zRow, long zEntry) {
+		Node node = mRoots[zRow];
+		if(node == null) {
+			return null;
+		}
+		
+		//Past the end of this row
+		int shift = mShifts[zRow];
+		if((zEntry >>> shift) >= WIDTH) {
+			return null;
+		}
+		
+		//Walk down..
+		for(int level=shift; level>0; level-=BITS) {
+			node = (Node)node.mChildren[(int)((zEntry >>> level) & MASK)];
+			if(node == null) {
+				return null;
+			}
+		}
+		
+		return (MMREntry)node.mChildren[(int)(zEntry & MASK)];
+	}
+	
+	public void put(int zRow, long zEntry, MMREntry zValue) {
+		Node root = mRoots[zRow];
+		int shift = mShifts[zRow];
+		
+		if(root == null) {
+			root  = new Node(mEdit);
+			shift = 0;
+		}
+		
+		//Grow the height until the entry fits
+		while((zEntry >>> shift) >= WIDTH) {
+			Node newroot = new Node(mEdit);
+			newroot.mChildren[0] = root;
+			root   = newroot;
+			shift += BITS;
+		}
+		
+		//Copy the path down if not ours
+		root = editable(root);
+		mRoots[zRow]  = root;
+		mShifts[zRow] = shift;
+		
+		Node node = root;
+		for(int level=shift; level>0; level-=BITS) {
+			int index  = (int)((zEntry >>> level) & MASK);
+			Node child = (Node)node.mChildren[index];
+			if(child == null) {
+				child = new Node(mEdit);
+			}else {
+				child = editable(child);
+			}
+			node.mChildren[index] = child;
+			node = child;
+		}
+		
+		//And set the value
+		int index = (int)(zEntry & MASK);
+		if(node.mChildren[index] == null) {
+			mSize++;
+		}
+		node.mChildren[index] = zValue;
+	}
+	
+	private Node editable(Node zNode) {
+		if(zNode.mEdit == mEdit) {
+			return zNode;
+		}
+		return new Node(mEdit, zNode);
+	}
+}
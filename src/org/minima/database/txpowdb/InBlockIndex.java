@@ -0,0 +1,91 @@
+package org.minima.database.txpowdb;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.TreeMap;
+
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Buckets the rows that are in a block by their block number, so the rows
+ * below a block can be pruned without looking at the rest of the DB.
+ *
+ * Onchain blocks are never pruned so they are not bucketed - but they are
+ * kept in the flagged set with everything else that resetAllInBlocks needs to touch.
+ *
+ * The DB must call remove() BEFORE a row changes state and add() AFTER.
+ */
+public class InBlockIndex<T extends TxPOWDBRow> {
+	
+	/**
+	 * Block number to all the prunable rows in that block
+	 */
+	private TreeMap<Long, LinkedHashSet<T>> mBuckets;
+	
+	/**
+	 * All the rows that are in a block or are an onchain block
+	 */
+	private LinkedHashSet<T> mFlagged;
+	
+	public InBlockIndex() {
+		clear();
+	}
+	
+	public void clear() {
+		mBuckets = new TreeMap<>();
+		mFlagged = new LinkedHashSet<>();
+	}
+	
+	public void add(T zRow) {
+		if(zRow.isInBlock() || zRow.isOnChainBlock()) {
+			mFlagged.add(zRow);
+		}
+		
+		if(isPrunable(zRow)) {
+			Long block = zRow.getInBlockNumber().getAsLong();
+			LinkedHashSet<T> rows = mBuckets.get(block);
+			if(rows == null) {
+				rows = new LinkedHashSet<>();
+				mBuckets.put(block, rows);
+			}
+			rows.add(zRow);
+		}
+	}
+	
+	public void remove(T zRow) {
+		mFlagged.remove(zRow);
+		
+		if(isPrunable(zRow)) {
+			Long block = zRow.getInBlockNumber().getAsLong();
+			LinkedHashSet<T> rows = mBuckets.get(block);
+			if(rows != null) {
+				rows.remove(zRow);
+				if(rows.isEmpty()) {
+					mBuckets.remove(block);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * All the rows in a block less than this one that are not onchain blocks
+	 */
+	public ArrayList<T> getRowsBelow(MiniNumber zBlockNumber) {
+		ArrayList<T> ret = new ArrayList<>();
+		for(LinkedHashSet<T> rows : mBuckets.headMap(zBlockNumber.getAsLong(), false).values()) {
+			ret.addAll(rows);
+		}
+		return ret;
+	}
+	
+	/**
+	 * All the rows that are in a block or are an onchain block
+	 */
+	public ArrayList<T> getFlaggedRows() {
+		return new ArrayList<>(mFlagged);
+	}
+	
+	private boolean isPrunable(T zRow) {
+		return zRow.isInBlock() && !zRow.isOnChainBlock() && zRow.getInBlockNumber() != null;
+	}
+}
@@ -0,0 +1,200 @@
+package org.minima.database.txpowdb;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * Keeps track of which TxPOW each BASIC block is still waiting for.
+ *
+ * Every missing TxPOWID points to the blocks that need it, and every block
+ * has a count of how many it is missing. When a TxPOW arrives only the
+ * blocks waiting on it are touched, and they go FULL when the count hits zero.
+ */
+public class MissingTxnTracker {
+	
+	/**
+	 * A block that is still missing some of its transactions
+	 */
+	private class WaitingBlock {
+		TxPOWDBRow mRow;
+		int mMissing;
+		
+		public WaitingBlock(TxPOWDBRow zRow) {
+			mRow 	 = zRow;
+			mMissing = 0;
+		}
+	}
+	
+	/**
+	 * The TxPOW database
+	 */
+	TxPowDB mTxPowDB;
+	
+	/**
+	 * Block TxPOWID to the waiting block
+	 */
+	Hashtable<MiniData32, WaitingBlock> mBlocks;
+	
+	/**
+	 * Missing TxPOWID to all the blocks waiting for it
+	 */
+	Hashtable<MiniData32, ArrayList<WaitingBlock>> mWaitingFor;
+	
+	public MissingTxnTracker(TxPowDB zTxPowDB) {
+		mTxPowDB = zTxPowDB;
+		clear();
+	}
+	
+	public void clear() {
+		mBlocks 	= new Hashtable<>();
+		mWaitingFor = new Hashtable<>();
+	}
+	
+	/**
+	 * Stop waiting for blocks below this block number - they have been cascaded
+	 * 
+	 * @param zBlockNumber
+	 */
+	public void removeBlocksLessThan(MiniNumber zBlockNumber) {
+		//Drop the old blocks..
+		ArrayList<MiniData32> remove = new ArrayList<>();
+		for(WaitingBlock waiting : mBlocks.values()) {
+			if(waiting.mRow.getTxPOW().getBlockNumber().isLess(zBlockNumber)) {
+				remove.add(waiting.mRow.getTxPOW().getTxPowID());
+			}
+		}
+		
+		if(remove.isEmpty()) {
+			return;
+		}
+		
+		for(MiniData32 blockid : remove) {
+			mBlocks.remove(blockid);
+		}
+		
+		//And stop waiting for their transactions
+		ArrayList<MiniData32> empty = new ArrayList<>();
+		for(MiniData32 txnid : mWaitingFor.keySet()) {
+			ArrayList<WaitingBlock> blocks = mWaitingFor.get(txnid);
+			
+			ArrayList<WaitingBlock> keep = new ArrayList<>();
+			for(WaitingBlock waiting : blocks) {
+				if(mBlocks.get(waiting.mRow.getTxPOW().getTxPowID()) == waiting) {
+					keep.add(waiting);
+				}
+			}
+			
+			if(keep.isEmpty()) {
+				empty.add(txnid);
+			}else if(keep.size() != blocks.size()) {
+				mWaitingFor.put(txnid, keep);
+			}
+		}
+		
+		for(MiniData32 txnid : empty) {
+			mWaitingFor.remove(txnid);
+		}
+	}
+	
+	/**
+	 * How many blocks are still waiting for transactions
+	 */
+	public int getSize() {
+		return mBlocks.size();
+	}
+	
+	/**
+	 * Start tracking a BASIC block.
+	 *
+	 * @param zBlock
+	 * @return true if the block has ALL its transactions and is now FULL
+	 */
+	public boolean addBlock(TxPOWDBRow zBlock) {
+		//Only BASIC blocks
+		if(zBlock.getBlockState() != TxPOWDBRow.TXPOWDBROW_STATE_BASIC) {
+			return false;
+		}
+		
+		//Already tracking it..
+		MiniData32 blockid = zBlock.getTxPOW().getTxPowID();
+		WaitingBlock prev  = mBlocks.get(blockid);
+		if(prev != null && prev.mRow == zBlock) {
+			return false;
+		}
+		
+		//Which ones are missing - only count each once
+		WaitingBlock waiting    = new WaitingBlock(zBlock);
+		HashSet<MiniData32> ids = new HashSet<>();
+		ArrayList<MiniData32> txns = zBlock.getTxPOW().getBlockTxns();
+		for(MiniData32 txnid : txns) {
+			if(!ids.add(txnid)) {
+				continue;
+			}
+			
+			if(mTxPowDB.findTxPOWDBRow(txnid) == null) {
+				waiting.mMissing++;
+				
+				ArrayList<WaitingBlock> blocks = mWaitingFor.get(txnid);
+				if(blocks == null) {
+					blocks = new ArrayList<>();
+					mWaitingFor.put(txnid, blocks);
+				}
+				blocks.add(waiting);
+			}
+		}
+		
+		//Got them all already..
+		if(waiting.mMissing == 0) {
+			mBlocks.remove(blockid);
+			zBlock.setBlockState(TxPOWDBRow.TXPOWDBROW_STATE_FULL);
+			return true;
+		}
+		
+		//Wait for the rest
+		mBlocks.put(blockid, waiting);
+		
+		return false;
+	}
+	
+	/**
+	 * A TxPOW has arrived. Update only the blocks waiting on it.
+	 *
+	 * @param zTxPOWID
+	 * @return The blocks that are now FULL
+	 */
+	public ArrayList<TxPOWDBRow> txpowArrived(MiniData32 zTxPOWID) {
+		ArrayList<TxPOWDBRow> full = new ArrayList<>();
+		
+		//Is anyone waiting for it..
+		ArrayList<WaitingBlock> blocks = mWaitingFor.remove(zTxPOWID);
+		if(blocks == null) {
+			return full;
+		}
+		
+		for(WaitingBlock waiting : blocks) {
+			//Is this still the block we are tracking.. could be an old one
+			MiniData32 blockid = waiting.mRow.getTxPOW().getTxPowID();
+			if(mBlocks.get(blockid) != waiting) {
+				continue;
+			}
+			
+			//One less..
+			waiting.mMissing--;
+			if(waiting.mMissing <= 0) {
+				mBlocks.remove(blockid);
+				
+				//Still in the DB..
+				if(mTxPowDB.findTxPOWDBRow(blockid) == waiting.mRow) {
+					waiting.mRow.setBlockState(TxPOWDBRow.TXPOWDBROW_STATE_FULL);
+					full.add(waiting.mRow);
+				}
+			}
+		}
+		
+		return full;
+	}
+}
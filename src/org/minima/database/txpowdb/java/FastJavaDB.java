@@ -0,0 +1,217 @@
+package org.minima.database.txpowdb.java;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+
+import org.minima.database.txpowdb.InBlockIndex;
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.database.txpowdb.TxPowDB;
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * A TxPowDB that keeps a hash index on the TxPOWID and a set of secondary
+ * indexes so none of the regular lookups need to walk the whole database.
+ *
+ * The rows tell the DB when their state changes so the indexes stay correct.
+ */
+public class FastJavaDB implements TxPowDB{
+	
+	/**
+	 * Primary index - TxPOWID to row. Keeps insertion order like JavaDB.
+	 */
+	private LinkedHashMap<MiniData32, FastJavaDBRow> mRows;
+	
+	/**
+	 * Parent TxPOWID to all the child blocks
+	 */
+	private Hashtable<MiniData32, ArrayList<FastJavaDBRow>> mChildBlocks;
+	
+	/**
+	 * All the rows that are not in a block
+	 */
+	private LinkedHashMap<MiniData32, FastJavaDBRow> mNotInBlock;
+	
+	/**
+	 * All the blocks still in the BASIC state
+	 */
+	private LinkedHashMap<MiniData32, FastJavaDBRow> mBasicBlocks;
+	
+	/**
+	 * The rows that are in a block - bucketed by block number
+	 */
+	private InBlockIndex<FastJavaDBRow> mInBlock;
+	
+	public FastJavaDB() {
+		ClearDB();
+	}
+	
+	@Override
+	public TxPOWDBRow addTxPOWDBRow(TxPOW zTxPOW) {
+		//Only add it once!
+		TxPOWDBRow prev = findTxPOWDBRow(zTxPOW.getTxPowID());
+		if(prev!=null) {
+			return prev;
+		}
+		
+		//Create a new row
+		FastJavaDBRow row = new FastJavaDBRow(zTxPOW, this);
+		
+		//Add it
+		mRows.put(zTxPOW.getTxPowID(), row);
+		
+		//Is it a block - index the parent
+		if(zTxPOW.isBlock()) {
+			MiniData32 parent = zTxPOW.getParentID();
+			ArrayList<FastJavaDBRow> children = mChildBlocks.get(parent);
+			if(children == null) {
+				children = new ArrayList<>();
+				mChildBlocks.put(parent, children);
+			}
+			children.add(row);
+		}
+		
+		//And the state indexes
+		indexRow(row);
+		
+		return row;
+	}
+	
+	@Override
+	public TxPOWDBRow findTxPOWDBRow(MiniData32 zTxPOWID) {
+		return mRows.get(zTxPOWID);
+	}
+	
+	@Override
+	public ArrayList<TxPOWDBRow> getAllTxPOWDBRow() {
+		return new ArrayList<TxPOWDBRow>(mRows.values());
+	}
+	
+	@Override
+	public void resetAllInBlocks() {
+		//Only the rows that are flagged need changing
+		ArrayList<FastJavaDBRow> rows = mInBlock.getFlaggedRows();
+		for(FastJavaDBRow row : rows) {
+			row.setIsInBlock(false);
+			row.setOnChainBlock(false);
+		}
+	}
+	
+	@Override
+	public void removeTxPOW(MiniData32 zTxPOWID) {
+		FastJavaDBRow row = mRows.get(zTxPOWID);
+		if(row != null) {
+			removeFromIndexes(row);
+			mRows.remove(zTxPOWID);
+		}
+	}
+	
+	@Override
+	public ArrayList<TxPOWDBRow> removeTxPOWInBlockLessThan(MiniNumber zBlockNumber) {
+		ArrayList<TxPOWDBRow> removed = new ArrayList<>();
+		
+		//Only the buckets below the block - onchain blocks are not in them
+		ArrayList<FastJavaDBRow> rows = mInBlock.getRowsBelow(zBlockNumber);
+		for(FastJavaDBRow row : rows) {
+			removeFromIndexes(row);
+			mRows.remove(row.getTxPOW().getTxPowID());
+			removed.add(row);
+		}
+		
+		//Return the removed..
+		return removed;
+	}
+	
+	@Override
+	public ArrayList<TxPOWDBRow> getAllUnusedTxPOW() {
+		return new ArrayList<TxPOWDBRow>(mNotInBlock.values());
+	}
+	
+	@Override
+	public ArrayList<TxPOWDBRow> getChildBlocksTxPOW(MiniData32 zParent) {
+		ArrayList<TxPOWDBRow> ret = new ArrayList<>();
+		
+		ArrayList<FastJavaDBRow> children = mChildBlocks.get(zParent);
+		if(children != null) {
+			ret.addAll(children);
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public ArrayList<TxPOWDBRow> getAllBlocksMissingTransactions() {
+		return new ArrayList<TxPOWDBRow>(mBasicBlocks.values());
+	}
+	
+	@Override
+	public int getSize() {
+		return mRows.size();
+	}
+	
+	@Override
+	public void ClearDB() {
+		mRows 			= new LinkedHashMap<>();
+		mChildBlocks	= new Hashtable<>();
+		mNotInBlock		= new LinkedHashMap<>();
+		mBasicBlocks	= new LinkedHashMap<>();
+		mInBlock 		= new InBlockIndex<>();
+	}
+	
+	/**
+	 * Add the row to the state indexes it belongs in.. Called by the row AFTER a change.
+	 * @param zRow
+	 */
+	protected void indexRow(FastJavaDBRow zRow) {
+		//Is it still in the DB..
+		MiniData32 txpowid = zRow.getTxPOW().getTxPowID();
+		if(mRows.get(txpowid) != zRow) {
+			return;
+		}
+		
+		if(!zRow.isInBlock()) {
+			mNotInBlock.put(txpowid, zRow);
+		}
+		
+		mInBlock.add(zRow);
+		
+		if(zRow.getTxPOW().isBlock() && zRow.getBlockState() == TxPOWDBRow.TXPOWDBROW_STATE_BASIC) {
+			mBasicBlocks.put(txpowid, zRow);
+		}
+	}
+	
+	/**
+	 * Remove the row from the state indexes.. Called by the row BEFORE a change.
+	 * @param zRow
+	 */
+	protected void unindexRow(FastJavaDBRow zRow) {
+		//Is it still in the DB..
+		MiniData32 txpowid = zRow.getTxPOW().getTxPowID();
+		if(mRows.get(txpowid) != zRow) {
+			return;
+		}
+		
+		mNotInBlock.remove(txpowid);
+		mBasicBlocks.remove(txpowid);
+		mInBlock.remove(zRow);
+	}
+	
+	private void removeFromIndexes(FastJavaDBRow zRow) {
+		//The state indexes
+		unindexRow(zRow);
+		
+		//And the parent index
+		if(zRow.getTxPOW().isBlock()) {
+			MiniData32 parent = zRow.getTxPOW().getParentID();
+			ArrayList<FastJavaDBRow> children = mChildBlocks.get(parent);
+			if(children != null) {
+				children.remove(zRow);
+				if(children.isEmpty()) {
+					mChildBlocks.remove(parent);
+				}
+			}
+		}
+	}
+}
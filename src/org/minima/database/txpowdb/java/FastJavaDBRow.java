@@ -0,0 +1,50 @@
+package org.minima.database.txpowdb.java;
+
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * A JavaDBRow that tells its FastJavaDB whenever a state change
+ * moves it in or out of one of the secondary indexes.
+ */
+public class FastJavaDBRow extends JavaDBRow {
+	
+	/**
+	 * The database that indexes this row
+	 */
+	private FastJavaDB mDB;
+	
+	public FastJavaDBRow(TxPOW zTxPOW, FastJavaDB zDB) {
+		super(zTxPOW);
+		
+		mDB = zDB;
+	}
+	
+	@Override
+	public void setIsInBlock(boolean zIsInBlock) {
+		mDB.unindexRow(this);
+		super.setIsInBlock(zIsInBlock);
+		mDB.indexRow(this);
+	}
+	
+	@Override
+	public void setInBlockNumber(MiniNumber zBlockNumber) {
+		mDB.unindexRow(this);
+		super.setInBlockNumber(zBlockNumber);
+		mDB.indexRow(this);
+	}
+	
+	@Override
+	public void setOnChainBlock(boolean zOnChain) {
+		mDB.unindexRow(this);
+		super.setOnChainBlock(zOnChain);
+		mDB.indexRow(this);
+	}
+	
+	@Override
+	public void setBlockState(int zState) {
+		mDB.unindexRow(this);
+		super.setBlockState(zState);
+		mDB.indexRow(this);
+	}
+}
@@ -1,5 +1,798 @@
 package org.minima.database.txpowdb.sql;
 
-public class SQLTxPoWDB {
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
 
+import org.minima.database.txpowdb.InBlockIndex;
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.database.txpowdb.TxPowDB;
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * A TxPowDB that lives on disk in an append only log, split into segments.
+ *
+ * Only a small index is kept on the heap - where each TxPOW is in the log and
+ * its row state. The TxPOW is read back in when it is asked for. Every change
+ * is appended to the log, so on a restart the index is rebuilt by replaying it.
+ *
+ * Removed TxPOW leave dead space in the old segments. When there is enough
+ * of it the live rows are copied forward on a background thread and the old
+ * segments are deleted.
+ */
+public class SQLTxPoWDB implements TxPowDB{
+	
+	/**
+	 * Start a new segment after this many bytes
+	 */
+	public static final long SEGMENT_MAX_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * Segment file names are txpow_N.log
+	 */
+	private static final String SEGMENT_PREFIX = "txpow_";
+	private static final String SEGMENT_SUFFIX = ".log";
+	
+	/**
+	 * The log record types
+	 */
+	private static final byte RECORD_ADD    = 1;
+	private static final byte RECORD_STATE  = 2;
+	private static final byte RECORD_REMOVE = 3;
+	
+	/**
+	 * Every record is a type byte and a length int and then the data
+	 */
+	private static final int RECORD_HEADER = 5;
+	
+	/**
+	 * An ADD record has the TxPOWID, the isblock byte and the parent before the TxPOW
+	 */
+	private static final int ADD_HEADER = 32 + 1 + 32;
+	
+	/**
+	 * Where the log lives
+	 */
+	private File mFolder;
+	
+	/**
+	 * All the rows - TxPOWID to row
+	 */
+	private LinkedHashMap<MiniData32, SQLTxPoWDBRow> mRows;
+	
+	/**
+	 * Parent TxPOWID to all the child blocks
+	 */
+	private Hashtable<MiniData32, ArrayList<SQLTxPoWDBRow>> mChildBlocks;
+	
+	/**
+	 * All the rows that are not in a block
+	 */
+	private LinkedHashMap<MiniData32, SQLTxPoWDBRow> mNotInBlock;
+	
+	/**
+	 * All the blocks still in the BASIC state
+	 */
+	private LinkedHashMap<MiniData32, SQLTxPoWDBRow> mBasicBlocks;
+	
+	/**
+	 * The rows that are in a block - bucketed by block number
+	 */
+	private InBlockIndex<SQLTxPoWDBRow> mInBlock;
+	
+	/**
+	 * The open segment files
+	 */
+	private TreeMap<Integer, RandomAccessFile> mSegments;
+	
+	/**
+	 * How many bytes of each segment are ADD records for rows still in the DB
+	 */
+	private Hashtable<Integer, Long> mLiveBytes;
+	
+	/**
+	 * The segment that is being written to
+	 */
+	private int mActive;
+	
+	/**
+	 * Is there a compaction running.. and has the DB been cleared since it started
+	 */
+	private boolean mCompacting;
+	private int mGeneration;
+	
+	public SQLTxPoWDB(File zFolder) {
+		mFolder = zFolder;
+		if(!mFolder.exists()) {
+			mFolder.mkdirs();
+		}
+		
+		mRows 			= new LinkedHashMap<>();
+		mChildBlocks	= new Hashtable<>();
+		mNotInBlock		= new LinkedHashMap<>();
+		mBasicBlocks	= new LinkedHashMap<>();
+		mInBlock		= new InBlockIndex<>();
+		mSegments 		= new TreeMap<>();
+		mLiveBytes 		= new Hashtable<>();
+		mCompacting		= false;
+		mGeneration		= 0;
+		
+		//Rebuild the index from the log
+		loadLog();
+		
+		MinimaLogger.log("TxPOW log loaded "+mRows.size()+" rows from "+mSegments.size()+" segments in "+mFolder.getAbsolutePath());
+		
+		//Tidy up if needed..
+		checkCompact();
+	}
+	
+	@Override
+	public synchronized TxPOWDBRow addTxPOWDBRow(TxPOW zTxPOW) {
+		//Only add it once!
+		SQLTxPoWDBRow prev = mRows.get(zTxPOW.getTxPowID());
+		if(prev!=null) {
+			return prev;
+		}
+		
+		//Create a new row
+		SQLTxPoWDBRow row = new SQLTxPoWDBRow(this, zTxPOW.getTxPowID(), zTxPOW.isBlock(), zTxPOW.getParentID());
+		row.setTxPOW(zTxPOW);
+		
+		//Write it to the log
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(baos);
+			zTxPOW.writeDataStream(dos);
+			dos.flush();
+			
+			writeAdd(row, baos.toByteArray());
+		
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log write error "+e);
+		}
+		
+		//Add it
+		addRow(row);
+		
+		return row;
+	}
+	
+	@Override
+	public synchronized TxPOWDBRow findTxPOWDBRow(MiniData32 zTxPOWID) {
+		return mRows.get(zTxPOWID);
+	}
+	
+	@Override
+	public synchronized ArrayList<TxPOWDBRow> getAllTxPOWDBRow() {
+		return new ArrayList<TxPOWDBRow>(mRows.values());
+	}
+	
+	@Override
+	public synchronized void resetAllInBlocks() {
+		//Only the rows that are flagged need changing
+		ArrayList<SQLTxPoWDBRow> rows = mInBlock.getFlaggedRows();
+		for(SQLTxPoWDBRow row : rows) {
+			row.setIsInBlock(false);
+			row.setOnChainBlock(false);
+		}
+	}
+	
+	@Override
+	public synchronized void removeTxPOW(MiniData32 zTxPOWID) {
+		SQLTxPoWDBRow row = mRows.get(zTxPOWID);
+		if(row != null) {
+			row.pinTxPOW();
+			writeRemove(row);
+			removeRow(row);
+		}
+	}
+	
+	@Override
+	public synchronized ArrayList<TxPOWDBRow> removeTxPOWInBlockLessThan(MiniNumber zBlockNumber) {
+		ArrayList<TxPOWDBRow> removed = new ArrayList<>();
+		
+		//Only the buckets below the block - onchain blocks are not in them
+		ArrayList<SQLTxPoWDBRow> rows = mInBlock.getRowsBelow(zBlockNumber);
+		for(SQLTxPoWDBRow row : rows) {
+			//The caller may still want the TxPOW..
+			row.pinTxPOW();
+			
+			writeRemove(row);
+			removeRow(row);
+			removed.add(row);
+		}
+		
+		//Is there enough dead space to tidy up
+		if(removed.size()>0) {
+			checkCompact();
+		}
+		
+		//Return the removed..
+		return removed;
+	}
+	
+	@Override
+	public synchronized ArrayList<TxPOWDBRow> getAllUnusedTxPOW() {
+		return new ArrayList<TxPOWDBRow>(mNotInBlock.values());
+	}
+	
+	@Override
+	public synchronized ArrayList<TxPOWDBRow> getChildBlocksTxPOW(MiniData32 zParent) {
+		ArrayList<TxPOWDBRow> ret = new ArrayList<>();
+		
+		ArrayList<SQLTxPoWDBRow> children = mChildBlocks.get(zParent);
+		if(children != null) {
+			ret.addAll(children);
+		}
+		
+		return ret;
+	}
+	
+	@Override
+	public synchronized ArrayList<TxPOWDBRow> getAllBlocksMissingTransactions() {
+		return new ArrayList<TxPOWDBRow>(mBasicBlocks.values());
+	}
+	
+	@Override
+	public synchronized int getSize() {
+		return mRows.size();
+	}
+	
+	@Override
+	public synchronized void ClearDB() {
+		//Stop any compaction
+		mGeneration++;
+		
+		//Close and delete the log
+		closeSegments();
+		for(File seg : listSegments()) {
+			seg.delete();
+		}
+		
+		mRows 			= new LinkedHashMap<>();
+		mChildBlocks	= new Hashtable<>();
+		mNotInBlock		= new LinkedHashMap<>();
+		mBasicBlocks	= new LinkedHashMap<>();
+		mInBlock		= new InBlockIndex<>();
+		mSegments 		= new TreeMap<>();
+		mLiveBytes 		= new Hashtable<>();
+		
+		//And start again
+		openSegment(0);
+	}
+	
+	/**
+	 * Close the log files
+	 */
+	public synchronized void close() {
+		mGeneration++;
+		closeSegments();
+	}
+	
+	/**
+	 * Add the row to the state indexes.. Called by the row AFTER a change.
+	 */
+	protected synchronized void indexRow(SQLTxPoWDBRow zRow) {
+		if(mRows.get(zRow.mTxPowID) == zRow) {
+			addToIndexes(zRow);
+		}
+	}
+	
+	/**
+	 * Remove the row from the state indexes.. Called by the row BEFORE a change.
+	 */
+	protected synchronized void unindexRow(SQLTxPoWDBRow zRow) {
+		if(mRows.get(zRow.mTxPowID) == zRow) {
+			removeFromIndexes(zRow);
+		}
+	}
+	
+	private void addToIndexes(SQLTxPoWDBRow zRow) {
+		if(!zRow.mIsInBlock) {
+			mNotInBlock.put(zRow.mTxPowID, zRow);
+		}
+		
+		mInBlock.add(zRow);
+		
+		if(zRow.mIsBlock && zRow.mBlockState == TxPOWDBRow.TXPOWDBROW_STATE_BASIC) {
+			mBasicBlocks.put(zRow.mTxPowID, zRow);
+		}
+	}
+	
+	private void removeFromIndexes(SQLTxPoWDBRow zRow) {
+		mNotInBlock.remove(zRow.mTxPowID);
+		mBasicBlocks.remove(zRow.mTxPowID);
+		mInBlock.remove(zRow);
+	}
+	
+	/**
+	 * Read a TxPOW back in from the log
+	 */
+	protected synchronized TxPOW loadTxPOW(SQLTxPoWDBRow zRow) {
+		try {
+			byte[] data = readBytes(zRow.mSegment, zRow.mOffset, zRow.mLength);
+			
+			TxPOW txpow = new TxPOW();
+			txpow.readDataStream(new DataInputStream(new ByteArrayInputStream(data)));
+			
+			return txpow;
+		
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log read error "+zRow.mTxPowID+" "+e);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Write the current state of a row to the log
+	 */
+	protected synchronized void writeState(SQLTxPoWDBRow zRow) {
+		//Is it still in the DB..
+		if(mRows.get(zRow.mTxPowID) != zRow) {
+			return;
+		}
+		
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(baos);
+			
+			zRow.mTxPowID.writeDataStream(dos);
+			dos.writeBoolean(zRow.mIsInBlock);
+			dos.writeBoolean(zRow.mIsOnChainBlock);
+			dos.writeInt(zRow.mBlockState);
+			if(zRow.mInBlocknumber == null) {
+				dos.writeBoolean(false);
+			}else {
+				dos.writeBoolean(true);
+				zRow.mInBlocknumber.writeDataStream(dos);
+			}
+			dos.flush();
+			
+			append(RECORD_STATE, baos.toByteArray());
+		
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log write error "+e);
+		}
+	}
+	
+	private void writeRemove(SQLTxPoWDBRow zRow) {
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream dos = new DataOutputStream(baos);
+			zRow.mTxPowID.writeDataStream(dos);
+			dos.flush();
+			
+			append(RECORD_REMOVE, baos.toByteArray());
+		
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log write error "+e);
+		}
+	}
+	
+	/**
+	 * Write the ADD record and point the row at it
+	 */
+	private void writeAdd(SQLTxPoWDBRow zRow, byte[] zTxPOW) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		
+		zRow.mTxPowID.writeDataStream(dos);
+		dos.writeBoolean(zRow.mIsBlock);
+		zRow.mParentID.writeDataStream(dos);
+		dos.write(zTxPOW);
+		dos.flush();
+		
+		long start = append(RECORD_ADD, baos.toByteArray());
+		
+		zRow.mSegment 	 = mActive;
+		zRow.mOffset  	 = start + RECORD_HEADER + ADD_HEADER;
+		zRow.mLength  	 = zTxPOW.length;
+		zRow.mRecordSize = RECORD_HEADER + ADD_HEADER + zTxPOW.length;
+	}
+	
+	/**
+	 * Append a record to the active segment
+	 *
+	 * @return where the record starts
+	 */
+	private long append(byte zType, byte[] zData) throws IOException {
+		RandomAccessFile active = mSegments.get(mActive);
+		
+		//Time for a new segment..
+		if(active.length() > 0 && active.length() + RECORD_HEADER + zData.length > SEGMENT_MAX_SIZE) {
+			openSegment(mActive+1);
+			active = mSegments.get(mActive);
+		}
+		
+		long start = active.length();
+		active.seek(start);
+		
+		byte[] record = new byte[RECORD_HEADER + zData.length];
+		record[0] = zType;
+		record[1] = (byte)(zData.length >>> 24);
+		record[2] = (byte)(zData.length >>> 16);
+		record[3] = (byte)(zData.length >>> 8);
+		record[4] = (byte)(zData.length);
+		System.arraycopy(zData, 0, record, RECORD_HEADER, zData.length);
+		active.write(record);
+		
+		return start;
+	}
+	
+	private byte[] readBytes(int zSegment, long zOffset, int zLength) throws IOException {
+		RandomAccessFile seg = mSegments.get(zSegment);
+		if(seg == null) {
+			throw new IOException("Missing segment "+zSegment);
+		}
+		
+		byte[] data = new byte[zLength];
+		seg.seek(zOffset);
+		seg.readFully(data);
+		
+		return data;
+	}
+	
+	private void addRow(SQLTxPoWDBRow zRow) {
+		mRows.put(zRow.mTxPowID, zRow);
+		addToIndexes(zRow);
+		addLiveBytes(zRow.mSegment, zRow.mRecordSize);
+		
+		//Is it a block - index the parent
+		if(zRow.mIsBlock) {
+			ArrayList<SQLTxPoWDBRow> children = mChildBlocks.get(zRow.mParentID);
+			if(children == null) {
+				children = new ArrayList<>();
+				mChildBlocks.put(zRow.mParentID, children);
+			}
+			children.add(zRow);
+		}
+	}
+	
+	private void removeRow(SQLTxPoWDBRow zRow) {
+		removeFromIndexes(zRow);
+		mRows.remove(zRow.mTxPowID);
+		addLiveBytes(zRow.mSegment, -zRow.mRecordSize);
+		
+		if(zRow.mIsBlock) {
+			ArrayList<SQLTxPoWDBRow> children = mChildBlocks.get(zRow.mParentID);
+			if(children != null) {
+				children.remove(zRow);
+				if(children.isEmpty()) {
+					mChildBlocks.remove(zRow.mParentID);
+				}
+			}
+		}
+	}
+	
+	private void addLiveBytes(int zSegment, long zBytes) {
+		Long live = mLiveBytes.get(zSegment);
+		if(live == null) {
+			live = 0L;
+		}
+		mLiveBytes.put(zSegment, live + zBytes);
+	}
+	
+	private File getSegmentFile(int zSegment) {
+		return new File(mFolder, SEGMENT_PREFIX+zSegment+SEGMENT_SUFFIX);
+	}
+	
+	private int getSegmentNumber(File zFile) {
+		String name = zFile.getName();
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length()-SEGMENT_SUFFIX.length()));
+		}catch(NumberFormatException exc) {
+			return -1;
+		}
+	}
+	
+	/**
+	 * All the segment files in order - oldest first
+	 */
+	private ArrayList<File> listSegments() {
+		TreeMap<Integer, File> segs = new TreeMap<>();
+		
+		File[] files = mFolder.listFiles();
+		if(files != null) {
+			for(File ff : files) {
+				String name = ff.getName();
+				if(name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+					int num = getSegmentNumber(ff);
+					if(num >= 0) {
+						segs.put(num, ff);
+					}
+				}
+			}
+		}
+		
+		return new ArrayList<>(segs.values());
+	}
+	
+	private void openSegment(int zSegment) {
+		try {
+			RandomAccessFile seg = new RandomAccessFile(getSegmentFile(zSegment), "rw");
+			mSegments.put(zSegment, seg);
+			mActive = zSegment;
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log could not open segment "+zSegment+" "+e);
+		}
+	}
+	
+	private void closeSegments() {
+		for(RandomAccessFile seg : mSegments.values()) {
+			try {
+				seg.close();
+			} catch (IOException e) {}
+		}
+		mSegments.clear();
+	}
+	
+	/**
+	 * Replay the whole log to rebuild the index
+	 */
+	private void loadLog() {
+		ArrayList<File> segs = listSegments();
+		if(segs.isEmpty()) {
+			openSegment(0);
+			return;
+		}
+		
+		for(File seg : segs) {
+			int num = getSegmentNumber(seg);
+			openSegment(num);
+			
+			long good = replaySegment(num, seg);
+			
+			//A record was cut short - drop it
+			if(good < seg.length()) {
+				MinimaLogger.log("TxPOW log truncating segment "+seg.getName()+" at "+good);
+				try {
+					mSegments.get(num).setLength(good);
+				} catch (IOException e) {
+					MinimaLogger.log("TxPOW log could not truncate "+seg.getName()+" "+e);
+				}
+			}
+		}
+		
+		//Start a fresh segment if the last one is full
+		if(mSegments.get(mActive) != null) {
+			try {
+				if(mSegments.get(mActive).length() >= SEGMENT_MAX_SIZE) {
+					openSegment(mActive+1);
+				}
+			} catch (IOException e) {
+				openSegment(mActive+1);
+			}
+		}
+	}
+	
+	/**
+	 * @return The length of the segment that was read OK
+	 */
+	private long replaySegment(int zSegment, File zFile) {
+		long pos = 0;
+		long len = zFile.length();
+		
+		DataInputStream dis = null;
+		try {
+			dis = new DataInputStream(new BufferedInputStream(new FileInputStream(zFile)));
+			
+			while(pos + RECORD_HEADER <= len) {
+				byte type = dis.readByte();
+				int size  = dis.readInt();
+				if(size < 0 || pos + RECORD_HEADER + size > len) {
+					break;
+				}
+				
+				byte[] data = new byte[size];
+				dis.readFully(data);
+				
+				replayRecord(zSegment, pos, type, data);
+				
+				pos += RECORD_HEADER + size;
+			}
+		
+		} catch (EOFException e) {
+			//Cut short..
+		} catch (IOException e) {
+			MinimaLogger.log("TxPOW log read error "+zFile.getName()+" "+e);
+		}finally {
+			if(dis != null) {
+				try {
+					dis.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		return pos;
+	}
+	
+	private void replayRecord(int zSegment, long zStart, byte zType, byte[] zData) throws IOException {
+		DataInputStream dis = new DataInputStream(new ByteArrayInputStream(zData));
+		MiniData32 txpowid  = MiniData32.ReadFromStream(dis);
+		
+		if(zType == RECORD_ADD) {
+			boolean isblock   = dis.readBoolean();
+			MiniData32 parent = MiniData32.ReadFromStream(dis);
+			
+			//A later copy replaces the earlier one
+			SQLTxPoWDBRow prev = mRows.get(txpowid);
+			if(prev != null) {
+				removeRow(prev);
+			}
+			
+			SQLTxPoWDBRow row = new SQLTxPoWDBRow(this, txpowid, isblock, parent);
+			row.mSegment 	  = zSegment;
+			row.mOffset  	  = zStart + RECORD_HEADER + ADD_HEADER;
+			row.mLength  	  = zData.length - ADD_HEADER;
+			row.mRecordSize   = RECORD_HEADER + zData.length;
+			
+			//Keep the state if this was a copy
+			if(prev != null) {
+				row.mIsInBlock 		= prev.mIsInBlock;
+				row.mIsOnChainBlock = prev.mIsOnChainBlock;
+				row.mInBlocknumber 	= prev.mInBlocknumber;
+				row.mBlockState 	= prev.mBlockState;
+			}
+			
+			addRow(row);
+		
+		}else if(zType == RECORD_STATE) {
+			SQLTxPoWDBRow row = mRows.get(txpowid);
+			if(row == null) {
+				return;
+			}
+			
+			removeFromIndexes(row);
+			row.mIsInBlock 		= dis.readBoolean();
+			row.mIsOnChainBlock = dis.readBoolean();
+			row.mBlockState 	= dis.readInt();
+			if(dis.readBoolean()) {
+				row.mInBlocknumber = MiniNumber.ReadFromStream(dis);
+			}else {
+				row.mInBlocknumber = null;
+			}
+			addToIndexes(row);
+			
+		}else if(zType == RECORD_REMOVE) {
+			SQLTxPoWDBRow row = mRows.get(txpowid);
+			if(row != null) {
+				removeRow(row);
+			}
+		}
+	}
+	
+	/**
+	 * If over half of the old segments is dead space - start a compaction
+	 */
+	private void checkCompact() {
+		if(mCompacting) {
+			return;
+		}
+		
+		long total = 0;
+		long live  = 0;
+		ArrayList<Integer> old = new ArrayList<>();
+		for(Integer seg : mSegments.keySet()) {
+			if(seg == mActive) {
+				continue;
+			}
+			
+			old.add(seg);
+			try {
+				total += mSegments.get(seg).length();
+			} catch (IOException e) {}
+			
+			Long segbytes = mLiveBytes.get(seg);
+			if(segbytes != null) {
+				live += segbytes;
+			}
+		}
+		
+		if(total == 0 || live * 2 > total) {
+			return;
+		}
+		
+		//Run it in the background
+		mCompacting = true;
+		Thread compact = new Thread(new Compactor(old, mGeneration), "TxPOW log compaction");
+		compact.setDaemon(true);
+		compact.start();
+	}
+	
+	/**
+	 * Copy the live rows out of the old segments, then delete them.
+	 *
+	 * Takes the DB lock one row at a time so the DB can still be used.
+	 */
+	private class Compactor implements Runnable {
+		
+		ArrayList<Integer> mOld;
+		int mStartGeneration;
+		
+		public Compactor(ArrayList<Integer> zOld, int zGeneration) {
+			mOld 			 = zOld;
+			mStartGeneration = zGeneration;
+		}
+		
+		@Override
+		public void run() {
+			try {
+				ArrayList<SQLTxPoWDBRow> rows;
+				synchronized (SQLTxPoWDB.this) {
+					if(mGeneration != mStartGeneration) {
+						return;
+					}
+					rows = new ArrayList<>(mRows.values());
+				}
+				
+				int copied = 0;
+				for(SQLTxPoWDBRow row : rows) {
+					synchronized (SQLTxPoWDB.this) {
+						//Cleared or closed..
+						if(mGeneration != mStartGeneration) {
+							return;
+						}
+						
+						//Still in the DB..
+						if(mRows.get(row.mTxPowID) != row) {
+							continue;
+						}
+						
+						if(mOld.contains(row.mSegment)) {
+							//Copy the TxPOW forward
+							byte[] txpow = readBytes(row.mSegment, row.mOffset, row.mLength);
+							addLiveBytes(row.mSegment, -row.mRecordSize);
+							writeAdd(row, txpow);
+							addLiveBytes(row.mSegment, row.mRecordSize);
+							
+							//And the state
+							writeState(row);
+							copied++;
+						}
+					}
+				}
+				
+				//Now delete the old segments
+				synchronized (SQLTxPoWDB.this) {
+					if(mGeneration != mStartGeneration) {
+						return;
+					}
+					
+					for(Integer seg : mOld) {
+						RandomAccessFile raf = mSegments.remove(seg);
+						if(raf != null) {
+							raf.close();
+						}
+						getSegmentFile(seg).delete();
+						mLiveBytes.remove(seg);
+					}
+				}
+				
+				MinimaLogger.log("TxPOW log compacted "+mOld.size()+" segments, copied "+copied+" rows");
+			
+			} catch (IOException e) {
+				MinimaLogger.log("TxPOW log compaction error "+e);
+			
+			}finally {
+				synchronized (SQLTxPoWDB.this) {
+					mCompacting = false;
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,181 @@
+package org.minima.database.txpowdb.sql;
+
+import java.lang.ref.SoftReference;
+
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+
+/**
+ * A row in the SQLTxPoWDB. Only the index details are kept on the heap,
+ * the TxPOW itself is read from the log when it is needed.
+ */
+public class SQLTxPoWDBRow implements TxPOWDBRow {
+	
+	/**
+	 * The database that stores this row
+	 */
+	private SQLTxPoWDB mDB;
+	
+	/**
+	 * The index details - enough to answer queries without the TxPOW
+	 */
+	MiniData32 mTxPowID;
+	boolean mIsBlock;
+	MiniData32 mParentID;
+	
+	/**
+	 * Where the TxPOW lives in the log
+	 */
+	int mSegment;
+	long mOffset;
+	int mLength;
+	int mRecordSize;
+	
+	/**
+	 * The TxPOW.. can be dropped by the GC and read back in
+	 */
+	private SoftReference<TxPOW> mTxPOW;
+	
+	/**
+	 * Once removed from the DB the TxPOW is held until the row is gone
+	 */
+	private TxPOW mPinned;
+	
+	/**
+	 * The row state
+	 */
+	boolean mIsOnChainBlock;
+	boolean mIsInBlock;
+	MiniNumber mInBlocknumber;
+	int mBlockState;
+	
+	public SQLTxPoWDBRow(SQLTxPoWDB zDB, MiniData32 zTxPowID, boolean zIsBlock, MiniData32 zParentID) {
+		mDB 			= zDB;
+		mTxPowID 		= zTxPowID;
+		mIsBlock 		= zIsBlock;
+		mParentID 		= zParentID;
+		
+		mTxPOW 			= new SoftReference<>(null);
+		mPinned 		= null;
+		
+		mIsInBlock 		= false;
+		mIsOnChainBlock = false;
+		mInBlocknumber  = null;
+		mBlockState     = TXPOWDBROW_STATE_BASIC;
+	}
+	
+	public MiniData32 getTxPowID() {
+		return mTxPowID;
+	}
+	
+	public boolean isBlock() {
+		return mIsBlock;
+	}
+	
+	public MiniData32 getParentID() {
+		return mParentID;
+	}
+	
+	protected void setTxPOW(TxPOW zTxPOW) {
+		mTxPOW = new SoftReference<>(zTxPOW);
+	}
+	
+	/**
+	 * Keep the TxPOW on the heap - it's about to be removed from the log
+	 */
+	protected void pinTxPOW() {
+		mPinned = getTxPOW();
+	}
+	
+	@Override
+	public TxPOW getTxPOW() {
+		if(mPinned != null) {
+			return mPinned;
+		}
+		
+		//Still in memory..
+		TxPOW txpow = mTxPOW.get();
+		if(txpow == null) {
+			//Load it..
+			txpow = mDB.loadTxPOW(this);
+			mTxPOW = new SoftReference<>(txpow);
+		}
+		
+		return txpow;
+	}
+	
+	@Override
+	public void setIsInBlock(boolean zIsInBlock) {
+		if(mIsInBlock != zIsInBlock) {
+			mDB.unindexRow(this);
+			mIsInBlock = zIsInBlock;
+			mDB.indexRow(this);
+			mDB.writeState(this);
+		}
+	}
+	
+	@Override
+	public boolean isInBlock() {
+		return mIsInBlock;
+	}
+	
+	@Override
+	public MiniNumber getInBlockNumber() {
+		return mInBlocknumber;
+	}
+	
+	@Override
+	public void setInBlockNumber(MiniNumber zBlockNumber) {
+		mDB.unindexRow(this);
+		mInBlocknumber = zBlockNumber;
+		mDB.indexRow(this);
+		mDB.writeState(this);
+	}
+	
+	@Override
+	public boolean isOnChainBlock(){
+		return mIsOnChainBlock;
+	}
+	
+	@Override
+	public void setOnChainBlock(boolean zOnChain) {
+		if(mIsOnChainBlock != zOnChain) {
+			mDB.unindexRow(this);
+			mIsOnChainBlock = zOnChain;
+			mDB.indexRow(this);
+			mDB.writeState(this);
+		}
+	}
+	
+	@Override
+	public int getBlockState() {
+		return mBlockState;
+	}
+	
+	@Override
+	public void setBlockState(int zState) {
+		if(mBlockState != zState) {
+			mDB.unindexRow(this);
+			mBlockState = zState;
+			mDB.indexRow(this);
+			mDB.writeState(this);
+		}
+	}
+	
+	public String getStatusAsString() {
+		if(mBlockState == TXPOWDBROW_STATE_BASIC) {
+			return "BASIC";
+		}else if(mBlockState == TXPOWDBROW_STATE_FULL) {
+			return "FULL";
+		}
+		
+		return "ERROR";
+	}
+	
+	@Override
+	public String toString() {
+		return getStatusAsString()+" ONCHAINBLK:"+isOnChainBlock()+" IS_IN_BLOCK ("+mIsInBlock+") :"+mInBlocknumber+" "+getTxPOW();
+	}
+}
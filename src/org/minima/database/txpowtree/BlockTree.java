@@ -2,6 +2,9 @@ package org.minima.database.txpowtree;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
 
 import org.minima.database.txpowdb.TxPOWDBRow;
 import org.minima.objects.base.MiniData32;
@@ -29,16 +32,35 @@ public class BlockTree {
 	 */
 	BlockTreeNode mLastNode;
 	
+	/**
+	 * Every node in the tree by TxPOWID
+	 */
+	Hashtable<MiniData32, BlockTreeNode> mNodeIndex;
+	
+	/**
+	 * The main chain - from the root to the tip
+	 */
+	ArrayList<BlockTreeNode> mMainChain;
+	
 	/**
 	 * Main Constructor
 	 */
-	public BlockTree() {}
+	public BlockTree() {
+		mNodeIndex = new Hashtable<>();
+		mMainChain = new ArrayList<>();
+	}
 	
 	public void setTreeRoot(BlockTreeNode zNode) {
 		zNode.setParent(null);
 		mRoot 			= zNode;
-		mTip 			= mRoot;
 		mCascadeNode 	= mRoot;
+		
+		//A new tree..
+		mNodeIndex = new Hashtable<>();
+		indexNodes(zNode);
+		
+		mMainChain = new ArrayList<>();
+		setTip(mRoot);
 	}
 	
 	public BlockTreeNode getChainRoot() {
@@ -91,6 +113,12 @@ public class BlockTree {
 		
 		//It's OK - add it
 		parent.addChild(zNode);
+		indexNodes(zNode);
+		
+		//Only its own weight.. but may still be the heaviest child
+		if(parent.resetHeaviestChild() && isOnHeaviestBranch(parent)) {
+			setTip(getHeaviestBranchTip(parent));
+		}
 
 		//It's been added
 		return true;
@@ -108,8 +136,9 @@ public class BlockTree {
 			return;
 		}
 		
-		//Add to the end..
+		//Add to the end.. may have children of it's own when cascading
 		mTip.addChild(zNode);
+		indexNodes(zNode);
 		
 		//Link the MMR..
 		if(zNode.getMMRSet() != null) {
@@ -131,7 +160,7 @@ public class BlockTree {
 		}
 				
 		//Move on..
-		mTip = zNode;
+		setTip(zNode);
 	}
 	
 	public void hardSetCascadeNode(BlockTreeNode zNode) {
@@ -139,7 +168,36 @@ public class BlockTree {
 	}
 	
 	/**
-	 * Resets the weights in the tree
+	 * A node has become VALID - add its weight to all its parents
+	 * 
+	 * Only the heaviest child of each parent can change, so the tip only 
+	 * moves if one of those is on the heaviest branch.
+	 */
+	public void addValidNode(BlockTreeNode zNode) {
+		BigInteger weight = zNode.getWeight();
+		
+		//The highest parent that now has a different heaviest child
+		BlockTreeNode changed = null;
+		
+		BlockTreeNode parent = zNode.getParent();
+		while(parent != null) {
+			parent.addToTotalWeight(weight);
+			if(parent.resetHeaviestChild()) {
+				changed = parent;
+			}
+			parent = parent.getParent();
+		}
+		
+		//Has the tip moved..
+		if(changed != null && isOnHeaviestBranch(changed)) {
+			setTip(getHeaviestBranchTip(changed));
+		}
+	}
+	
+	/**
+	 * Resets the weights in the tree - all of them from scratch.
+	 * 
+	 * Blocks that become VALID are added with addValidNode, this is for a new tree.
 	 */
 	public void resetWeights() {
 		//First default them
@@ -148,8 +206,37 @@ public class BlockTree {
 		//Start at root..
 		_cascadeWeights(getChainRoot());
 		
+		//Now pick the heaviest children
+		_heaviestChildren(getChainRoot());
+		
 		//And get the tip..
-		mTip = getHeaviestBranchTip(getChainRoot());		
+		setTip(getHeaviestBranchTip(getChainRoot()));
+	}
+	
+	/**
+	 * Weigh the cascade nodes above zKept - a single line of VALID nodes. 
+	 * 
+	 * zKept and its children were copied with their weights, so only these need adding up.
+	 */
+	public void resetCascadeWeights(BlockTreeNode zKept) {
+		//What zKept adds to its parents
+		BigInteger total = BigInteger.ZERO;
+		if(zKept.getState() == BlockTreeNode.BLOCKSTATE_VALID) {
+			total = zKept.getTotalWeight();
+		}
+		
+		BlockTreeNode parent = zKept.getParent();
+		while(parent != null) {
+			parent.resetCurrentWeight();
+			parent.addToTotalWeight(total);
+			parent.resetHeaviestChild();
+			
+			total  = parent.getTotalWeight();
+			parent = parent.getParent();
+		}
+		
+		//And get the tip..
+		setTip(getHeaviestBranchTip(getChainRoot()));
 	}
 	
 	private void _zeroWeights(BlockTreeNode zNode) {
@@ -160,6 +247,14 @@ public class BlockTree {
 		}
 	}
 	
+	private void _heaviestChildren(BlockTreeNode zNode) {
+		zNode.resetHeaviestChild();
+		ArrayList<BlockTreeNode> children = zNode.getChildren();
+		for(BlockTreeNode child : children) {
+			_heaviestChildren(child);
+		}
+	}
+	
 	private void _cascadeWeights(BlockTreeNode zNode) {
 		//Only add valid blocks
 		if(zNode.getState() != BlockTreeNode.BLOCKSTATE_VALID) {
@@ -190,27 +285,30 @@ public class BlockTree {
 	 * @return
 	 */
 	private BlockTreeNode getHeaviestBranchTip(BlockTreeNode zStartNode) {
-		if(zStartNode.getNumberChildren()>0) {
-			//Max weight Node..
-			BlockTreeNode max = null;
-			
-			//Get the heaviest child branch
-			ArrayList<BlockTreeNode> children = zStartNode.getChildren();
-			for(BlockTreeNode node : children) {
-				if(max == null) {
-					max = node;
-				}else {
-					if(node.getTotalWeight().compareTo(max.getTotalWeight()) > 0) {
-						max = node;
-					}
-				}
+		//Follow the heaviest children down
+		BlockTreeNode tip = zStartNode;
+		while(tip.getHeaviestChild() != null) {
+			tip = tip.getHeaviestChild();
+		}
+		
+		return tip;
+	}
+	
+	/**
+	 * Is this node on the branch that leads to the tip
+	 */
+	private boolean isOnHeaviestBranch(BlockTreeNode zNode) {
+		BlockTreeNode node 	 = zNode;
+		BlockTreeNode parent = zNode.getParent();
+		while(parent != null) {
+			if(parent.getHeaviestChild() != node) {
+				return false;
 			}
-
-			//Now scour that branch for the heaviest twiglets
-			return getHeaviestBranchTip(max);
+			node 	= parent;
+			parent 	= parent.getParent();
 		}
 		
-		return zStartNode;
+		return node == mRoot;
 	}
 	
 	/**
@@ -220,63 +318,139 @@ public class BlockTree {
 	 * @return
 	 */
 	public BlockTreeNode findNode(MiniData32 zTxPOWID) {
-		if(getChainRoot() == null) {
-			return null;
-		}
-		
-		return _findNode(getChainRoot(), zTxPOWID);
+		return mNodeIndex.get(zTxPOWID);
 	}
 	
-	private BlockTreeNode _findNode(BlockTreeNode zRoot, MiniData32 zTxPOWID) {
-		//Check..
-		if(zRoot.getTxPowID().isExactlyEqual(zTxPOWID)) {
-			return zRoot;
-		}
-		
-		//Search the Children..
-		ArrayList<BlockTreeNode> children = zRoot.getChildren();
+	/**
+	 * Add this node and all its children to the index
+	 */
+	private void indexNodes(BlockTreeNode zNode) {
+		mNodeIndex.put(zNode.getTxPowID(), zNode);
 		
+		ArrayList<BlockTreeNode> children = zNode.getChildren();
 		for(BlockTreeNode child : children) {
-			BlockTreeNode found = _findNode(child, zTxPOWID);
+			indexNodes(child);
+		}
+	}
+	
+	/**
+	 * Set the tip and move the main chain over to it.
+	 * 
+	 * Only the blocks after the point where the new tip joins the old chain are changed.
+	 */
+	private void setTip(BlockTreeNode zTip) {
+		mTip = zTip;
 		
-			if(found != null) {
-				return found;
+		//Walk back until on the old chain
+		ArrayList<BlockTreeNode> newblocks = new ArrayList<>();
+		BlockTreeNode node = zTip;
+		int index = -1;
+		while(node != null) {
+			index = getChainIndex(node);
+			if(index != -1) {
+				break;
 			}
+			newblocks.add(node);
+			node = node.getParent();
 		}
 		
-		return null;
+		//Remove the old branch..
+		mMainChain.subList(index+1, mMainChain.size()).clear();
+		
+		//And add the new one
+		for(int i=newblocks.size()-1;i>=0;i--) {
+			mMainChain.add(newblocks.get(i));
+		}
 	}
 	
 	/**
-	 * Get the list of TreeNodes in the LongestChain
+	 * Where this block is in the main chain 
+	 * @param zNode
+	 * @return the index from the root - or -1 if not on the main chain
 	 */
-	public ArrayList<BlockTreeNode> getAsList(){
-		return getAsList(false);
+	public int getChainIndex(BlockTreeNode zNode) {
+		int index = getChainIndex(zNode.getTxPow().getBlockNumber());
+		if(index == -1 || mMainChain.get(index) != zNode) {
+			return -1;
+		}
+		
+		return index;
 	}
 	
-	public ArrayList<BlockTreeNode> getAsList(boolean zReverse){
-		ArrayList<BlockTreeNode> nodes  = new ArrayList<>();
-	
-		//Do we have a tip.. ?
-		if(mTip == null) {
-			return nodes;
+	/**
+	 * Where the block with this number is in the main chain
+	 */
+	private int getChainIndex(MiniNumber zBlockNumber) {
+		int len = mMainChain.size();
+		if(len == 0) {
+			return -1;
 		}
 		
-		//Add to the list..
-		nodes.add(mTip);
+		//After the cascade the block numbers go up by one..
+		long tipnum = mMainChain.get(len-1).getTxPow().getBlockNumber().getAsLong();
+		long index  = len - 1 - (tipnum - zBlockNumber.getAsLong());
+		if(index >= 0 && index < len && mMainChain.get((int)index).getTxPow().getBlockNumber().isEqual(zBlockNumber)) {
+			return (int)index;
+		}
 		
-		//Cycle up through the parents
-		BlockTreeNode tip = mTip.getParent();
-		while(tip != null) {
-			if(zReverse) {
-				nodes.add(0,tip);
+		//Cascaded blocks skip numbers - search for it
+		int low  = 0;
+		int high = len - 1;
+		while(low <= high) {
+			int mid = (low + high) / 2;
+			MiniNumber num = mMainChain.get(mid).getTxPow().getBlockNumber();
+			if(num.isEqual(zBlockNumber)) {
+				return mid;
+			}else if(num.isLess(zBlockNumber)) {
+				low = mid + 1;
 			}else {
-				nodes.add(tip);	
+				high = mid - 1;
 			}
-			tip = tip.getParent();
 		}
-				
-		return nodes;
+		
+		return -1;
+	}
+	
+	/**
+	 * How many blocks in the main chain
+	 */
+	public int getChainLength() {
+		return mMainChain.size();
+	}
+	
+	/**
+	 * The block in the main chain at this index from the root
+	 */
+	public BlockTreeNode getChainNode(int zIndex) {
+		return mMainChain.get(zIndex);
+	}
+	
+	/**
+	 * Find the block in the main chain with this block number
+	 * @param zBlockNumber
+	 * @return the block or null if not on the main chain
+	 */
+	public BlockTreeNode findChainNode(MiniNumber zBlockNumber) {
+		int index = getChainIndex(zBlockNumber);
+		if(index == -1) {
+			return null;
+		}
+		
+		return mMainChain.get(index);
+	}
+	
+	/**
+	 * The main chain from the root to the tip - a read only view, not a copy
+	 */
+	public List<BlockTreeNode> getMainChain(){
+		return Collections.unmodifiableList(mMainChain);
+	}
+	
+	/**
+	 * The main chain from zFrom to zTo (exclusive) - a read only view, not a copy
+	 */
+	public List<BlockTreeNode> getMainChain(int zFrom, int zTo){
+		return Collections.unmodifiableList(mMainChain.subList(zFrom, zTo));
 	}
 	
 	/**
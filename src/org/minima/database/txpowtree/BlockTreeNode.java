@@ -45,6 +45,11 @@ public class BlockTreeNode implements Comparable<BlockTreeNode> {
 	private BigInteger		mTotalWeight		= new BigInteger("0");
 	private BigInteger		mWeight				= new BigInteger("0");
 	
+	/**
+	 * The child with the heaviest total weight - the GHOST branch
+	 */
+	private BlockTreeNode mHeaviestChild = null;
+	
 	/**
 	 * The Finalized MMRset for this block
 	 */
@@ -145,6 +150,48 @@ public class BlockTreeNode implements Comparable<BlockTreeNode> {
 		return mTotalWeight;
 	}
 	
+	public BlockTreeNode getHeaviestChild() {
+		return mHeaviestChild;
+	}
+	
+	/**
+	 * Pick the heaviest child again - the first in order if they are the same
+	 * 
+	 * @return true if it changed
+	 */
+	public boolean resetHeaviestChild() {
+		BlockTreeNode max = null;
+		for(BlockTreeNode node : mChildren) {
+			if(max == null || node.getTotalWeight().compareTo(max.getTotalWeight()) > 0) {
+				max = node;
+			}
+		}
+		
+		boolean changed = (max != mHeaviestChild);
+		mHeaviestChild  = max;
+		
+		return changed;
+	}
+	
+	/**
+	 * Take the weights of the node this is a copy of - once the children have been copied
+	 */
+	public void copyWeights(BlockTreeNode zOriginal) {
+		mTotalWeight = zOriginal.getTotalWeight();
+		
+		//The copy of the same heaviest child
+		mHeaviestChild = null;
+		BlockTreeNode heaviest = zOriginal.getHeaviestChild();
+		if(heaviest != null) {
+			for(BlockTreeNode node : mChildren) {
+				if(node.getTxPowID().isExactlyEqual(heaviest.getTxPowID())) {
+					mHeaviestChild = node;
+					break;
+				}
+			}
+		}
+	}
+	
 	public TxPOW getTxPow() {
 		return mTXPOW;
 	}
@@ -201,6 +248,7 @@ public class BlockTreeNode implements Comparable<BlockTreeNode> {
 	public void resetNode() {
 		mParent = null;
 		mChildren.clear();
+		mHeaviestChild = null;
 	}
 	
 	@Override
@@ -60,7 +60,7 @@ public class BlockTreePrinter {
 		MinimaLogger.log("Total POW : "+mTree.getChainRoot().getTotalWeight());
 		MinimaLogger.log("Root      : "+mTree.getChainRoot());
 		MinimaLogger.log("Tip       : "+mTree.getChainTip());
-		MinimaLogger.log("Length    : "+mTree.getAsList().size());
+		MinimaLogger.log("Length    : "+mTree.getChainLength());
 		MinimaLogger.log("Cascade   : "+mCascadeNode);
 		MinimaLogger.log("Speed     : "+mTree.getChainSpeed()+" blocks / sec");
 		
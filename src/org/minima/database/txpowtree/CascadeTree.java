@@ -37,6 +37,14 @@ public class CascadeTree {
 		if(zNode.getBlockTime().isMore(zCascade.increment())) {
 			//Do all the parents
 			recurseParentMMR(zCascade, zNode.getParent());
+		}else if(mDB.getMMRArchive() != null && zNode.getParent() != null) {
+			//The oldest - may not have been archived yet
+			mDB.getMMRArchive().archiveSet(zNode.getParent());
+		}
+		
+		//Archive the changes in this block before it takes over the parent's
+		if(mDB.getMMRArchive() != null) {
+			mDB.getMMRArchive().archiveSet(zNode);
 		}
 			
 		//The you do it..
@@ -68,6 +76,17 @@ public class CascadeTree {
 			return mRemovals;
 		}
 		
+		//The weights can only be kept if every block above it added to them
+		boolean keepweights = true;
+		BlockTreeNode parent = oldtip;
+		while(parent != null) {
+			if(parent.getState() != BlockTreeNode.BLOCKSTATE_VALID) {
+				keepweights = false;
+				break;
+			}
+			parent = parent.getParent();
+		}
+		
 		//All this we keep
 		BlockTreeNode fullkeep = copyNodeTree(oldtip);
 		
@@ -120,8 +139,12 @@ public class CascadeTree {
 		//Add the rest
 		mCascadeTree.hardAddNode(fullkeep, false);
 		
-		//And sort the weights
-		mCascadeTree.resetWeights();
+		//And sort the weights - the kept part has its own, so only the cascade nodes
+		if(keepweights) {
+			mCascadeTree.resetCascadeWeights(fullkeep);
+		}else {
+			mCascadeTree.resetWeights();
+		}
 		
 		return mRemovals;
 	}
@@ -153,7 +176,7 @@ public class CascadeTree {
 	}
 	
 	/**
-	 * Deep copy a Block treenode..
+	 * Deep copy a Block treenode.. with its weights
 	 * 
 	 * @param zOriginal
 	 * @return
@@ -167,6 +190,9 @@ public class CascadeTree {
 			copy.addChild(childcopy);
 		}
 		
+		//Same weight and heaviest child
+		copy.copyWeights(zOriginal);
+		
 		return copy;
 	}
 	
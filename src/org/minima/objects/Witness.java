@@ -5,6 +5,7 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import org.minima.database.mmr.MMRMultiProof;
 import org.minima.database.mmr.MMRProof;
 import org.minima.objects.base.MiniKeyValue;
 import org.minima.objects.base.MiniByte;
@@ -33,6 +34,17 @@ public class Witness implements Streamable {
 	 */
 	ArrayList<MMRProof> mProofs;
 	
+	/**
+	 * Send the proofs as one MMRMultiProof if they can be - the sibling hashes are shared
+	 */
+	boolean mUseMultiProof;
+	MMRMultiProof mMultiProof;
+	
+	/**
+	 * Written instead of the number of proofs when it's an MMRMultiProof
+	 */
+	private static final int MULTIPROOF_MARKER = -1;
+	
 	/**
 	 * The Scripts for the Inputs
 	 */
@@ -70,6 +82,9 @@ public class Witness implements Streamable {
 		mScripts    = new ArrayList<>();
 		mProofs     = new ArrayList<>();
 		
+		mUseMultiProof = false;
+		mMultiProof    = null;
+		
 		mAllScripts = new ArrayList<MiniKeyValue>();
 		
 		mTokenProof = new ArrayList<MiniKeyValue>();
@@ -85,6 +100,23 @@ public class Witness implements Streamable {
 	
 	public void addMMRProof(MMRProof zProof) {
 		mProofs.add(zProof);
+		mMultiProof = null;
+	}
+	
+	public void setUseMultiProof(boolean zUse) {
+		mUseMultiProof = zUse;
+		mMultiProof    = null;
+	}
+	
+	/**
+	 * @return The proofs as one MMRMultiProof - or null if not sent that way
+	 */
+	public MMRMultiProof getMultiProof() {
+		if(mMultiProof == null && mUseMultiProof && MMRMultiProof.canCombine(mProofs)) {
+			mMultiProof = new MMRMultiProof(mProofs);
+		}
+		
+		return mMultiProof;
 	}
 	
 	public ArrayList<MMRProof> getAllProofs(){
@@ -199,10 +231,16 @@ public class Witness implements Streamable {
 		}
 		
 		//MMRProofs
-		int mmrlen = mProofs.size();
-		zOut.writeInt(mmrlen);
-		for(MMRProof proof : mProofs) {
-			proof.writeDataStream(zOut);
+		MMRMultiProof multi = getMultiProof();
+		if(multi != null) {
+			zOut.writeInt(MULTIPROOF_MARKER);
+			multi.writeDataStream(zOut);
+		}else {
+			int mmrlen = mProofs.size();
+			zOut.writeInt(mmrlen);
+			for(MMRProof proof : mProofs) {
+				proof.writeDataStream(zOut);
+			}
 		}
 	}
 
@@ -228,9 +266,28 @@ public class Witness implements Streamable {
 		}
 		
 		mProofs = new ArrayList<>();
+		mUseMultiProof = false;
+		mMultiProof    = null;
 		prlen = zIn.readInt();
-		for(int i=0;i<prlen;i++) {
-			mProofs.add(MMRProof.ReadFromStream(zIn));
+		if(prlen == MULTIPROOF_MARKER) {
+			//One proof for all the inputs
+			MMRMultiProof multi = MMRMultiProof.ReadFromStream(zIn);
+			if(multi == null) {
+				throw new IOException("Could not read MMRMultiProof in Witness");
+			}
+			
+			ArrayList<MMRProof> proofs = multi.getProofs();
+			if(proofs == null) {
+				throw new IOException("Invalid MMRMultiProof in Witness");
+			}
+			
+			mProofs.addAll(proofs);
+			mUseMultiProof = true;
+			mMultiProof    = multi;
+		}else {
+			for(int i=0;i<prlen;i++) {
+				mProofs.add(MMRProof.ReadFromStream(zIn));
+			}
 		}
 	}
 }
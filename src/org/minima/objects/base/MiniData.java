@@ -102,6 +102,15 @@ public class MiniData implements Streamable {
 		return isExactlyEqual(data);
 	}
 	
+	/**
+	 * Same length and same value means the same bytes.. so this matches equals()
+	 * and lets MiniData be used as a Hashtable key.
+	 */
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(mData);
+	}
+	
 	public boolean isExactlyEqual(MiniData zCompare) {
 		if(getLength() != zCompare.getLength()) {
 			return false;
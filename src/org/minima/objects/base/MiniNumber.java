@@ -60,9 +60,9 @@ public class MiniNumber implements Streamable {
 //		mNumber = new BigDecimal(zNumber,mMathContext);
 //	}
 
-//	public MiniNumber(long zNumber){
-//		mNumber = new BigDecimal(zNumber,mMathContext);
-//	}
+	public MiniNumber(long zNumber){
+		mNumber = new BigDecimal(zNumber,mMathContext);
+	}
 	
 //	public MiniNumber(double zNumber){
 //		mNumber = new BigDecimal(zNumber,mMathContext);
@@ -52,6 +52,10 @@ public class BackupManager extends SystemHandler {
 	
 	File mTxPOWDB;
 	
+	File mCoinDB;
+	
+	File mMMRArchive;
+	
 	public BackupManager(Main zMain, String zHomeFolder) {
 		super(zMain, "Backup Manager");
 		
@@ -66,9 +70,32 @@ public class BackupManager extends SystemHandler {
 	}
 	
 	public File getTxPOWFolder() {
+		//May be asked for before BACKUP_INIT has run
+		if(mTxPOWDB == null) {
+			return ensureFolder(new File(new File(new File(mHomeFolder), "minima"),"txpow"));
+		}
+		
 		return mTxPOWDB;
 	}
 	
+	public File getCoinDBFolder() {
+		//May be asked for before BACKUP_INIT has run
+		if(mCoinDB == null) {
+			return ensureFolder(new File(new File(new File(mHomeFolder), "minima"),"coindb"));
+		}
+		
+		return mCoinDB;
+	}
+	
+	public File getMMRArchiveFolder() {
+		//May be asked for before BACKUP_INIT has run
+		if(mMMRArchive == null) {
+			return ensureFolder(new File(new File(new File(mHomeFolder), "minima"),"mmrarchive"));
+		}
+		
+		return mMMRArchive;
+	}
+	
 	public void backupTxpow(TxPOW zTxPOW) {
 		//Create the File
 //		File back = new File(mTxPOWDB,zTxPOW.getTxPowID().toString()+".txpow");
@@ -233,6 +260,12 @@ public class BackupManager extends SystemHandler {
 		//Current used TxPOW
 		mTxPOWDB = ensureFolder(new File(mRoot,"txpow"));
 		
+		//The wallet coins
+		mCoinDB  = ensureFolder(new File(mRoot,"coindb"));
+		
+		//The cascaded MMR
+		mMMRArchive = ensureFolder(new File(mRoot,"mmrarchive"));
+		
 		//The Backup folder
 		mBackup  = ensureFolder(new File(mRoot,"backup"));
 	}
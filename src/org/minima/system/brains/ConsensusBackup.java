@@ -2,16 +2,19 @@ package org.minima.system.brains;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
 
 import org.minima.database.MinimaDB;
 import org.minima.database.coindb.CoinDBRow;
 import org.minima.database.mmr.MMREntry;
 import org.minima.database.mmr.MMRSet;
+import org.minima.database.txpowdb.TxPOWDBRow;
 import org.minima.database.txpowtree.BlockTreeNode;
 import org.minima.database.userdb.UserDB;
 import org.minima.database.userdb.java.JavaUserDB;
 import org.minima.objects.Coin;
 import org.minima.objects.TxPOW;
+import org.minima.objects.base.MiniData32;
 import org.minima.objects.base.MiniNumber;
 import org.minima.system.Main;
 import org.minima.system.backup.BackupManager;
@@ -68,7 +71,7 @@ public class ConsensusBackup {
 			getBackup().PostMessage(backupu);
 			
 			//Get the complete List
-			ArrayList<BlockTreeNode> nodes = getMainDB().getMainTree().getAsList();
+			List<BlockTreeNode> nodes = getMainDB().getMainTree().getMainChain();
 			
 			if(nodes.size()>0) {
 				//Create a SyncPackage
@@ -77,9 +80,9 @@ public class ConsensusBackup {
 				//Cascade Node
 				sp.setCascadeNode(getMainDB().getMainTree().getCascadeNode().getTxPow().getBlockNumber());
 				
-				//Cycle through it all..
+				//Cycle through it all.. from the root
 				for(BlockTreeNode node : nodes) {
-					sp.getAllNodes().add(0,new SyncPacket(node));
+					sp.getAllNodes().add(new SyncPacket(node));
 				}
 				
 				//The backup file
@@ -128,6 +131,10 @@ public class ConsensusBackup {
 			}else {
 				//Get on with it..
 				MinimaLogger.log("No user restore file found "+ff.getAbsolutePath()+". Start normal.");
+				
+				//No chain - so no coins either
+				getMainDB().getCoinDB().clearDB();
+				
 				mHandler.getMainHandler().PostMessage(Main.SYSTEM_INIT);
 				return;
 			}
@@ -159,6 +166,10 @@ public class ConsensusBackup {
 			}else {
 				//Get on with it..
 				MinimaLogger.log("No tree backup file found "+ff.getAbsolutePath()+". Start normal.");
+				
+				//No chain - so no coins either
+				getMainDB().getCoinDB().clearDB();
+				
 				mHandler.getMainHandler().PostMessage(Main.SYSTEM_INIT);
 				return;
 			}
@@ -180,8 +191,11 @@ public class ConsensusBackup {
 			SyncPackage sp = (SyncPackage) zMessage.getObject("readobject");
 			MiniNumber casc = sp.getCascadeNode();
 			
-			//Clear the database..
-			getMainDB().getTxPowDB().ClearDB();
+			//The TxPOW log is kept - just reset which are in blocks..
+			getMainDB().getTxPowDB().resetAllInBlocks();
+			
+			//The coins from the cascade on are scanned again - undo what the CoinDB saved for them
+			getMainDB().getCoinDB().rollbackToBlock(casc.sub(MiniNumber.ONE));
 			
 			//Drill down 
 			ArrayList<SyncPacket> packets = sp.getAllNodes();
@@ -204,11 +218,28 @@ public class ConsensusBackup {
 				if(txpow.getBlockNumber().isEqual(sp.getCascadeNode())) {
 					getMainDB().hardSetCascadeNode(node);
 				}
+				
+				//And the txns in this block that we still have
+				ArrayList<MiniData32> txns = txpow.getBlockTxns();
+				for(MiniData32 txn : txns) {
+					TxPOWDBRow row = getMainDB().getTxPOWRow(txn);
+					if(row != null) {
+						row.setOnChainBlock(false);
+						row.setIsInBlock(true);
+						row.setInBlockNumber(txpow.getBlockNumber());
+					}
+				}
 			}
 			
 			//Reset weights
 			getMainDB().hardResetChain();
 			
+			//Anything from before the cascade in the log is old history..
+			getMainDB().removeTxPOWBefore(casc);
+			
+			//And track the blocks still waiting for txns
+			getMainDB().resetTxnTracker();
+			
 			//Get on with it..
 			mHandler.getMainHandler().PostMessage(Main.SYSTEM_INIT);
 		}
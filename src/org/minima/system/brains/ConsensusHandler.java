@@ -2,8 +2,14 @@ package org.minima.system.brains;
 
 import java.util.ArrayList;
 
+import org.minima.GlobalParams;
 import org.minima.NativeListener;
 import org.minima.database.MinimaDB;
+import org.minima.database.coindb.select.CoinSelector;
+import org.minima.database.coindb.select.CoinSelectors;
+import org.minima.database.coindb.sql.SQLCoinDB;
+import org.minima.database.mmr.MMRArchive;
+import org.minima.database.txpowdb.sql.SQLTxPoWDB;
 import org.minima.objects.Address;
 import org.minima.objects.Coin;
 import org.minima.objects.Transaction;
@@ -124,6 +130,21 @@ public class ConsensusHandler extends SystemHandler {
 	
 	public void setBackUpManager() {
 		getMainDB().setBackupManager(getMainHandler().getBackupManager());
+		
+		//Keep the TxPOW on disk so they survive a restart
+		if(GlobalParams.MINIMA_TXPOWDB_DISK) {
+			getMainDB().setTxPowDB(new SQLTxPoWDB(getMainHandler().getBackupManager().getTxPOWFolder()));
+		}
+		
+		//And the wallet coins
+		if(GlobalParams.MINIMA_COINDB_DISK) {
+			getMainDB().setCoinDB(new SQLCoinDB(getMainHandler().getBackupManager().getCoinDBFolder()));
+		}
+		
+		//And every MMR change that is cascaded
+		if(GlobalParams.MINIMA_MMR_ARCHIVE) {
+			getMainDB().setMMRArchive(new MMRArchive(getMainHandler().getBackupManager().getMMRArchiveFolder()));
+		}
 	}
 	
 	/**
@@ -286,23 +307,37 @@ public class ConsensusHandler extends SystemHandler {
 				total = total.add(cc.getAmount());
 			}
 
+			//How to pick the coins
+			String strategy = "";
+			if(zMessage.exists("strategy")) {
+				strategy = zMessage.getString("strategy");
+			}
+			CoinSelector selector = CoinSelectors.getSelector(strategy);
+			
 			//Do we have that much..
 			if(total.isLess(sendamount)) {
 				//Insufficient funds!
 				InputHandler.endResponse(zMessage, false, "Insufficient funds! You only have : "+total);
+			
+			}else if(selector == null) {
+				InputHandler.endResponse(zMessage, false, "Unknown coin selection strategy : "+strategy);
 				
 			}else {
 				//Continue constructing the transaction - outputs don't need scripts
 				Address recipient= new Address(new MiniData32(address));
 				
+				//Which coins to use
+				ArrayList<Coin> inputs = selector.selectCoins(confirmed, sendamount);
+				MiniNumber selected    = CoinSelectors.getTotal(inputs);
+				
 				//Blank address - check change is non-null
 				Address change = new Address(); 
-				if(!total.isEqual(sendamount)) {
+				if(!selected.isEqual(sendamount)) {
 					change = getMainDB().getUserDB().newSimpleAddress();
 				}
 				
 				//Create the Transaction
-				Message ret = getMainDB().createTransaction(sendamount, recipient, change, confirmed, tok, changetok);
+				Message ret = getMainDB().createTransaction(sendamount, recipient, change, inputs, tok, changetok);
 				InputHandler.addResponseMesage(ret, zMessage);
 				
 				//Send it..
@@ -1,10 +1,12 @@
 package org.minima.system.brains;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import org.minima.database.MinimaDB;
 import org.minima.database.mmr.MMRSet;
 import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.database.txpowtree.BlockTree;
 import org.minima.database.txpowtree.BlockTreeNode;
 import org.minima.objects.TxPOW;
 import org.minima.objects.base.MiniByte;
@@ -48,7 +50,7 @@ public class ConsensusNet {
 		
 		if(zMessage.isMessageType(CONSENSUS_NET_INITIALISE)) {
 			//Lets create a sync package
-			ArrayList<BlockTreeNode> nodes = getMainDB().getMainTree().getAsList();
+			List<BlockTreeNode> nodes = getMainDB().getMainTree().getMainChain();
 			
 			//Do we have any info.. ?
 			if(nodes.size()==0) {
@@ -59,11 +61,11 @@ public class ConsensusNet {
 			SyncPackage sp = new SyncPackage();
 			sp.setCascadeNode(casc);
 			
-			//Cycle through it all..
+			//Cycle through it all.. from the root
 			for(BlockTreeNode node : nodes) {
 				MiniNumber block = node.getTxPow().getBlockNumber();
-//				sp.getAllNodes().add(0,new SyncPacket(node, block.isLessEqual(casc)));
-				sp.getAllNodes().add(0,new SyncPacket(node));
+//				sp.getAllNodes().add(new SyncPacket(node, block.isLessEqual(casc)));
+				sp.getAllNodes().add(new SyncPacket(node));
 			}
 			
 			//Now send that on..
@@ -78,7 +80,7 @@ public class ConsensusNet {
 //			MiniNumber cross = MiniNumber.ZERO;
 //			
 //			//Do we have anything
-//			if(getMainDB().getMainTree().getAsList().size()>0) {
+//			if(getMainDB().getMainTree().getChainLength()>0) {
 //				//Is there a cross over
 //				cross = checkCrossover(sp);
 //				
@@ -96,9 +98,11 @@ public class ConsensusNet {
 //			sp.calculateWeight();
 			
 			//FRESH? - Initial User no previous cascade.
-			if(hardhack || getMainDB().getMainTree().getAsList().size()==0) {
+			if(hardhack || getMainDB().getMainTree().getChainLength()==0) {
 				//Clear the database..
 				getMainDB().getTxPowDB().ClearDB();
+				getMainDB().getTxnTracker().clear();
+				getMainDB().getCoinDB().clearDB();
 				
 				//Drill down 
 				ArrayList<SyncPacket> packets = sp.getAllNodes();
@@ -293,38 +297,26 @@ public class ConsensusNet {
 	 * Find a crossover node.. Check 2 chains and find where they intersect.
 	 */
 	public MiniNumber checkCrossover(SyncPackage zIntro) {
-		//Our Chain.. FROM root onwards..
-		ArrayList<BlockTreeNode> chain = getMainDB().getMainTree().getAsList();
-		MiniNumber maincascade = getMainDB().getMainTree().getCascadeNode().getTxPow().getBlockNumber();
+		//Our Chain..
+		BlockTree chain = getMainDB().getMainTree();
+		MiniNumber maincascade = chain.getCascadeNode().getTxPow().getBlockNumber();
 		
 		//The incoming chain
 		ArrayList<SyncPacket> introchain = zIntro.getAllNodes();
 		
-		boolean found        = false;
+		//The highest block in both..
 		MiniNumber crossover = MiniNumber.ZERO;
-		
-		//Cycle..
-		for(BlockTreeNode block : chain) {
-			MiniNumber bnum = block.getTxPow().getBlockNumber();
+		for(SyncPacket spack : introchain) {
+			MiniNumber bnum = spack.getTxPOW().getBlockNumber();
+			
 			//only use nodes after our cascade..
-			if(bnum.isMore(maincascade)) {
-				//Run through the intro chain..
-				for(SyncPacket spack : introchain) {
-					if(spack.getTxPOW().getBlockNumber().isEqual(bnum)) {
-						//Crossover!
-						found = true;
-						crossover = bnum;
-						break;
-					}
-				}
-			}
-		
-			if(found) {
-				break;
+			if(bnum.isMore(maincascade) && bnum.isMore(crossover) && chain.findChainNode(bnum) != null) {
+				//Crossover!
+				crossover = bnum;
 			}
 		}
 		
-		//no Hit..
+		//ZERO if no Hit..
 		return crossover;
 	}
 }
@@ -6,8 +6,10 @@ import java.util.Hashtable;
 
 import org.minima.GlobalParams;
 import org.minima.database.MinimaDB;
+import org.minima.database.coindb.BalanceLedger;
 import org.minima.database.coindb.CoinDBPrinter;
 import org.minima.database.coindb.CoinDBRow;
+import org.minima.database.mmr.MMRFootprint;
 import org.minima.database.mmr.MMRPrint;
 import org.minima.database.mmr.MMRProof;
 import org.minima.database.mmr.MMRSet;
@@ -38,6 +40,7 @@ public class ConsensusPrint {
 	public static final String CONSENSUS_COINS 				= CONSENSUS_PREFIX+"COINS";
 	public static final String CONSENSUS_TXPOW 				= CONSENSUS_PREFIX+"TXPOW";
 	public static final String CONSENSUS_KEYS 				= CONSENSUS_PREFIX+"KEYS";
+	public static final String CONSENSUS_MMRPROOF 			= CONSENSUS_PREFIX+"MMRPROOF";
 	
 	public static final String CONSENSUS_STATUS 			= CONSENSUS_PREFIX+"STATUS";
 	public static final String CONSENSUS_PRINTCHAIN 		= CONSENSUS_PREFIX+"PRINTCHAIN";
@@ -92,80 +95,17 @@ public class ConsensusPrint {
 			treeprint.printtree();
 		
 		}else if(zMessage.isMessageType(CONSENSUS_BALANCE)){
-			//Current top block
-			MiniNumber top = getMainDB().getTopBlock();
-			
-			//Now get the balance..
-			Hashtable<MiniData32, MiniNumber> totals_confirmed   = new Hashtable<>();
-			Hashtable<MiniData32, MiniNumber> totals_unconfirmed = new Hashtable<>();
-			
-			ArrayList<CoinDBRow> coins = getMainDB().getCoinDB().getComplete();
-			for(CoinDBRow coin : coins) {
-				if(coin.isInBlock()) {
-					//What Token..
-					MiniData32 tokid = coin.getCoin().getTokenID();
-					MiniNumber depth = top.sub(coin.getInBlockNumber());
-					
-					if(!coin.isSpent()) {
-						if(depth.isMoreEqual(GlobalParams.MINIMA_CONFIRM_DEPTH)) {
-							//Get the Current total..
-							MiniNumber curr = totals_confirmed.get(tokid);
-							if(curr == null) {curr = MiniNumber.ZERO;}
-							
-							//Add it..
-							curr = curr.add(coin.getCoin().getAmount());
-							
-							//Re-add..
-							totals_confirmed.put(tokid, curr);
-						}else {
-							//Get the Current total..
-							MiniNumber curr = totals_unconfirmed.get(tokid);
-							if(curr == null) {curr = MiniNumber.ZERO;}
-							
-							//Add it..
-							curr = curr.add(coin.getCoin().getAmount());
-							
-							//Re-add..
-							totals_unconfirmed.put(tokid, curr);
-						}
-					}
-				}
-			}
+			//Now get the balance.. kept up to date by the ledger
+			BalanceLedger ledger = getMainDB().getBalanceLedger();
+			Hashtable<MiniData32, MiniNumber> totals_confirmed   = ledger.getAllConfirmed();
+			Hashtable<MiniData32, MiniNumber> totals_unconfirmed = ledger.getAllUnconfirmed();
+			Hashtable<MiniData32, MiniNumber> totals_spendable   = ledger.getAllSpendable();
 			
 			//All the balances..
 			JSONObject allbal = InputHandler.getResponseJSON(zMessage);
-			JSONArray totbal = new JSONArray();
-			
-			//Now create a JSON Object
-			Enumeration<MiniData32> keys = totals_confirmed.keys();
-			while(keys.hasMoreElements())  {
-				MiniData32 key = keys.nextElement();
-				MiniNumber tot = totals_confirmed.get(key);
-				
-				JSONObject minbal = new JSONObject();
-				minbal.put("tokenid", key.toString());
-				minbal.put("amount", tot.toString());
-				
-				totbal.add(minbal);
-			}	
-			
-			//Confirmed
-			allbal.put("confirmed", totbal);
-			totbal = new JSONArray();
-			
-			//Now create a JSON Object
-			keys = totals_unconfirmed.keys();
-			while(keys.hasMoreElements())  {
-				MiniData32 key = keys.nextElement();
-				MiniNumber tot = totals_unconfirmed.get(key);
-				
-				JSONObject minbal = new JSONObject();
-				minbal.put("tokenid", key.toString());
-				minbal.put("amount", tot.toString());
-				
-				totbal.add(minbal);
-			}
-			allbal.put("unconfirmed", totbal);
+			putJSON(allbal, "confirmed", getBalances(totals_confirmed));
+			putJSON(allbal, "unconfirmed", getBalances(totals_unconfirmed));
+			putJSON(allbal, "spendable", getBalances(totals_spendable));
 			
 			InputHandler.endResponse(zMessage, true, "");
 			
@@ -201,7 +141,7 @@ public class ConsensusPrint {
 			int counter=0;
 			for(CoinDBRow coin : coins) {
 				if(!coin.isSpent()) {
-					InputHandler.getResponseJSON(zMessage).put(counter++, baseset.getProof(coin.getMMREntry()) );
+					InputHandler.getResponseJSON(zMessage).put(counter++, getMainDB().getProofCache().getProof(baseset, coin.getMMREntry()) );
 				}
 			}
 			
@@ -221,6 +161,24 @@ public class ConsensusPrint {
 				InputHandler.endResponse(zMessage, true, "");
 			}
 		
+		}else if(zMessage.isMessageType(CONSENSUS_MMRPROOF)){
+			if(getMainDB().getMainTree().getChainRoot() == null) {
+				InputHandler.endResponse(zMessage, false, "No blocks!");
+				return;
+			}
+			
+			String entry = zMessage.getString("entry");
+			MMRSet tipset = getMainDB().getMainTree().getChainTip().getMMRSet();
+			
+			//From the chain - or the archive if it's gone
+			MMRProof proof = getMainDB().getProofCache().getProof(tipset, new MiniNumber(entry));
+			if(proof.getMMRData() == null) {
+				InputHandler.endResponse(zMessage, false, "No coin found at MMR entry "+entry);
+			}else {
+				putJSON(InputHandler.getResponseJSON(zMessage), "proof", proof.toJSON());
+				InputHandler.endResponse(zMessage, true, "");
+			}
+		
 		}else if(zMessage.isMessageType(CONSENSUS_KEYS)){
 			//Public Keys
 			ArrayList<PubPrivKey> keys = getMainDB().getUserDB().getKeys();
@@ -279,6 +237,12 @@ public class ConsensusPrint {
 			status.put("lastblock", lastblock.toString());
 			status.put("totalpow", root.getTotalWeight().toString());
 			
+			//How big is the MMR
+			MMRSet mmrset = tip.getMMRSet();
+			if(mmrset != null) {
+				putJSON(status, "mmr", new MMRFootprint(mmrset).toJSON());
+			}
+			
 			//Add the network connections
 			ArrayList<NetClient> nets = main.getNetworkHandler().getNetClients();
 			JSONArray netarr = new JSONArray();
@@ -390,4 +354,33 @@ public class ConsensusPrint {
 		}
 	}
 	
+	/**
+	 * The token totals as a JSON list
+	 */
+	@SuppressWarnings("unchecked")
+	private JSONArray getBalances(Hashtable<MiniData32, MiniNumber> zTotals) {
+		JSONArray totbal = new JSONArray();
+		
+		Enumeration<MiniData32> keys = zTotals.keys();
+		while(keys.hasMoreElements())  {
+			MiniData32 key = keys.nextElement();
+			MiniNumber tot = zTotals.get(key);
+			
+			JSONObject minbal = new JSONObject();
+			minbal.put("tokenid", key.toString());
+			minbal.put("amount", tot.toString());
+			
+			totbal.add(minbal);
+		}
+		
+		return totbal;
+	}
+	
+	/**
+	 * JSONObject is a raw HashMap
+	 */
+	@SuppressWarnings("unchecked")
+	private static void putJSON(JSONObject zJSON, String zName, Object zValue) {
+		zJSON.put(zName, zValue);
+	}
 }
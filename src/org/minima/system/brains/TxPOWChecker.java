@@ -2,12 +2,18 @@ package org.minima.system.brains;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+import org.minima.GlobalParams;
 import org.minima.database.MinimaDB;
 import org.minima.database.coindb.CoinDB;
 import org.minima.database.coindb.CoinDBRow;
+import org.minima.database.mempool.ValidationResult;
 import org.minima.database.mmr.MMRData;
 import org.minima.database.mmr.MMREntry;
+import org.minima.database.mmr.MMRMultiProof;
 import org.minima.database.mmr.MMRProof;
 import org.minima.database.mmr.MMRSet;
 import org.minima.database.txpowdb.TxPOWDBRow;
@@ -75,106 +81,108 @@ public class TxPOWChecker {
 	public static boolean checkTransactionMMR(TxPOW zTxPOW, MinimaDB zDB) {
 		return checkTransactionMMR(zTxPOW.getTransaction(), zTxPOW.getWitness(), zDB, zDB.getTopBlock(), zDB.getMainTree().getChainTip().getMMRSet(), false);
 	}
-	
+
 //	public static boolean checkTransactionMMR(Transaction zTrans, Witness zWit, MinimaDB zDB, MiniNumber zBlockNumber, MMRSet zMMRSet) {
 //		return checkTransactionMMR(zTrans, zWit, zDB, zBlockNumber, zMMRSet, true);
 //	}
-		
+	
 	public static boolean checkTransactionMMR(Transaction zTrans, Witness zWit, MinimaDB zDB, MiniNumber zBlockNumber, MMRSet zMMRSet, boolean zTouchMMR) {
+		return checkTransactionMMR(zTrans, zWit, zDB, zBlockNumber, zMMRSet, zTouchMMR, null);
+	}
+	
+	/**
+	 * As above - and record the MMR changes in zResult so they can be applied again later.
+	 */
+	public static boolean checkTransactionMMR(Transaction zTrans, Witness zWit, MinimaDB zDB, MiniNumber zBlockNumber, MMRSet zMMRSet, boolean zTouchMMR, ValidationResult zResult) {
 		//Check the input scripts
 		ArrayList<Coin> inputs  = zTrans.getAllInputs();
 		
 		//The Signatures
 		String sigs = zWit.getAllPubKeysCSV();
-				
-		//First Inputs..
-		MiniNumber totalin = MiniNumber.ZERO;
+		
+		//Check all the proofs in one go if sent as one
+		MMRMultiProof multi = zWit.getMultiProof();
+		if(multi != null && !zMMRSet.checkMultiProof(multi)) {
+			return false;
+		}
+		
+		//Run the scripts and hash the proofs - in parallel if there are enough inputs
 		int ins = inputs.size();
+		MiniData32[] proofpeaks = null;
+		if(multi == null) {
+			proofpeaks = new MiniData32[ins];
+		}
+		
+		if(GlobalParams.MINIMA_PARALLEL_INPUTS && ins >= GlobalParams.MINIMA_PARALLEL_MIN_INPUTS) {
+			InputCheckTask task = new InputCheckTask(zTrans, zWit, sigs, zBlockNumber, proofpeaks, 0, ins);
+			if(!ForkJoinPool.commonPool().invoke(task)) {
+				return false;
+			}
+		}else if(!checkInputs(zTrans, zWit, sigs, zBlockNumber, proofpeaks, 0, ins)) {
+			return false;
+		}
+		
+		//Then check the proofs against the MMR - all of them before any are spent..
+		Hashtable<Long, Boolean> spententries = new Hashtable<>();
+		MiniNumber totalin = MiniNumber.ZERO;
 		for(int i=0;i<ins;i++) {
-			//Get the Input
-			Coin input = inputs.get(i);
-
-			//Get the Script..
-			String script = zWit.getScript(i);
-			
-			if(input.getCoinID().isExactlyEqual(gimme50.COINID_INPUT) && input.getAmount().isLessEqual(new MiniNumber("50"))){
-				//We good.. TESTNET allows up to 50 printed..
-				//..
-			}else {
-				//Check the Address is the hash of the SCRIPT
-				Address scraddr = new Address(script);
-				if(!scraddr.getAddressData().isExactlyEqual(input.getAddress())) {
-					return false;
-				}
-				
-				//Is it a valid input.. UNSPENT in MMR
+			//Add to the total
+			totalin = totalin.add(inputs.get(i).getAmount());
+			
+			if(!isGimme50(inputs.get(i))) {
 				MMRProof proof = zWit.getAllProofs().get(i);
 				
-				//MUST be a full proof - this done in checkproof..
-//				if(proof.getMMRData().isHashOnly()) {
-//					return false;
-//				}
-				
-				//Is the proof chain valid
-				boolean valid = zMMRSet.checkProof(proof);
-				if(!valid) {
+				//Can't spend the same coin twice
+				if(spententries.put(proof.getPosition(), Boolean.TRUE) != null) {
 					return false;
 				}
 				
-				//Is this input for the correct details..
-				if(!proof.checkCoin(input)) {
+				//Already done if a multi proof
+				if(proofpeaks != null && !zMMRSet.checkProof(proof, proofpeaks[i])) {
 					return false;
 				}
+			}
+		}
+		
+		//Check the total - so the MMR is not touched if it fails
+		//TODO.. check tokens as well as base Minima
+		ArrayList<Coin> outputs  = zTrans.getAllOutputs();
+		MiniNumber totalout = MiniNumber.ZERO;
+		for(Coin output : outputs) {
+			totalout = totalout.add(output.getAmount());
+		}
+		
+		if(totalout.isMore(totalin)) {
+			return false;
+		}
+		
+		//Then the MMR changes - in input order..
+		for(int i=0;i<ins;i++) {
+			//Get the Input
+			Coin input = inputs.get(i);
+			
+			if(!isGimme50(input) && zTouchMMR) {
+				MMRProof proof = zWit.getAllProofs().get(i);
 				
-				if(zTouchMMR) {
-					//Update the MMR with this spent coin..
-					MMREntry spent = zMMRSet.updateSpentCoin(proof);
+				//Update the MMR with this spent coin..
+				MMREntry spent = zMMRSet.updateSpentCoin(proof);
 				
-					//Do we keep it..
-					if(zDB.getUserDB().isAddressRelevant(input.getAddress())) {
-						zMMRSet.addKeeper(spent.getEntry());	
-					}
+				//Do we keep it..
+				if(zDB.getUserDB().isAddressRelevant(input.getAddress())) {
+					zMMRSet.addKeeper(spent.getEntry());	
 				}
 				
-				//Create the Contract to check..
-				Contract cc = new Contract(script,sigs,zTrans,false);
-				
-				//set the environment
-				String address = input.getAddress().toString();
-				
-				cc.setGlobalVariable("@BLKNUM", new NumberValue(zBlockNumber));
-				cc.setGlobalVariable("@INPUT", new NumberValue(i));
-				cc.setGlobalVariable("@AMOUNT", new NumberValue(input.getAmount()));
-				cc.setGlobalVariable("@ADDRESS", new HEXValue(address));
-				cc.setGlobalVariable("@TOKENID", new HEXValue(input.getTokenID()));
-				cc.setGlobalVariable("@COINID", new HEXValue(input.getCoinID()));
-				cc.setGlobalVariable("@SCRIPT", new ScriptValue(script));
-				cc.setGlobalVariable("@TOTIN", new NumberValue(zTrans.getAllInputs().size()));
-				cc.setGlobalVariable("@TOTOUT", new NumberValue(zTrans.getAllOutputs().size()));
-				cc.setGlobalVariable("@INBLKNUM", new NumberValue(proof.getMMRData().getInBlock()));
-				
-				//Set the Prev State
-				cc.setPrevState(proof.getMMRData().getPrevState());
-				
-				//Run it!
-				cc.run();
-				
-				//and.. ?
-				if(!cc.isSuccess()) {
-					return false;
+				//Record it..
+				if(zResult != null) {
+					zResult.addSpentProof(proof);
 				}
 			}
-			
-			//Add to the total
-			totalin = totalin.add(input.getAmount());
 		}
 		
 		//The HASH of the Transaction.. needed for coinid
 		MiniData32 transhash = Crypto.getInstance().hashObject(zTrans);
-				
+		
 		//Get outputs - add them to the MMR also..
-		MiniNumber totalout = MiniNumber.ZERO;
-		ArrayList<Coin> outputs  = zTrans.getAllOutputs();
 		int outs = outputs.size();
 		for(int i=0;i<outs;i++) {
 			//Get the coin..
@@ -191,9 +199,9 @@ public class TxPOWChecker {
 				BigInteger big = output.getTokenID().getDataVaue();
 				
 				int val = big.intValue();
-				
+			
 			}
-				
+			
 			
 			
 			if(output.getTokenID().isNumericallyEqual(Coin.TOKENID_CREATE)) {
@@ -220,19 +228,189 @@ public class TxPOWChecker {
 					
 					//Keep the token generation numbers
 				}
+				
+				//Record it..
+				if(zResult != null) {
+					zResult.addNewCoin(mmrcoin);
+				}
+			}
+		}
+		
+		//The state the new coins get
+		if(zResult != null) {
+			zResult.setState(zTrans.getCompleteState());
+		}
+		
+		//All OK!
+		return true;
+	}
+	
+	/**
+	 * TESTNET allows up to 50 printed..
+	 */
+	private static boolean isGimme50(Coin zInput) {
+		return zInput.getCoinID().isExactlyEqual(gimme50.COINID_INPUT) && zInput.getAmount().isLessEqual(new MiniNumber("50"));
+	}
+	
+	/**
+	 * Check a range of inputs - the address, the coin and the script. If zProofPeaks is set
+	 * the peak each proof hashes up to is put in it, to check against the MMRSet after.
+	 * 
+	 * Nothing here reads the MMRSet - so it can be run on any thread.
+	 */
+	private static boolean checkInputs(Transaction zTrans, Witness zWit, String zSigs, MiniNumber zBlockNumber, MiniData32[] zProofPeaks, int zStart, int zEnd) {
+		for(int i=zStart;i<zEnd;i++) {
+			if(isGimme50(zTrans.getAllInputs().get(i))) {
+				continue;
+			}
+			
+			if(!checkInput(zTrans, zWit, zSigs, zBlockNumber, i)) {
+				return false;
 			}
 			
-			//Check the total..
-			totalout = totalout.add(outputs.get(i).getAmount());
+			if(zProofPeaks != null) {
+				zProofPeaks[i] = zWit.getAllProofs().get(i).calculateProof();
+			}
 		}
 		
-		//And final check..
-		//TODO.. check tokens as well as base Minima
-		if(totalout.isMore(totalin)) {
+		return true;
+	}
+	
+	/**
+	 * Check a single input - the address, the coin and the script.
+	 */
+	private static boolean checkInput(Transaction zTrans, Witness zWit, String zSigs, MiniNumber zBlockNumber, int zInput) {
+		//Get the Input
+		Coin input = zTrans.getAllInputs().get(zInput);
+		
+		//Get the Script..
+		String script = zWit.getScript(zInput);
+		
+		//Check the Address is the hash of the SCRIPT
+		Address scraddr = new Address(script);
+		if(!scraddr.getAddressData().isExactlyEqual(input.getAddress())) {
 			return false;
 		}
 		
-		//All OK!
+		//The proof of the input - checked against the MMR after
+		MMRProof proof = zWit.getAllProofs().get(zInput);
+		
+		//Is this input for the correct details..
+		if(!proof.checkCoin(input)) {
+			return false;
+		}
+		
+		//Create the Contract to check..
+		Contract cc = new Contract(script,zSigs,zTrans,false);
+		
+		//set the environment
+		String address = input.getAddress().toString();
+		
+		cc.setGlobalVariable("@BLKNUM", new NumberValue(zBlockNumber));
+		cc.setGlobalVariable("@INPUT", new NumberValue(zInput));
+		cc.setGlobalVariable("@AMOUNT", new NumberValue(input.getAmount()));
+		cc.setGlobalVariable("@ADDRESS", new HEXValue(address));
+		cc.setGlobalVariable("@TOKENID", new HEXValue(input.getTokenID()));
+		cc.setGlobalVariable("@COINID", new HEXValue(input.getCoinID()));
+		cc.setGlobalVariable("@SCRIPT", new ScriptValue(script));
+		cc.setGlobalVariable("@TOTIN", new NumberValue(zTrans.getAllInputs().size()));
+		cc.setGlobalVariable("@TOTOUT", new NumberValue(zTrans.getAllOutputs().size()));
+		cc.setGlobalVariable("@INBLKNUM", new NumberValue(proof.getMMRData().getInBlock()));
+		
+		//Set the Prev State
+		cc.setPrevState(proof.getMMRData().getPrevState());
+		
+		//Run it!
+		cc.run();
+		
+		//and.. ?
+		return cc.isSuccess();
+	}
+	
+	/**
+	 * Checks a range of inputs on the fork join pool - splits in half until small enough.
+	 * 
+	 * The tasks are not given the MMRSet. It builds some of its state as it is used
+	 * and is not safe to share between threads.
+	 */
+	@SuppressWarnings("serial")
+	private static class InputCheckTask extends RecursiveTask<Boolean> {
+		
+		Transaction mTrans;
+		Witness mWit;
+		String mSigs;
+		MiniNumber mBlockNumber;
+		MiniData32[] mProofPeaks;
+		int mStart;
+		int mEnd;
+		
+		public InputCheckTask(Transaction zTrans, Witness zWit, String zSigs, MiniNumber zBlockNumber, MiniData32[] zProofPeaks, int zStart, int zEnd) {
+			mTrans 		 = zTrans;
+			mWit 		 = zWit;
+			mSigs 		 = zSigs;
+			mBlockNumber = zBlockNumber;
+			mProofPeaks  = zProofPeaks;
+			mStart 		 = zStart;
+			mEnd 		 = zEnd;
+		}
+		
+		@Override
+		protected Boolean compute() {
+			//Small enough to do here..
+			if(mEnd - mStart <= 1) {
+				return checkInputs(mTrans, mWit, mSigs, mBlockNumber, mProofPeaks, mStart, mEnd);
+			}
+			
+			//Split in two..
+			int mid = (mStart + mEnd) >>> 1;
+			InputCheckTask left  = new InputCheckTask(mTrans, mWit, mSigs, mBlockNumber, mProofPeaks, mStart, mid);
+			InputCheckTask right = new InputCheckTask(mTrans, mWit, mSigs, mBlockNumber, mProofPeaks, mid, mEnd);
+			left.fork();
+			boolean ok = right.compute();
+			return left.join() && ok;
+		}
+	}
+	
+	/**
+	 * Apply the MMR changes of a transaction that has already passed checkTransactionMMR
+	 * on the same parent block. The scripts are not run again - but the proofs are still
+	 * checked as this MMRSet may have spent the same coins already.
+	 * 
+	 * @param zResult
+	 * @param zDB
+	 * @param zBlockNumber
+	 * @param zMMRSet
+	 * @return
+	 */
+	public static boolean applyValidationResult(ValidationResult zResult, MinimaDB zDB, MiniNumber zBlockNumber, MMRSet zMMRSet) {
+		//The inputs..
+		for(MMRProof proof : zResult.getSpentProofs()) {
+			//Is the proof chain still valid
+			if(!zMMRSet.checkProof(proof)) {
+				return false;
+			}
+			
+			//Update the MMR with this spent coin..
+			MMREntry spent = zMMRSet.updateSpentCoin(proof);
+			
+			//Do we keep it..
+			if(zDB.getUserDB().isAddressRelevant(proof.getMMRData().getCoin().getAddress())) {
+				zMMRSet.addKeeper(spent.getEntry());	
+			}
+		}
+		
+		//And the outputs
+		for(Coin mmrcoin : zResult.getNewCoins()) {
+			//Now add as an unspent to the MMR
+			MMRData mmrdata = new MMRData(MiniByte.FALSE, mmrcoin, zBlockNumber, zResult.getState());
+			MMREntry unspent = zMMRSet.addUnspentCoin(mmrdata);
+			
+			//Do we keep it..
+			if(zDB.getUserDB().isAddressRelevant(mmrcoin.getAddress())) {
+				zMMRSet.addKeeper(unspent.getEntry());	
+			}
+		}
+		
 		return true;
 	}
 }
@@ -12,6 +12,7 @@ import org.minima.system.input.functions.help;
 import org.minima.system.input.functions.intro;
 import org.minima.system.input.functions.keys;
 import org.minima.system.input.functions.minetrans;
+import org.minima.system.input.functions.mmrproof;
 import org.minima.system.input.functions.newaddress;
 import org.minima.system.input.functions.newscript;
 import org.minima.system.input.functions.printchain;
@@ -47,7 +48,7 @@ public abstract class CommandFunction {
 	public static CommandFunction[] ALL_FUNCTIONS = 
 		{
 			new backup(), new balance(), new connect(), new createtoken(), new disconnect(), new weblink(),
-			new gimme50(), new help(), new intro(), new minetrans(), new newaddress(), new coins(), new txpowinfo(), new keys(),
+			new gimme50(), new help(), new intro(), new minetrans(), new newaddress(), new coins(), new txpowinfo(), new mmrproof(), new keys(),
 			new newscript(), new printchain(), new printtree(), new quit(),new reconnect(), new runscript(), 
 			new send(), new status(), new test(), new trace(), new tutorial(),
 			new exportkey(), new importkey(), 
@@ -70,6 +70,7 @@ public class help extends CommandFunction{
 			addJSONDesc(new keys());
 			
 			addJSONDesc(new txpowinfo());
+			addJSONDesc(new mmrproof());
 			
 			addJSONDesc(new createtoken());
 			addJSONDesc(new newaddress());
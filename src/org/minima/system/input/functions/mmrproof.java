@@ -0,0 +1,33 @@
+package org.minima.system.input.functions;
+
+import org.minima.system.brains.ConsensusPrint;
+import org.minima.system.input.CommandFunction;
+import org.minima.utils.messages.Message;
+
+public class mmrproof extends CommandFunction {
+	
+	public mmrproof() {
+		super("mmrproof");
+		
+		setHelp("[ entry ]", "Return the MMR proof of the coin at this MMR entry", 
+				"Coins the chain no longer holds are proved from the MMR archive if there is one.");
+	}
+	
+	@Override
+	public void doFunction(String[] zInput) throws Exception {
+		//Get the Entry
+		String entry = zInput[1];
+		
+		//Get the proof..
+		Message msg = getResponseMessage(ConsensusPrint.CONSENSUS_MMRPROOF);
+		msg.addString("entry", entry);
+		
+		//Post It..
+		getMainHandler().getConsensusHandler().PostMessage(msg);
+	}
+	
+	@Override
+	public CommandFunction getNewFunction() {
+		return new mmrproof();
+	}
+}
@@ -9,7 +9,7 @@ public class send extends CommandFunction{
 	public send() {
 		super("send");
 		
-		setHelp("[amount] [address] {tokenid}", "Send an amount of Minima to a certain address", "");
+		setHelp("[amount] [address] {tokenid} {bnb|largest|consolidate}", "Send an amount of Minima to a certain address", "");
 	}
 	
 	@Override
@@ -23,11 +23,18 @@ public class send extends CommandFunction{
 			tokenid = zInput[3];
 		}
 		
+		//How to pick the coins
+		String strategy = "";
+		if(zInput.length>4) { 
+			strategy = zInput[4];
+		}
+		
 		//Create a message
 		Message sender = getResponseMessage(ConsensusHandler.CONSENSUS_CREATETRANS);
 		sender.addString("address", address);
 		sender.addString("amount", amount);
 		sender.addString("tokenid", tokenid);
+		sender.addString("strategy", strategy);
 		
 		//Send it to the miner..
 		getMainHandler().getConsensusHandler().PostMessage(sender);
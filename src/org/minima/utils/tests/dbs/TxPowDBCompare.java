@@ -0,0 +1,317 @@
+package org.minima.utils.tests.dbs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.minima.database.txpowdb.TxPOWDBRow;
+import org.minima.database.txpowdb.TxPowDB;
+import org.minima.database.txpowdb.java.FastJavaDB;
+import org.minima.database.txpowdb.java.JavaDB;
+import org.minima.database.txpowdb.sql.SQLTxPoWDB;
+import org.minima.objects.Transaction;
+import org.minima.objects.TxPOW;
+import org.minima.objects.Witness;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * Runs the same random operations on JavaDB and the other TxPowDB
+ * implementations and checks they all give the same answers.
+ *
+ * The SQLTxPoWDB log is replayed at the end and checked again.
+ *
+ * Usage : TxPowDBCompare [seed] [steps]
+ */
+public class TxPowDBCompare {
+	
+	/**
+	 * The DBs - the first is the reference
+	 */
+	ArrayList<TxPowDB> mDBs;
+	
+	/**
+	 * Names for the log
+	 */
+	ArrayList<String> mNames;
+	
+	/**
+	 * Every TxPOW that has been made
+	 */
+	ArrayList<TxPOW> mTxPOWs;
+	
+	/**
+	 * The blocks that can be parents
+	 */
+	ArrayList<MiniData32> mParents;
+	
+	Random mRand;
+	
+	int mErrors;
+	
+	public TxPowDBCompare(long zSeed) {
+		mDBs     = new ArrayList<>();
+		mNames   = new ArrayList<>();
+		mTxPOWs  = new ArrayList<>();
+		mParents = new ArrayList<>();
+		mRand    = new Random(zSeed);
+		mErrors  = 0;
+		
+		//The first parent..
+		byte[] root = new byte[32];
+		mRand.nextBytes(root);
+		mParents.add(new MiniData32(root));
+	}
+	
+	public void addDB(String zName, TxPowDB zDB) {
+		mNames.add(zName);
+		mDBs.add(zDB);
+	}
+	
+	public void setDB(int zIndex, TxPowDB zDB) {
+		mDBs.set(zIndex, zDB);
+	}
+	
+	public int getErrors() {
+		return mErrors;
+	}
+	
+	public static void main(String[] zArgs) {
+		long seed = 1;
+		int steps = 2000;
+		if(zArgs.length > 0) {
+			seed = Long.parseLong(zArgs[0]);
+		}
+		if(zArgs.length > 1) {
+			steps = Integer.parseInt(zArgs[1]);
+		}
+		
+		//The on disk log starts empty
+		File folder = new File(System.getProperty("java.io.tmpdir"), "txpowdbcompare");
+		SQLTxPoWDB sqldb = new SQLTxPoWDB(folder);
+		sqldb.ClearDB();
+		
+		TxPowDBCompare comp = new TxPowDBCompare(seed);
+		comp.addDB("JavaDB", new JavaDB());
+		comp.addDB("FastJavaDB", new FastJavaDB());
+		comp.addDB("SQLTxPoWDB", sqldb);
+		
+		comp.run(steps);
+		
+		//Replay the log and check it again
+		sqldb.close();
+		comp.setDB(2, new SQLTxPoWDB(folder));
+		comp.compare(steps);
+		
+		MinimaLogger.log("TxPowDBCompare seed "+seed+" steps "+steps+" errors "+comp.getErrors());
+	}
+	
+	public void run(int zSteps) {
+		for(int step=0;step<zSteps;step++) {
+			int op = mRand.nextInt(100);
+			
+			if(op < 30 || mTxPOWs.isEmpty()) {
+				//A new TxPOW
+				TxPOW txpow = newTxPOW(step);
+				mTxPOWs.add(txpow);
+				for(TxPowDB db : mDBs) {
+					db.addTxPOWDBRow(txpow);
+				}
+			
+			}else if(op < 35) {
+				//Add one again
+				TxPOW txpow = randomTxPOW();
+				for(TxPowDB db : mDBs) {
+					db.addTxPOWDBRow(txpow);
+				}
+			
+			}else if(op < 55) {
+				//In a block
+				MiniData32 txpowid = randomTxPOW().getTxPowID();
+				MiniNumber block   = new MiniNumber(""+mRand.nextInt(50));
+				for(TxPOWDBRow row : findRows(txpowid)) {
+					row.setInBlockNumber(block);
+					row.setIsInBlock(true);
+				}
+			
+			}else if(op < 62) {
+				//Not in a block
+				MiniData32 txpowid = randomTxPOW().getTxPowID();
+				for(TxPOWDBRow row : findRows(txpowid)) {
+					row.setIsInBlock(false);
+				}
+			
+			}else if(op < 72) {
+				//On chain or not
+				MiniData32 txpowid = randomTxPOW().getTxPowID();
+				boolean onchain    = mRand.nextBoolean();
+				for(TxPOWDBRow row : findRows(txpowid)) {
+					row.setOnChainBlock(onchain);
+				}
+			
+			}else if(op < 82) {
+				//Block state
+				MiniData32 txpowid = randomTxPOW().getTxPowID();
+				int state = mRand.nextInt(3) == 0 ? TxPOWDBRow.TXPOWDBROW_STATE_BASIC : TxPOWDBRow.TXPOWDBROW_STATE_FULL;
+				for(TxPOWDBRow row : findRows(txpowid)) {
+					row.setBlockState(state);
+				}
+			
+			}else if(op < 88) {
+				//Remove one
+				MiniData32 txpowid = randomTxPOW().getTxPowID();
+				for(TxPowDB db : mDBs) {
+					db.removeTxPOW(txpowid);
+				}
+			
+			}else if(op < 95) {
+				//Prune
+				MiniNumber block = new MiniNumber(""+mRand.nextInt(50));
+				ArrayList<String> ref = null;
+				for(int i=0;i<mDBs.size();i++) {
+					ArrayList<String> removed = getIDs(mDBs.get(i).removeTxPOWInBlockLessThan(block));
+					if(ref == null) {
+						ref = removed;
+					}else {
+						check(step, i, "removeTxPOWInBlockLessThan", ref, removed);
+					}
+				}
+			
+			}else if(op < 99 || mRand.nextInt(10) != 0) {
+				for(TxPowDB db : mDBs) {
+					db.resetAllInBlocks();
+				}
+			
+			}else {
+				//Only now and then..
+				for(TxPowDB db : mDBs) {
+					db.ClearDB();
+				}
+			}
+			
+			compare(step);
+		}
+	}
+	
+	private TxPOW newTxPOW(int zStep) {
+		TxPOW txpow = new TxPOW();
+		txpow.setTransaction(new Transaction());
+		txpow.setWitness(new Witness());
+		txpow.setNonce(new MiniNumber(""+zStep));
+		txpow.setTxDifficulty(0);
+		txpow.setParent(mParents.get(mRand.nextInt(mParents.size())));
+		
+		//256 of the same super parent will not fit the RLE count
+		txpow.mSuperParents[0] = txpow.getParentID();
+		
+		//Blocks have a zero difficulty..
+		boolean block = mRand.nextInt(3) == 0;
+		txpow.setBlockDifficulty(block ? 0 : 255);
+		txpow.calculateTXPOWID();
+		
+		if(txpow.isBlock()) {
+			mParents.add(txpow.getTxPowID());
+		}
+		
+		return txpow;
+	}
+	
+	private TxPOW randomTxPOW() {
+		return mTxPOWs.get(mRand.nextInt(mTxPOWs.size()));
+	}
+	
+	/**
+	 * The row from each DB that has it
+	 */
+	private ArrayList<TxPOWDBRow> findRows(MiniData32 zTxPOWID){
+		ArrayList<TxPOWDBRow> rows = new ArrayList<>();
+		for(TxPowDB db : mDBs) {
+			TxPOWDBRow row = db.findTxPOWDBRow(zTxPOWID);
+			if(row != null) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+	
+	/**
+	 * Check every DB against the reference
+	 */
+	public void compare(int zStep) {
+		TxPowDB ref = mDBs.get(0);
+		
+		ArrayList<String> refrows    = getRowStates(ref);
+		ArrayList<String> refunused  = getIDs(ref.getAllUnusedTxPOW());
+		ArrayList<String> refmissing = getIDs(ref.getAllBlocksMissingTransactions());
+		ArrayList<String> refchild   = getChildren(ref);
+		
+		for(int i=1;i<mDBs.size();i++) {
+			TxPowDB db = mDBs.get(i);
+			
+			if(db.getSize() != ref.getSize()) {
+				error(zStep, i, "getSize "+ref.getSize()+" "+db.getSize());
+			}
+			
+			check(zStep, i, "rows", refrows, getRowStates(db));
+			check(zStep, i, "getAllUnusedTxPOW", refunused, getIDs(db.getAllUnusedTxPOW()));
+			check(zStep, i, "getAllBlocksMissingTransactions", refmissing, getIDs(db.getAllBlocksMissingTransactions()));
+			check(zStep, i, "getChildBlocksTxPOW", refchild, getChildren(db));
+		}
+	}
+	
+	private void check(int zStep, int zDB, String zWhat, ArrayList<String> zRef, ArrayList<String> zFound) {
+		if(!zRef.equals(zFound)) {
+			error(zStep, zDB, zWhat+" "+zRef.size()+" "+zFound.size());
+		}
+	}
+	
+	private void error(int zStep, int zDB, String zMessage) {
+		mErrors++;
+		if(mErrors < 20) {
+			MinimaLogger.log("Step "+zStep+" "+mNames.get(zDB)+" differs : "+zMessage);
+		}
+	}
+	
+	/**
+	 * Every TxPOW made and its row state in this DB - in the order they were made
+	 */
+	private ArrayList<String> getRowStates(TxPowDB zDB){
+		ArrayList<String> states = new ArrayList<>();
+		for(TxPOW txpow : mTxPOWs) {
+			TxPOWDBRow row = zDB.findTxPOWDBRow(txpow.getTxPowID());
+			if(row == null) {
+				states.add("none");
+			}else {
+				states.add(row.isInBlock()+" "+row.getInBlockNumber()+" "+row.isOnChainBlock()+" "+row.getBlockState());
+			}
+		}
+		
+		//And all the rows..
+		states.addAll(getIDs(zDB.getAllTxPOWDBRow()));
+		
+		return states;
+	}
+	
+	private ArrayList<String> getChildren(TxPowDB zDB){
+		ArrayList<String> children = new ArrayList<>();
+		for(MiniData32 parent : mParents) {
+			children.add(parent.to0xString());
+			children.addAll(getIDs(zDB.getChildBlocksTxPOW(parent)));
+		}
+		return children;
+	}
+	
+	/**
+	 * The TxPOWIDs sorted - the DBs do not keep the same order
+	 */
+	private static ArrayList<String> getIDs(ArrayList<TxPOWDBRow> zRows){
+		ArrayList<String> ids = new ArrayList<>();
+		for(TxPOWDBRow row : zRows) {
+			ids.add(row.getTxPOW().getTxPowID().to0xString());
+		}
+		Collections.sort(ids);
+		return ids;
+	}
+}
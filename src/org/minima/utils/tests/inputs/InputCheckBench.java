@@ -0,0 +1,91 @@
+package org.minima.utils.tests.inputs;
+
+import java.util.ArrayList;
+
+import org.minima.GlobalParams;
+import org.minima.database.mmr.MMRData;
+import org.minima.database.mmr.MMRSet;
+import org.minima.objects.Address;
+import org.minima.objects.Coin;
+import org.minima.objects.StateVariable;
+import org.minima.objects.Transaction;
+import org.minima.objects.Witness;
+import org.minima.objects.base.MiniByte;
+import org.minima.objects.base.MiniData;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.system.brains.TxPOWChecker;
+import org.minima.utils.Crypto;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * Times checkTransactionMMR on transactions with 1 to 256 inputs - serial and in parallel
+ */
+public class InputCheckBench {
+	
+	public static void main(String[] zArgs) {
+		int repeat = 20;
+		if(zArgs.length > 0) {
+			repeat = Integer.parseInt(zArgs[0]);
+		}
+		
+		//A key to sign with
+		MiniData pubkey = new MiniData("0xFFEEDDCCBBAA99887766554433221100");
+		
+		//A script with some work in it..
+		String script = "LET h = @COINID LET i = 0 WHILE i LT 32 DO LET h = SHA3 ( h ) LET i = INC ( i ) ENDWHILE RETURN SIGNEDBY ( "+pubkey+" )";
+		Address addr  = new Address(script);
+		
+		//Make the coins
+		int max = 256;
+		MMRSet base = new MMRSet();
+		ArrayList<Coin> coins = new ArrayList<>();
+		ArrayList<MiniNumber> entries = new ArrayList<>();
+		for(int i=0;i<max;i++) {
+			MiniData32 coinid = Crypto.getInstance().hashObject(new MiniNumber(i));
+			Coin cc = new Coin(coinid, addr.getAddressData(), MiniNumber.ONE, Coin.MINIMA_TOKENID);
+			coins.add(cc);
+			
+			MMRData data = new MMRData(MiniByte.FALSE, cc, MiniNumber.ZERO, new ArrayList<StateVariable>());
+			entries.add(base.addUnspentCoin(data).getEntry());
+		}
+		base.finalizeSet();
+		
+		MMRSet current = new MMRSet(base);
+		
+		MinimaLogger.log("Inputs   Serial(ms)   Parallel(ms)");
+		for(int ins=1;ins<=max;ins*=2) {
+			//Make the transaction
+			Transaction trans = new Transaction();
+			Witness wit = new Witness();
+			wit.addSignature(pubkey, new MiniData("0x00"));
+			for(int i=0;i<ins;i++) {
+				trans.addInput(coins.get(i));
+				wit.addScript(script);
+				wit.addMMRProof(base.getProof(entries.get(i)));
+			}
+			trans.addOutput(new Coin(Coin.COINID_OUTPUT, addr.getAddressData(), new MiniNumber(ins), Coin.MINIMA_TOKENID));
+			
+			long serial   = time(trans, wit, current, false, repeat);
+			long parallel = time(trans, wit, current, true, repeat);
+			
+			MinimaLogger.log(ins+"   "+(serial/1000000.0)+"   "+(parallel/1000000.0));
+		}
+	}
+	
+	private static long time(Transaction zTrans, Witness zWit, MMRSet zSet, boolean zParallel, int zRepeat) {
+		GlobalParams.MINIMA_PARALLEL_INPUTS = zParallel;
+		
+		//Warm up..
+		if(!TxPOWChecker.checkTransactionMMR(zTrans, zWit, null, MiniNumber.ONE, zSet, false)) {
+			MinimaLogger.log("Transaction INVALID!");
+		}
+		
+		long start = System.nanoTime();
+		for(int i=0;i<zRepeat;i++) {
+			TxPOWChecker.checkTransactionMMR(zTrans, zWit, null, MiniNumber.ONE, zSet, false);
+		}
+		
+		return (System.nanoTime() - start) / zRepeat;
+	}
+}
@@ -0,0 +1,422 @@
+package org.minima.utils.tests.mmr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Random;
+
+import org.minima.database.mmr.MMRData;
+import org.minima.database.mmr.MMRProof;
+import org.minima.database.mmr.MMRSet;
+import org.minima.objects.Coin;
+import org.minima.objects.StateVariable;
+import org.minima.objects.base.MiniByte;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.Crypto;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * Runs random blocks of adds and spends through a chain of MMRSets - pruning the
+ * old sets as a cascade does and writing them out and back in - and checks the
+ * roots, proofs and streams against a plain MMR that keeps every entry in one table.
+ *
+ * The plain MMR works the way the first MMRSet did - a throwaway MMR to bag the
+ * peaks and every proof read straight off the rows - so a faster MMRSet must give
+ * the same answers.
+ *
+ * Usage : MMRSetCompare [seed] [blocks]
+ */
+public class MMRSetCompare {
+	
+	/**
+	 * How many sets are kept before the older ones are pruned
+	 */
+	public static final int CASCADE_DEPTH = 16;
+	
+	/**
+	 * The chain of sets - oldest first
+	 */
+	ArrayList<MMRSet> mSets;
+	
+	/**
+	 * The reference
+	 */
+	PlainMMR mPlain;
+	
+	/**
+	 * The unspent coins - and which of them are kept, by the block they were kept in
+	 */
+	ArrayList<Long> mUnspent;
+	Hashtable<Long, Integer> mKeepers;
+	
+	/**
+	 * Has a set been pruned yet
+	 */
+	boolean mPruned;
+	
+	Random mRand;
+	
+	int mErrors;
+	
+	public MMRSetCompare(long zSeed) {
+		mSets    = new ArrayList<>();
+		mPlain   = new PlainMMR();
+		mUnspent = new ArrayList<>();
+		mKeepers = new Hashtable<>();
+		mPruned  = false;
+		mRand    = new Random(zSeed);
+		mErrors  = 0;
+		
+		mSets.add(new MMRSet());
+	}
+	
+	public int getErrors() {
+		return mErrors;
+	}
+	
+	public static void main(String[] zArgs) {
+		long seed  = 1;
+		int blocks = 500;
+		if(zArgs.length > 0) {
+			seed = Long.parseLong(zArgs[0]);
+		}
+		if(zArgs.length > 1) {
+			blocks = Integer.parseInt(zArgs[1]);
+		}
+		
+		MMRSetCompare comp = new MMRSetCompare(seed);
+		comp.run(blocks);
+		
+		MinimaLogger.log("MMRSetCompare seed "+seed+" blocks "+blocks+" entries "+comp.mPlain.getEntries()+" errors "+comp.getErrors());
+	}
+	
+	public void run(int zBlocks) {
+		for(int block=0;block<zBlocks;block++) {
+			MMRSet set = new MMRSet(getTip());
+			mSets.add(set);
+			
+			int ops = mRand.nextInt(8);
+			for(int i=0;i<ops;i++) {
+				if(mUnspent.isEmpty() || mRand.nextInt(3) != 0) {
+					addCoin(set, block);
+				}else {
+					spendCoin(set, block);
+				}
+			}
+			
+			//Same root..
+			if(!set.getMMRRoot().isExactlyEqual(mPlain.getRoot())) {
+				error(block, "root");
+			}
+			
+			//Check the proofs it can still give
+			checkProofs(set, block);
+			
+			//Write it out and back in now and then
+			if(mRand.nextInt(5) == 0) {
+				checkStream(set, block);
+			}
+			
+			//Cascade the old ones
+			if(mSets.size() > CASCADE_DEPTH + mRand.nextInt(4)) {
+				prune(block);
+			}
+		}
+	}
+	
+	private MMRSet getTip() {
+		return mSets.get(mSets.size()-1);
+	}
+	
+	private void addCoin(MMRSet zSet, int zBlock) {
+		byte[] coinid = new byte[32];
+		mRand.nextBytes(coinid);
+		byte[] address = new byte[32];
+		mRand.nextBytes(address);
+		
+		Coin coin = new Coin(new MiniData32(coinid), new MiniData32(address), new MiniNumber(""+mRand.nextInt(1000)), Coin.MINIMA_TOKENID);
+		
+		ArrayList<StateVariable> state = new ArrayList<>();
+		if(mRand.nextBoolean()) {
+			state.add(new StateVariable(MiniNumber.ZERO, ""+zBlock));
+		}
+		
+		MMRData data = new MMRData(MiniByte.FALSE, coin, new MiniNumber(""+zBlock), state);
+		
+		long entry = zSet.addUnspentCoin(data).getPosition();
+		if(entry != mPlain.add(data)) {
+			error(zBlock, "entry number "+entry);
+		}
+		mUnspent.add(entry);
+		
+		//The wallet keeps track of some of them
+		if(mRand.nextBoolean()) {
+			zSet.addKeeper(new MiniNumber(entry));
+			mKeepers.put(entry, zBlock);
+		}
+	}
+	
+	private void spendCoin(MMRSet zSet, int zBlock) {
+		//Once pruned only the kept coins have a full proof
+		int index = mRand.nextInt(mUnspent.size());
+		long entry = mUnspent.get(index);
+		if(mPruned && !mKeepers.containsKey(entry)) {
+			return;
+		}
+		mUnspent.remove(index);
+		mKeepers.remove(entry);
+		
+		MMRProof proof = zSet.getProof(entry);
+		checkProof(zBlock, entry, proof);
+		
+		zSet.updateSpentCoin(proof);
+		mPlain.spend(entry);
+	}
+	
+	/**
+	 * Every proof before the first prune - only the kept coins after
+	 */
+	private void checkProofs(MMRSet zSet, int zBlock) {
+		for(long entry=0;entry<mPlain.getEntries();entry++) {
+			if(mPruned && !mKeepers.containsKey(entry)) {
+				continue;
+			}
+			
+			MMRProof proof = zSet.getProof(entry);
+			checkProof(zBlock, entry, proof);
+			
+			//And it checks - unless spent
+			if(zSet.checkProof(proof) == mPlain.getData(entry).isSpent()) {
+				error(zBlock, "checkProof "+entry);
+			}
+		}
+	}
+	
+	private void checkProof(int zBlock, long zEntry, MMRProof zProof) {
+		if(zProof.getMMRData() == null) {
+			error(zBlock, "no proof "+zEntry);
+			return;
+		}
+		
+		if(!zProof.getMMRData().getFinalHash().isExactlyEqual(mPlain.getData(zEntry).getFinalHash())) {
+			error(zBlock, "proof data "+zEntry);
+			return;
+		}
+		
+		ArrayList<MiniData32> hashes = new ArrayList<>();
+		ArrayList<Boolean> lefts 	 = new ArrayList<>();
+		mPlain.getProof(zEntry, hashes, lefts);
+		
+		int len = zProof.getProofLen();
+		if(len != hashes.size()) {
+			error(zBlock, "proof length "+zEntry+" "+len+" "+hashes.size());
+			return;
+		}
+		
+		for(int i=0;i<len;i++) {
+			if(!zProof.getProof(i).isExactlyEqual(hashes.get(i)) || zProof.getLeftHash(i).isTrue() != lefts.get(i)) {
+				error(zBlock, "proof hash "+zEntry+" "+i);
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Write the set out and read it back in - same root, same proofs and the same stream again
+	 */
+	private void checkStream(MMRSet zSet, int zBlock) {
+		try {
+			byte[] data = writeSet(zSet);
+			
+			MMRSet read = new MMRSet();
+			read.readDataStream(new DataInputStream(new ByteArrayInputStream(data)));
+			
+			if(!Arrays.equals(data, writeSet(read))) {
+				error(zBlock, "stream");
+			}
+			
+			if(!read.getMMRRoot().isExactlyEqual(zSet.getMMRRoot())) {
+				error(zBlock, "read root");
+			}
+			
+			for(long entry : mUnspent) {
+				if(read.getProof(entry).getMMRData() == null) {
+					continue;
+				}
+				
+				MMRProof proof = read.getProof(entry);
+				if(!read.checkProof(proof)) {
+					error(zBlock, "read checkProof "+entry);
+				}
+			}
+		
+		} catch (IOException e) {
+			error(zBlock, "stream "+e);
+		}
+	}
+	
+	private byte[] writeSet(MMRSet zSet) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		zSet.writeDataStream(dos);
+		dos.flush();
+		return baos.toByteArray();
+	}
+	
+	/**
+	 * Copy the keepers up to the new cascade set, oldest first, and drop the ones below it
+	 */
+	private void prune(int zBlock) {
+		int cut = mSets.size() - CASCADE_DEPTH;
+		for(int i=1;i<=cut;i++) {
+			mSets.get(i).copyParentKeepers();
+		}
+		
+		for(int i=0;i<cut;i++) {
+			mSets.remove(0);
+		}
+		
+		//The new cascade set has every unspent keeper from it and before
+		MMRSet cascade = mSets.get(0);
+		long casctime  = cascade.getBlockTime().getAsLong();
+		for(Long entry : mKeepers.keySet()) {
+			if(mKeepers.get(entry) < casctime && !cascade.isKeptAllready(new MiniNumber(entry))) {
+				error(zBlock, "keeper lost "+entry);
+			}
+		}
+		
+		mPruned = true;
+	}
+	
+	private void error(int zBlock, String zMessage) {
+		mErrors++;
+		if(mErrors < 20) {
+			MinimaLogger.log("Block "+zBlock+" differs : "+zMessage);
+		}
+	}
+	
+	/**
+	 * Every entry in one table - the rows are worked out from the leaves
+	 */
+	public static class PlainMMR {
+		
+		Hashtable<Long, MiniData32> mHashes;
+		Hashtable<Long, MMRData> mData;
+		
+		long mEntries;
+		
+		public PlainMMR() {
+			mHashes  = new Hashtable<>();
+			mData 	 = new Hashtable<>();
+			mEntries = 0;
+		}
+		
+		private static long getKey(int zRow, long zEntry) {
+			return ((long)zRow << 56) | zEntry;
+		}
+		
+		public long getEntries() {
+			return mEntries;
+		}
+		
+		public MMRData getData(long zEntry) {
+			return mData.get(zEntry);
+		}
+		
+		public long add(MMRData zData) {
+			long entry = mEntries++;
+			mData.put(entry, zData);
+			mHashes.put(getKey(0, entry), zData.getFinalHash());
+			
+			//Fill in every parent that is now complete
+			int row 	 = 0;
+			long pos 	 = entry;
+			while((pos & 1) == 1) {
+				MiniData32 left  = mHashes.get(getKey(row, pos-1));
+				MiniData32 right = mHashes.get(getKey(row, pos));
+				
+				row++;
+				pos >>>= 1;
+				mHashes.put(getKey(row, pos), parentHash(left, right));
+			}
+			
+			return entry;
+		}
+		
+		public void spend(long zEntry) {
+			MMRData data  = mData.get(zEntry);
+			MMRData spent = new MMRData(MiniByte.TRUE, data.getCoin(), data.getInBlock(), data.getPrevState());
+			mData.put(zEntry, spent);
+			mHashes.put(getKey(0, zEntry), spent.getFinalHash());
+			
+			//Up to the peak
+			int row  = 0;
+			long pos = zEntry;
+			while(mHashes.containsKey(getKey(row, pos ^ 1))) {
+				MiniData32 left  = mHashes.get(getKey(row, pos & ~1L));
+				MiniData32 right = mHashes.get(getKey(row, pos | 1L));
+				
+				row++;
+				pos >>>= 1;
+				mHashes.put(getKey(row, pos), parentHash(left, right));
+			}
+		}
+		
+		public void getProof(long zEntry, ArrayList<MiniData32> zHashes, ArrayList<Boolean> zLefts) {
+			int row  = 0;
+			long pos = zEntry;
+			while(mHashes.containsKey(getKey(row, pos ^ 1))) {
+				zHashes.add(mHashes.get(getKey(row, pos ^ 1)));
+				zLefts.add((pos & 1) == 1);
+				
+				row++;
+				pos >>>= 1;
+			}
+		}
+		
+		/**
+		 * The peaks - highest row first
+		 */
+		public ArrayList<MiniData32> getPeaks(){
+			ArrayList<MiniData32> peaks = new ArrayList<>();
+			long start = 0;
+			for(int row=62;row>=0;row--) {
+				if(((mEntries >>> row) & 1) == 1) {
+					peaks.add(mHashes.get(getKey(row, start >>> row)));
+					start += 1L << row;
+				}
+			}
+			return peaks;
+		}
+		
+		/**
+		 * Put the peaks in a new MMR - until there is only one
+		 */
+		public MiniData32 getRoot() {
+			ArrayList<MiniData32> peaks = getPeaks();
+			while(peaks.size() > 1) {
+				PlainMMR bag = new PlainMMR();
+				for(MiniData32 peak : peaks) {
+					bag.add(new MMRData(peak));
+				}
+				peaks = bag.getPeaks();
+			}
+			
+			if(peaks.isEmpty()) {
+				return null;
+			}
+			
+			return peaks.get(0);
+		}
+		
+		private static MiniData32 parentHash(MiniData32 zLeft, MiniData32 zRight) {
+			return new MMRData(Crypto.getInstance().hashObjects(zLeft, zRight)).getFinalHash();
+		}
+	}
+}
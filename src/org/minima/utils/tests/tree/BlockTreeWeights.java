@@ -0,0 +1,228 @@
+package org.minima.utils.tests.tree;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.minima.database.MinimaDB;
+import org.minima.database.txpowtree.BlockTree;
+import org.minima.database.txpowtree.BlockTreeNode;
+import org.minima.database.txpowtree.CascadeTree;
+import org.minima.objects.Transaction;
+import org.minima.objects.TxPOW;
+import org.minima.objects.Witness;
+import org.minima.objects.base.MiniData32;
+import org.minima.objects.base.MiniNumber;
+import org.minima.utils.MinimaLogger;
+
+/**
+ * Grows a random block tree - adding blocks, making them VALID or INVALID
+ * and cascading - and checks the weights, heaviest children, tip and main
+ * chain kept as it goes are the same as resetWeights works out from scratch.
+ *
+ * Usage : BlockTreeWeights [seed] [steps]
+ */
+public class BlockTreeWeights {
+	
+	/**
+	 * Only used for the TxPOW rows the cascade looks up
+	 */
+	MinimaDB mDB;
+	
+	BlockTree mTree;
+	
+	/**
+	 * Every block made - the nodes change when the tree cascades
+	 */
+	ArrayList<MiniData32> mBlocks;
+	
+	Random mRand;
+	
+	long mTime;
+	
+	int mCascades;
+	
+	int mErrors;
+	
+	public BlockTreeWeights(long zSeed) {
+		mDB       = new MinimaDB();
+		mTree     = mDB.getMainTree();
+		mBlocks   = new ArrayList<>();
+		mRand     = new Random(zSeed);
+		mTime     = 1000;
+		mCascades = 0;
+		mErrors   = 0;
+		
+		//The root..
+		TxPOW genesis = newBlock(null, 0);
+		BlockTreeNode root = new BlockTreeNode(genesis);
+		root.setState(BlockTreeNode.BLOCKSTATE_VALID);
+		root.setMMRset(null);
+		mTree.setTreeRoot(root);
+	}
+	
+	public int getErrors() {
+		return mErrors;
+	}
+	
+	public int getCascades() {
+		return mCascades;
+	}
+	
+	public static void main(String[] zArgs) {
+		long seed = 1;
+		int steps = 3000;
+		if(zArgs.length > 0) {
+			seed = Long.parseLong(zArgs[0]);
+		}
+		if(zArgs.length > 1) {
+			steps = Integer.parseInt(zArgs[1]);
+		}
+		
+		BlockTreeWeights weights = new BlockTreeWeights(seed);
+		weights.run(steps);
+		
+		MinimaLogger.log("BlockTreeWeights seed "+seed+" steps "+steps+" cascades "+weights.getCascades()+" errors "+weights.getErrors());
+	}
+	
+	public void run(int zSteps) {
+		for(int step=0;step<zSteps;step++) {
+			int op = mRand.nextInt(100);
+			
+			if(op < 50) {
+				//A new block - usually on the tip
+				BlockTreeNode parent = mTree.getChainTip();
+				if(mRand.nextInt(10) < 3) {
+					parent = randomNode();
+				}
+				
+				if(parent != null) {
+					TxPOW block = newBlock(parent.getTxPow(), step);
+					BlockTreeNode node = new BlockTreeNode(block);
+					node.setMMRset(null);
+					mTree.addNode(node);
+				}
+			
+			}else if(op < 95) {
+				//Decide on a block whose parent is VALID
+				BlockTreeNode node = randomNode();
+				if(node != null && node.getState() == BlockTreeNode.BLOCKSTATE_BASIC
+						&& node.getParent() != null && node.getParent().getState() == BlockTreeNode.BLOCKSTATE_VALID) {
+					if(mRand.nextInt(20) == 0) {
+						node.setState(BlockTreeNode.BLOCKSTATE_INVALID);
+					}else {
+						node.setState(BlockTreeNode.BLOCKSTATE_VALID);
+						mTree.addValidNode(node);
+					}
+				}
+			
+			}else {
+				//Cascade
+				CascadeTree casc = new CascadeTree(mTree, mDB);
+				casc.cascadedTree();
+				if(casc.getCascadeTree() != mTree) {
+					mCascades++;
+				}
+				mTree = casc.getCascadeTree();
+			}
+			
+			compare(step);
+		}
+	}
+	
+	/**
+	 * A block on the parent - the row is added for the cascade
+	 */
+	private TxPOW newBlock(TxPOW zParent, int zStep) {
+		mTime++;
+		
+		int nonce = zStep * 1000;
+		while(true) {
+			TxPOW txpow = new TxPOW();
+			txpow.setTransaction(new Transaction());
+			txpow.setWitness(new Witness());
+			txpow.setTxDifficulty(0);
+			txpow.setBlockDifficulty(mRand.nextInt(3) == 0 ? 1 : 0);
+			txpow.setTimeMilli(new MiniNumber(""+mTime));
+			txpow.setNonce(new MiniNumber(""+nonce));
+			if(zParent == null) {
+				txpow.setBlockNumber(MiniNumber.ZERO);
+				txpow.setParent(new MiniData32());
+			}else {
+				txpow.setBlockNumber(zParent.getBlockNumber().increment());
+				txpow.setParent(zParent.getTxPowID());
+			}
+			txpow.calculateTXPOWID();
+			
+			if(txpow.isBlock()) {
+				mDB.getTxPowDB().addTxPOWDBRow(txpow).setOnChainBlock(true);
+				mBlocks.add(txpow.getTxPowID());
+				return txpow;
+			}
+			
+			nonce++;
+		}
+	}
+	
+	/**
+	 * One of the recent blocks - if it is still in the tree
+	 */
+	private BlockTreeNode randomNode() {
+		int recent = Math.min(20, mBlocks.size());
+		MiniData32 txpowid = mBlocks.get(mBlocks.size() - 1 - mRand.nextInt(recent));
+		return mTree.findNode(txpowid);
+	}
+	
+	/**
+	 * Check the tree against resetWeights - which then leaves it as it should be
+	 */
+	public void compare(int zStep) {
+		ArrayList<String> kept = getWeights();
+		
+		mTree.resetWeights();
+		
+		ArrayList<String> reset = getWeights();
+		if(!kept.equals(reset)) {
+			for(int i=0;i<kept.size();i++) {
+				if(i >= reset.size() || !kept.get(i).equals(reset.get(i))) {
+					error(zStep, kept.get(i)+" should be "+(i < reset.size() ? reset.get(i) : "none"));
+					break;
+				}
+			}
+		}
+	}
+	
+	private void error(int zStep, String zMessage) {
+		mErrors++;
+		if(mErrors < 20) {
+			MinimaLogger.log("Step "+zStep+" differs : "+zMessage);
+		}
+	}
+	
+	/**
+	 * The tip, the main chain and every node with its weight and heaviest child
+	 */
+	private ArrayList<String> getWeights(){
+		ArrayList<String> weights = new ArrayList<>();
+		
+		weights.add("tip "+mTree.getChainTip().getTxPowID().to0xString());
+		
+		for(BlockTreeNode node : mTree.getMainChain()) {
+			weights.add("chain "+node.getTxPowID().to0xString());
+		}
+		
+		addWeights(mTree.getChainRoot(), weights);
+		
+		return weights;
+	}
+	
+	private void addWeights(BlockTreeNode zNode, ArrayList<String> zWeights) {
+		BlockTreeNode heaviest = zNode.getHeaviestChild();
+		zWeights.add(zNode.getTxPowID().to0xString()+" "+zNode.getTotalWeight()+" "
+				+(heaviest == null ? "none" : heaviest.getTxPowID().to0xString()));
+		
+		ArrayList<BlockTreeNode> children = zNode.getChildren();
+		for(BlockTreeNode child : children) {
+			addWeights(child, zWeights);
+		}
+	}
+}